@@ -0,0 +1,91 @@
+package fhirspark;
+
+/**
+ * Concurrency limit that follows the capacity of the FHIR server (additive increase, multiplicative decrease).
+ * While calls take about as long as without load and the limit is used, it grows by one per limit-many calls.
+ * When a call takes more than tolerance times that latency or the server is overloaded, the limit shrinks by a
+ * tenth, at most once per latency so that one slow phase does not collapse it at once. The latency without load
+ * is the lowest latency seen. If calls are still slow at the lowest limit, it follows their latency within about
+ * a minute, so the limit recovers if the server stays slower for good. Not thread-safe, {@link Bulkhead} updates
+ * it under its lock.
+ */
+final class AdaptiveLimit {
+
+    private static final double BACKOFF = 0.9;
+    private static final long DRIFT_PERIOD = 60_000_000_000L;
+
+    private final int min;
+    private final int max;
+    private final double tolerance;
+    private double limit;
+    private double latency;
+    private long lastDecrease;
+    private long lastUpdate;
+
+    /**
+     * @param min       lower bound of the limit.
+     * @param max       upper bound and initial value of the limit.
+     * @param tolerance factor by which a call may exceed the usual latency before the limit shrinks, a value of
+     *                  0 keeps the limit fixed at max.
+     */
+    AdaptiveLimit(int min, int max, double tolerance) {
+        this.min = Math.max(1, Math.min(min, max));
+        this.max = max;
+        this.tolerance = tolerance;
+        this.limit = max;
+    }
+
+    /**
+     * @param max fixed limit.
+     * @return limit that does not adapt.
+     */
+    static AdaptiveLimit fixed(int max) {
+        return new AdaptiveLimit(max, max, 0);
+    }
+
+    int get() {
+        return (int) limit;
+    }
+
+    int getMax() {
+        return max;
+    }
+
+    /**
+     * @return latency of a call without load in nanoseconds, 0 before the first call.
+     */
+    long latency() {
+        return (long) latency;
+    }
+
+    /**
+     * Updates the limit after a call.
+     * @param now      current time in nanoseconds.
+     * @param rtt      duration of the call in nanoseconds.
+     * @param inFlight number of calls running when the call finished, including the call itself.
+     * @param overload whether the FHIR server failed with a sign of overload.
+     */
+    void update(long now, long rtt, int inFlight, boolean overload) {
+        if (tolerance <= 0) {
+            return;
+        }
+        boolean slow = latency > 0 && rtt > latency * tolerance;
+        if (!overload) {
+            if (latency == 0 || rtt < latency) {
+                latency = rtt;
+            } else if (limit <= min) {
+                latency += (rtt - latency) * Math.min(1.0, (double) (now - lastUpdate) / DRIFT_PERIOD);
+            }
+        }
+        lastUpdate = now;
+        if (overload || slow) {
+            if (now - lastDecrease > latency) {
+                limit = Math.max(min, limit * BACKOFF);
+                lastDecrease = now;
+            }
+        } else if (inFlight * 2 >= limit) {
+            limit = Math.min(max, limit + 1 / limit);
+        }
+    }
+
+}
@@ -0,0 +1,230 @@
+package fhirspark;
+
+import fhirspark.settings.AdmissionSettings;
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.HandlerWrapper;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limits the number of requests per lane that are handled at the same time, in front of all routes. Unlike the
+ * bulkheads, which guard single calls to the FHIR server from within a route, a request beyond the limit does not
+ * hold a request thread while it waits: it is suspended and dispatched again in arrival order once a request of
+ * its lane finished. If the queue of the lane is full or the wait is over, it is answered with 503 right away.
+ */
+final class Admission extends HandlerWrapper {
+
+    private static final String ADMITTED = Admission.class.getName() + ".admitted";
+    private static final String RETRY_AFTER = "1";
+
+    private final Map<Lane, Gate> gates = new EnumMap<>(Lane.class);
+
+    /**
+     * @param settings limits per lane, lanes without a limit are not tracked.
+     */
+    Admission(AdmissionSettings settings) {
+        add(Lane.INTERACTIVE, settings.getInteractive());
+        add(Lane.WRITE, settings.getWrite());
+        add(Lane.BULK, settings.getBulk());
+    }
+
+    private void add(Lane lane, AdmissionSettings.Lane limits) {
+        if (limits != null && limits.getMaxConcurrent() != null && limits.getMaxConcurrent() > 0) {
+            gates.put(lane, new Gate(lane, limits.getMaxConcurrent(), limits.getMaxQueue(), limits.getMaxWait()));
+        }
+    }
+
+    @Override
+    public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response)
+            throws IOException, ServletException {
+        Gate gate = (Gate) request.getAttribute(ADMITTED);
+        if (gate == null && request.getDispatcherType() == DispatcherType.REQUEST) {
+            gate = gates.get(Lane.of(request.getMethod(), baseRequest.getPathInfo()));
+            if (gate != null && !gate.enter(request, response)) {
+                baseRequest.setHandled(true);
+                return;
+            }
+        }
+        try {
+            super.handle(target, baseRequest, request, response);
+        } finally {
+            if (gate != null) {
+                gate.exit();
+            }
+        }
+    }
+
+    /**
+     * @return running, queued, admitted and rejected requests per limited lane.
+     */
+    Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        gates.forEach((lane, gate) -> stats.put(lane.name().toLowerCase(Locale.ROOT), gate.stats()));
+        return stats;
+    }
+
+    private static void reject(HttpServletRequest request, HttpServletResponse response, Lane lane)
+            throws IOException {
+        response.setStatus(HttpStatus.SERVICE_UNAVAILABLE_503);
+        response.setHeader("Access-Control-Allow-Origin", request.getHeader("Origin"));
+        response.setHeader("Vary", "Origin, Access-Control-Request-Headers");
+        response.setHeader("Retry-After", RETRY_AFTER);
+        response.setContentType("text/plain");
+        response.getOutputStream().write(("Too many concurrent " + lane.name().toLowerCase(Locale.ROOT)
+                + " requests").getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Limit and queue of one lane. A finished request hands its slot directly to the oldest waiting one.
+     */
+    private static final class Gate {
+
+        private final Lane lane;
+        private final int maxConcurrent;
+        private final int maxQueue;
+        private final long maxWait;
+        // the lock is not a monitor, so that request threads contending for it on virtual threads do not pin their
+        // carrier threads
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Deque<AsyncContext> queue = new ArrayDeque<>();
+        private int running;
+        private long admitted;
+        private long rejected;
+
+        Gate(Lane lane, int maxConcurrent, int maxQueue, long maxWait) {
+            this.lane = lane;
+            this.maxConcurrent = maxConcurrent;
+            this.maxQueue = maxQueue;
+            this.maxWait = maxWait;
+        }
+
+        /**
+         * @return true if the request can be handled now. Otherwise it was suspended or answered with 503.
+         */
+        boolean enter(HttpServletRequest request, HttpServletResponse response) throws IOException {
+            lock.lock();
+            try {
+                if (running < maxConcurrent) {
+                    running++;
+                    admitted++;
+                    return true;
+                }
+                if (queue.size() < maxQueue) {
+                    AsyncContext async = request.startAsync();
+                    async.setTimeout(maxWait);
+                    async.addListener(new Expiry(this));
+                    queue.add(async);
+                    return false;
+                }
+                rejected++;
+            } finally {
+                lock.unlock();
+            }
+            reject(request, response, lane);
+            return false;
+        }
+
+        /**
+         * Passes the slot of a finished request on to the oldest waiting one, or frees it.
+         */
+        void exit() {
+            AsyncContext next;
+            lock.lock();
+            try {
+                next = queue.poll();
+                if (next == null) {
+                    running--;
+                    return;
+                }
+                admitted++;
+            } finally {
+                lock.unlock();
+            }
+            next.getRequest().setAttribute(ADMITTED, this);
+            next.dispatch();
+        }
+
+        /**
+         * @return true if the request was still waiting, false if it got a slot meanwhile.
+         */
+        boolean expire(AsyncContext async) {
+            lock.lock();
+            try {
+                if (!queue.remove(async)) {
+                    return false;
+                }
+                rejected++;
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        Map<String, Object> stats() {
+            lock.lock();
+            try {
+                Map<String, Object> stats = new LinkedHashMap<>();
+                stats.put("limit", maxConcurrent);
+                stats.put("running", running);
+                stats.put("queued", queue.size());
+                stats.put("admitted", admitted);
+                stats.put("rejected", rejected);
+                return stats;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Answers a suspended request with 503 once its wait is over.
+     */
+    private static final class Expiry implements AsyncListener {
+
+        private final Gate gate;
+
+        Expiry(Gate gate) {
+            this.gate = gate;
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) throws IOException {
+            AsyncContext async = event.getAsyncContext();
+            if (gate.expire(async)) {
+                reject((HttpServletRequest) async.getRequest(), (HttpServletResponse) async.getResponse(),
+                        gate.lane);
+                async.complete();
+            }
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            gate.expire(event.getAsyncContext());
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+    }
+
+}
@@ -0,0 +1,201 @@
+package fhirspark;
+
+import ca.uhn.fhir.rest.client.exceptions.FhirClientConnectionException;
+import ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limits the number of concurrent calls to the FHIR server of one kind. Calls beyond the limit wait in a bounded
+ * queue for a bounded time and get a slot in the order they arrived; if the queue is full or the time is up, the
+ * call is rejected with a {@link RejectedException} instead of holding a request thread until the FHIR server
+ * answers. No call waits beyond the deadline of its request. The limit adapts to the latency of the calls, see
+ * {@link AdaptiveLimit}.
+ */
+final class Bulkhead {
+
+    private static final int TOO_MANY_REQUESTS = 429;
+    private static final int SERVER_ERROR = 500;
+
+    /**
+     * Call guarded by a bulkhead.
+     * @param <T> result type.
+     * @param <E> checked exception of the call.
+     */
+    @FunctionalInterface
+    interface Call<T, E extends Exception> {
+        T call() throws E;
+    }
+
+    /**
+     * Call without result guarded by a bulkhead.
+     * @param <E> checked exception of the call.
+     */
+    @FunctionalInterface
+    interface Action<E extends Exception> {
+        void run() throws E;
+    }
+
+    /**
+     * Thrown if a call was rejected because the bulkhead is full.
+     */
+    static final class RejectedException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        RejectedException(String name) {
+            super("Too many concurrent " + name + " requests to the FHIR server");
+        }
+    }
+
+    private final String name;
+    private final AdaptiveLimit limit;
+    private final int maxQueue;
+    private final long maxWait;
+    private final ReentrantLock lock = new ReentrantLock(true);
+    private final Condition available = lock.newCondition();
+    private int active;
+    private int queued;
+    private long completed;
+    private long rejected;
+
+    /**
+     * @param name     name of the bulkhead as reported by {@link #stats()}.
+     * @param limit    limit of concurrent calls.
+     * @param maxQueue maximum number of calls waiting for a slot.
+     * @param maxWait  milliseconds a call waits for a slot.
+     */
+    Bulkhead(String name, AdaptiveLimit limit, int maxQueue, long maxWait) {
+        this.name = name;
+        this.limit = limit;
+        this.maxQueue = maxQueue;
+        this.maxWait = maxWait;
+    }
+
+    /**
+     * @param name          name of the bulkhead as reported by {@link #stats()}.
+     * @param maxConcurrent fixed maximum number of concurrent calls.
+     * @param maxQueue      maximum number of calls waiting for a slot.
+     * @param maxWait       milliseconds a call waits for a slot.
+     */
+    Bulkhead(String name, int maxConcurrent, int maxQueue, long maxWait) {
+        this(name, AdaptiveLimit.fixed(maxConcurrent), maxQueue, maxWait);
+    }
+
+    String getName() {
+        return name;
+    }
+
+    <T, E extends Exception> T call(Call<T, E> call) throws E {
+        acquire();
+        long start = System.nanoTime();
+        boolean overload = false;
+        try {
+            return call.call();
+        } catch (BaseServerResponseException e) {
+            overload = isOverload(e);
+            throw e;
+        } finally {
+            release(System.nanoTime() - start, overload);
+        }
+    }
+
+    <E extends Exception> void run(Action<E> action) throws E {
+        call(() -> {
+            action.run();
+            return null;
+        });
+    }
+
+    /**
+     * @return true if the FHIR server could not be reached in time or answered that it is overloaded. Client
+     *         errors like an invalid resource say nothing about the load.
+     */
+    static boolean isOverload(Exception e) {
+        if (e instanceof FhirClientConnectionException) {
+            return true;
+        }
+        if (e instanceof BaseServerResponseException) {
+            int status = ((BaseServerResponseException) e).getStatusCode();
+            return status >= SERVER_ERROR || status == TOO_MANY_REQUESTS;
+        }
+        return false;
+    }
+
+    private void acquire() {
+        lock.lock();
+        try {
+            if (queued == 0 && active < limit.get()) {
+                active++;
+                return;
+            }
+            if (queued >= maxQueue) {
+                rejected++;
+                throw new RejectedException(name);
+            }
+            queued++;
+            try {
+                long remaining = TimeUnit.MILLISECONDS.toNanos(Deadline.cap(maxWait));
+                while (active >= limit.get()) {
+                    if (remaining <= 0) {
+                        rejected++;
+                        throw new RejectedException(name);
+                    }
+                    remaining = available.awaitNanos(remaining);
+                }
+                active++;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                // pass on a wake-up this thread may have consumed
+                available.signal();
+                rejected++;
+                throw new RejectedException(name);
+            } finally {
+                queued--;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void release(long rtt, boolean overload) {
+        lock.lock();
+        try {
+            limit.update(System.nanoTime(), rtt, active, overload);
+            active--;
+            completed++;
+            // wake the longest waiting calls, one per free slot
+            for (int free = Math.min(limit.get() - active, queued); free > 0; free--) {
+                available.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return current and maximum limit, latency without load, running and queued calls and the number of completed and
+     *         rejected calls.
+     */
+    Map<String, Object> stats() {
+        lock.lock();
+        try {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("limit", limit.get());
+            stats.put("maxLimit", limit.getMax());
+            stats.put("latencyMillis", TimeUnit.NANOSECONDS.toMillis(limit.latency()));
+            stats.put("active", active);
+            stats.put("queued", queued);
+            stats.put("completed", completed);
+            stats.put("rejected", rejected);
+            return stats;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+}
@@ -0,0 +1,180 @@
+package fhirspark;
+
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Fails calls to the FHIR server fast while it is down. After failureThreshold consecutive calls failed with a
+ * sign of overload or unavailability, the breaker opens and rejects calls for openDuration milliseconds. Then a
+ * single probe call is let through (half open): if it succeeds the breaker closes, if it fails it opens again.
+ */
+final class CircuitBreaker {
+
+    /**
+     * State of the breaker.
+     */
+    enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    /**
+     * Thrown if a call was rejected because the breaker is open.
+     */
+    static final class OpenException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        private final long retryAfter;
+
+        OpenException(long retryAfter) {
+            super("The FHIR server is unavailable");
+            this.retryAfter = retryAfter;
+        }
+
+        /**
+         * @return milliseconds until the breaker lets a probe call through.
+         */
+        long getRetryAfter() {
+            return retryAfter;
+        }
+    }
+
+    private final int failureThreshold;
+    private final long openDuration;
+    // the lock is not a monitor, so that request threads contending for it on virtual threads do not pin their
+    // carrier threads
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<State, Long> transitions = new LinkedHashMap<>();
+    private State state = State.CLOSED;
+    private int failures;
+    private long openedAt;
+    private boolean probing;
+    private long lastTransition = System.currentTimeMillis();
+
+    /**
+     * @param failureThreshold consecutive failures that open the breaker.
+     * @param openDuration     milliseconds the breaker stays open before a probe call.
+     */
+    CircuitBreaker(int failureThreshold, long openDuration) {
+        this.failureThreshold = failureThreshold;
+        this.openDuration = openDuration;
+        for (State s : State.values()) {
+            transitions.put(s, 0L);
+        }
+    }
+
+    /**
+     * Asks for permission to call the FHIR server. Every permitted call has to be followed by
+     * {@link #onSuccess()}, {@link #onFailure()} or {@link #onIgnored()}.
+     * @throws OpenException if the breaker is open or a probe call is already running.
+     */
+    void acquire() {
+        lock.lock();
+        try {
+            long now = System.currentTimeMillis();
+            if (state == State.OPEN) {
+                long remaining = openedAt + openDuration - now;
+                if (remaining > 0) {
+                    throw new OpenException(remaining);
+                }
+                transition(State.HALF_OPEN, now);
+            }
+            if (state == State.HALF_OPEN) {
+                if (probing) {
+                    throw new OpenException(0);
+                }
+                probing = true;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The FHIR server answered, even if with a client error.
+     */
+    void onSuccess() {
+        lock.lock();
+        try {
+            probing = false;
+            failures = 0;
+            if (state != State.CLOSED) {
+                transition(State.CLOSED, System.currentTimeMillis());
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The FHIR server could not be reached or answered that it is unavailable or overloaded.
+     */
+    void onFailure() {
+        lock.lock();
+        try {
+            probing = false;
+            failures++;
+            if (state == State.HALF_OPEN || state == State.CLOSED && failures >= failureThreshold) {
+                long now = System.currentTimeMillis();
+                openedAt = now;
+                transition(State.OPEN, now);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The call did not reach the FHIR server, e.g. because it was rejected by a bulkhead.
+     */
+    void onIgnored() {
+        lock.lock();
+        try {
+            probing = false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    State getState() {
+        lock.lock();
+        try {
+            return state;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void transition(State to, long now) {
+        System.out.println("Circuit breaker of the FHIR server: " + state + " -> " + to);
+        state = to;
+        lastTransition = now;
+        transitions.merge(to, 1L, Long::sum);
+    }
+
+    /**
+     * @return state, consecutive failures, time of the last transition and the number of transitions into each
+     *         state.
+     */
+    Map<String, Object> stats() {
+        lock.lock();
+        try {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("state", state.name().toLowerCase(Locale.ROOT));
+            stats.put("consecutiveFailures", failures);
+            stats.put("lastTransition", Instant.ofEpochMilli(lastTransition).toString());
+            Map<String, Long> counts = new LinkedHashMap<>();
+            transitions.forEach((s, count) -> counts.put(s.name().toLowerCase(Locale.ROOT), count));
+            stats.put("transitions", counts);
+            return stats;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+}
@@ -0,0 +1,129 @@
+package fhirspark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Point in time by which a request has to be answered. FhirSpark sets it when a request arrives, every call to
+ * the FHIR server made on behalf of the request, also those of the adapters, checks it before it is sent and
+ * gets at most the remaining time as timeout. Once the deadline passed or the client disconnected, the remaining
+ * calls fail with {@link ExceededException}.
+ */
+final class Deadline {
+
+    private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<>();
+
+    /**
+     * Thrown if the deadline of the request passed or its client disconnected.
+     */
+    static final class ExceededException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        ExceededException(String message) {
+            super(message);
+        }
+    }
+
+    private final long expiresAt;
+    private final BooleanSupplier disconnected;
+
+    private Deadline(long expiresAt, BooleanSupplier disconnected) {
+        this.expiresAt = expiresAt;
+        this.disconnected = disconnected;
+    }
+
+    /**
+     * @param millis       time the request may take in milliseconds.
+     * @param disconnected tells whether the client has gone away.
+     * @return deadline millis from now.
+     */
+    static Deadline after(long millis, BooleanSupplier disconnected) {
+        return new Deadline(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis), disconnected);
+    }
+
+    /**
+     * @param deadlines deadlines of requests that wait for the same work, null for a request without one.
+     * @return deadline that passes with the latest of them and counts as disconnected once all of their clients
+     *         disconnected, or null if one of the requests has none.
+     */
+    static Deadline latest(List<Deadline> deadlines) {
+        if (deadlines.isEmpty() || deadlines.contains(null)) {
+            return null;
+        }
+        long expiresAt = deadlines.get(0).expiresAt;
+        for (Deadline deadline : deadlines) {
+            if (deadline.expiresAt - expiresAt > 0) {
+                expiresAt = deadline.expiresAt;
+            }
+        }
+        List<Deadline> all = List.copyOf(deadlines);
+        return new Deadline(expiresAt, () -> all.stream().allMatch(d -> d.disconnected.getAsBoolean()));
+    }
+
+    /**
+     * @return deadline of the request handled by the current thread, or null if there is none.
+     */
+    static Deadline current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * @param deadline deadline of the request handled by the current thread, null to remove it.
+     */
+    static void set(Deadline deadline) {
+        if (deadline == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(deadline);
+        }
+    }
+
+    /**
+     * Runs work for a request on another thread under the deadline of the request.
+     * @param <T>      result type.
+     * @param deadline deadline of the request, may be null.
+     * @param work     work to run.
+     * @return result of the work.
+     */
+    static <T> T with(Deadline deadline, Supplier<T> work) {
+        Deadline previous = CURRENT.get();
+        set(deadline);
+        try {
+            return work.get();
+        } finally {
+            set(previous);
+        }
+    }
+
+    /**
+     * @param max upper bound in milliseconds.
+     * @return the smaller of max and the remaining time of the current request, at least 1.
+     */
+    static long cap(long max) {
+        Deadline deadline = current();
+        return deadline == null ? max : Math.max(1, Math.min(max, deadline.remainingMillis()));
+    }
+
+    /**
+     * @return remaining time in milliseconds, negative if the deadline passed.
+     */
+    long remainingMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(expiresAt - System.nanoTime());
+    }
+
+    /**
+     * @throws ExceededException if the deadline passed or the client disconnected.
+     */
+    void check() {
+        if (remainingMillis() <= 0) {
+            throw new ExceededException("The request took longer than its deadline");
+        }
+        if (disconnected.getAsBoolean()) {
+            throw new ExceededException("The client disconnected");
+        }
+    }
+
+}
@@ -1,41 +1,71 @@
 package fhirspark;
 
 import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.sun.jersey.api.client.Client;
 import com.sun.jersey.api.client.ClientResponse;
 import com.sun.jersey.api.client.WebResource;
+import fhirspark.adapter.RegexAdapter;
 import fhirspark.adapter.SpecimenAdapter;
 import fhirspark.adapter.TherapyRecommendationAdapter;
 import fhirspark.resolver.HgncGeneName;
 import fhirspark.resolver.OncoKbDrug;
+import fhirspark.resolver.ReferenceDataWatcher;
 import fhirspark.restmodel.CbioportalRest;
 import fhirspark.restmodel.Deletions;
 import fhirspark.restmodel.FollowUp;
 import fhirspark.restmodel.GeneticAlteration;
 import fhirspark.restmodel.Mtb;
+import fhirspark.settings.AdmissionSettings;
 import fhirspark.settings.ConfigurationLoader;
+import fhirspark.settings.DeadlineSettings;
 import fhirspark.settings.Settings;
+import fhirspark.settings.ThreadPoolSettings;
+import fhirspark.settings.WriteBehindSettings;
 
 import org.apache.log4j.BasicConfigurator;
 import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.server.Handler;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
+import spark.Filter;
 import spark.Request;
 import spark.Response;
+import spark.Route;
+import spark.embeddedserver.EmbeddedServers;
+import spark.embeddedserver.jetty.EmbeddedJettyFactory;
+import spark.embeddedserver.jetty.JettyServerFactory;
 
 import javax.ws.rs.core.Cookie;
 
 import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import static spark.Spark.afterAfter;
+import static spark.Spark.before;
 import static spark.Spark.delete;
+import static spark.Spark.exception;
 import static spark.Spark.get;
+import static spark.Spark.halt;
 import static spark.Spark.options;
 import static spark.Spark.port;
 import static spark.Spark.post;
@@ -48,34 +78,239 @@ import static spark.Spark.put;
  */
 public final class FhirSpark {
 
-    private static JsonFhirMapper jsonFhirMapper;
+    private static final String RETRY_AFTER = "1";
+    private static final String REQUEST_START = "fhirspark.start";
+    private static final String WRITE_MTB = "mtb";
+    private static final String WRITE_FOLLOW_UP = "followup";
+
+    private static volatile JsonFhirMapper jsonFhirMapper;
+    private static volatile WriteBehind writeBehind;
+    private static Admission admission;
+    private static Startup startup = new Startup();
     private static Settings settings;
     private static Client client = new Client();
     private static ObjectMapper objectMapper = new ObjectMapper(new JsonFactory());
+    private static Map<Lane, LatencyHistogram> latencies = new EnumMap<>(Lane.class);
 
     private FhirSpark() {
     }
 
     /**
      *
-     * @param args args[0] can contain a path to a custom configuration yaml file.
+     * @param args args[0] can contain a path to a custom configuration yaml file. If args[0] is "index", the
+     *             binary snapshots of the reference data are compiled and the application exits, args[1] can then
+     *             contain the path to the configuration.
      * @throws Exception Exception if the REST API runs into issues.
      */
     public static void main(final String[] args) throws Exception {
         BasicConfigurator.configure();
+        boolean indexOnly = args.length > 0 && "index".equals(args[0]);
+        String[] options = indexOnly ? Arrays.copyOfRange(args, 1, args.length) : args;
         InputStream settingsYaml = ClassLoader.getSystemClassLoader().getResourceAsStream("settings.yaml");
-        if (args.length == 1) {
-            settingsYaml = new FileInputStream(args[0]);
+        if (options.length == 1) {
+            settingsYaml = new FileInputStream(options[0]);
         }
         ConfigurationLoader configLoader = new ConfigurationLoader();
         settings = configLoader.loadConfiguration(settingsYaml, Settings.class);
-        HgncGeneName.initialize(settings.getHgncPath());
-        OncoKbDrug.initalize(settings.getOncokbPath());
-        SpecimenAdapter.initialize(settings.getSpecimenSystem());
-        TherapyRecommendationAdapter.initialize(settings.getObservationSystem(), settings.getStudySystem());
-        jsonFhirMapper = new JsonFhirMapper(settings);
+        if (indexOnly) {
+            HgncGeneName.buildSnapshot(settings.getHgncPath());
+            OncoKbDrug.buildSnapshot(settings.getOncokbPath());
+            return;
+        }
+        Startup.Phase hgnc = startup.phase("hgnc", () -> {
+            try {
+                HgncGeneName.initialize(settings.getHgncPath());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        Startup.Phase oncokb = startup.phase("oncokb", () -> {
+            try {
+                OncoKbDrug.initalize(settings.getOncokbPath());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        Startup.Phase adapters = startup.phase("adapters", () -> {
+            RegexAdapter.initialize(settings.getRegex());
+            SpecimenAdapter.initialize(settings.getSpecimenSystem());
+            TherapyRecommendationAdapter.initialize(settings.getObservationSystem(), settings.getStudySystem());
+        });
+        Startup.Phase fhir = startup.phase("fhir", () -> jsonFhirMapper = new JsonFhirMapper(settings));
+        if (!Boolean.FALSE.equals(settings.getWarmUp())) {
+            startup.phase("warmup", () -> jsonFhirMapper.warmUp(), hgnc, oncokb, adapters, fhir);
+        }
+        WriteBehindSettings writeBehindSettings = settings.getWriteBehind() != null ? settings.getWriteBehind()
+                : new WriteBehindSettings();
+        if (Boolean.TRUE.equals(writeBehindSettings.getEnabled())) {
+            startup.phase("journal", () -> startWriteBehind(writeBehindSettings), hgnc, oncokb, adapters, fhir);
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> shutdown(writeBehindSettings)));
+        admission = new Admission(settings.getAdmission() != null ? settings.getAdmission()
+                : new AdmissionSettings());
+        configureServer(settings.getThreadPool());
+        startup.whenReady(() -> {
+            ReferenceDataWatcher.start(settings.getHgncPath(), settings.getOncokbPath());
+            try {
+                System.out.println("Startup finished: " + objectMapper.writeValueAsString(startup.status()));
+            } catch (JsonProcessingException e) {
+                System.out.println("Startup finished, the phase status could not be written: " + e.getMessage());
+            }
+        });
         port(settings.getPort());
 
+        /**
+        *
+        * Reports whether all startup phases are finished, together with their state and duration.
+        *
+        * @return OK_200 if ready
+        * @return SERVICE_UNAVAILABLE_503 if still starting or a phase failed
+        */
+
+        get("/ready", readiness(startup));
+
+        before(readinessGate(startup));
+
+        for (Lane lane : Lane.values()) {
+            latencies.put(lane, new LatencyHistogram());
+        }
+
+        DeadlineSettings deadlines = settings.getDeadline() != null ? settings.getDeadline() : new DeadlineSettings();
+        before((req, res) -> {
+            req.attribute(REQUEST_START, System.nanoTime());
+            Integer timeout = deadline(deadlines, Lane.of(req.requestMethod(), req.pathInfo()));
+            if (timeout != null && timeout > 0) {
+                Deadline.set(Deadline.after(timeout, () -> disconnected(req)));
+            }
+        });
+
+        afterAfter((req, res) -> {
+            Deadline.set(null);
+            Lane lane = Lane.of(req.requestMethod(), req.pathInfo());
+            Long start = req.attribute(REQUEST_START);
+            if (lane != null && start != null) {
+                latencies.get(lane).record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            }
+        });
+
+        exception(CircuitBreaker.OpenException.class, (e, req, res) -> {
+            addRes(req, res);
+            res.status(HttpStatus.SERVICE_UNAVAILABLE_503);
+            res.header("Retry-After", String.valueOf(Math.max(1, TimeUnit.MILLISECONDS.toSeconds(
+                    e.getRetryAfter() + TimeUnit.SECONDS.toMillis(1) - 1))));
+            res.body(e.getMessage());
+        });
+
+        exception(Deadline.ExceededException.class, (e, req, res) -> {
+            addRes(req, res);
+            res.status(HttpStatus.GATEWAY_TIMEOUT_504);
+            res.body(e.getMessage());
+        });
+
+        exception(Bulkhead.RejectedException.class, (e, req, res) -> {
+            addRes(req, res);
+            res.status(HttpStatus.SERVICE_UNAVAILABLE_503);
+            res.header("Retry-After", RETRY_AFTER);
+            res.body(e.getMessage());
+        });
+
+        exception(Outbox.PendingException.class, (e, req, res) -> {
+            addRes(req, res);
+            res.status(HttpStatus.SERVICE_UNAVAILABLE_503);
+            res.header("Retry-After", RETRY_AFTER);
+            res.body(e.getMessage());
+        });
+
+        /**
+        *
+        * Reports the load on the FHIR server: running, queued and rejected calls per kind of call, the state of
+        * the circuit breaker, retries, waits for writes of the same patient, merged saves, saves waiting in the
+        * write-behind journal and the latency of the requests per lane.
+        *
+        * @return OK_200 with the counters
+        */
+
+        get("/metrics", (req, res) -> {
+            Map<String, Object> metrics = new LinkedHashMap<>();
+            metrics.put("admission", admission.stats());
+            metrics.put("bulkheads", jsonFhirMapper.bulkheadStats());
+            metrics.put("resilience", jsonFhirMapper.resilienceStats());
+            metrics.put("patientLocks", jsonFhirMapper.patientLockStats());
+            metrics.put("coalescing", jsonFhirMapper.coalescingStats());
+            if (jsonFhirMapper.outboxStats() != null) {
+                metrics.put("outbox", jsonFhirMapper.outboxStats());
+            }
+            if (writeBehind != null) {
+                metrics.put("writeBehind", writeBehind.stats());
+            }
+            Map<String, Object> lanes = new LinkedHashMap<>();
+            latencies.forEach((lane, histogram) -> lanes.put(lane.name().toLowerCase(Locale.ROOT),
+                    histogram.snapshot()));
+            metrics.put("lanes", lanes);
+            res.status(HttpStatus.OK_200);
+            res.type("application/json");
+            res.header("Cache-Control", "no-cache, no-store, max-age=0");
+            return objectMapper.writeValueAsString(metrics);
+        });
+
+        /**
+        *
+        * Reports whether a save accepted in write-behind mode was applied to the FHIR server
+        *
+        * @param req Incoming Java Spark Request
+        * @param id id of the save from the Location header of the PUT
+        * @return FORBIDDEN_403 if not authorized
+        * @return NOT_FOUND_404 if the save is unknown
+        * @return OK_200 with the state (queued, applied, outbox if the FHIR server was unavailable and the outbox
+        *         replays the save later, superseded or failed) and the error of a failed save
+        */
+
+        get("/write/:id", (req, res) -> {
+            if (settings.getLoginRequired() && !validateRequest(req)) {
+                res.status(HttpStatus.FORBIDDEN_403);
+                return res;
+            }
+            Map<String, Object> status = null;
+            if (writeBehind != null && req.params(":id").matches("\\d{1,18}")) {
+                status = writeBehind.status(Long.parseLong(req.params(":id")));
+            }
+            addContent(req, res);
+            res.header("Cache-Control", "no-cache, no-store, max-age=0");
+            if (status == null) {
+                res.status(HttpStatus.NOT_FOUND_404);
+                return "";
+            }
+            res.status(HttpStatus.OK_200);
+            return objectMapper.writeValueAsString(status);
+        });
+
+        options("/patient/:patientId", (req, res) -> {
+            addOptions(req, res);
+            res.header("Access-Control-Allow-Methods", "GET");
+            return res;
+        });
+
+        /**
+        *
+        * Returns MTBs and follow-ups of the patient in one document, authorized once and fetched concurrently
+        *
+        * @param req Incoming Java Spark Request
+        * @param patientId requested patientId
+        * @return FORBIDDEN_403 if not authorized
+        * @return OK_200 with id, mtbs and followUps of the patient
+        */
+
+        get("/patient/:patientId", (req, res) -> {
+            if (settings.getLoginRequired() && !validateRequest(req)) {
+                res.status(HttpStatus.FORBIDDEN_403);
+                return res;
+            }
+            res.status(HttpStatus.OK_200);
+            addContent(req, res);
+            res.body(jsonFhirMapper.patientToJson(req.params(":patientId")));
+            return res.body();
+        });
+
         options("/mtb/:patientId", (req, res) -> {
             addOptions(req, res);
             res.header("Access-Control-Allow-Methods", "GET, PUT, DELETE");
@@ -124,7 +359,11 @@ public final class FhirSpark {
             addContent(req, res);
 
             List<Mtb> mtbs = objectMapper.readValue(req.body(), CbioportalRest.class).getMtbs();
-            jsonFhirMapper.mtbFromJson(req.params(":patientId"), mtbs);
+            if (writeBehind != null) {
+                accepted(res, writeBehind.submit(WRITE_MTB, req.params(":patientId"), req.body()));
+            } else if (!jsonFhirMapper.saveMtbs(req.params(":patientId"), mtbs)) {
+                res.status(HttpStatus.ACCEPTED_202);
+            }
             res.body(req.body());
             return res.body();
         });
@@ -138,7 +377,7 @@ public final class FhirSpark {
             res.status(HttpStatus.OK_200);
             addContent(req, res);
             Deletions deletions = objectMapper.readValue(req.body(), Deletions.class);
-            jsonFhirMapper.deleteEntries(req.params(":patientId"), deletions);
+            deleteEntries(req.params(":patientId"), deletions);
             res.body(req.body());
             return res.body();
         });
@@ -214,7 +453,11 @@ public final class FhirSpark {
             res.status(HttpStatus.CREATED_201);
             addContent(req, res);
             List<FollowUp> followUps = objectMapper.readValue(req.body(), CbioportalRest.class).getFollowUps();
-            jsonFhirMapper.followUpFromJson(req.params(":patientId"), followUps);
+            if (writeBehind != null) {
+                accepted(res, writeBehind.submit(WRITE_FOLLOW_UP, req.params(":patientId"), req.body()));
+            } else if (!jsonFhirMapper.saveFollowUps(req.params(":patientId"), followUps)) {
+                res.status(HttpStatus.ACCEPTED_202);
+            }
             res.body(req.body());
             return res.body();
         });
@@ -228,7 +471,7 @@ public final class FhirSpark {
             res.status(HttpStatus.OK_200);
             addContent(req, res);
             Deletions deletions = objectMapper.readValue(req.body(), Deletions.class);
-            jsonFhirMapper.deleteEntries(req.params(":patientId"), deletions);
+            deleteEntries(req.params(":patientId"), deletions);
             res.body(req.body());
             return res.body();
         });
@@ -328,6 +571,145 @@ public final class FhirSpark {
 
     }
 
+    private static Integer deadline(DeadlineSettings deadlines, Lane lane) {
+        if (lane == null) {
+            return null;
+        }
+        switch (lane) {
+            case INTERACTIVE:
+                return deadlines.getInteractive();
+            case WRITE:
+                return deadlines.getWrite();
+            default:
+                return deadlines.getBulk();
+        }
+    }
+
+    /**
+     * @return true if Jetty noticed that the client closed the connection. Jetty does not read from the connection
+     *         while a request is handled, so a closed connection is mostly only noticed once a write failed or the
+     *         connection was closed by the idle timeout.
+     */
+    private static boolean disconnected(Request req) {
+        org.eclipse.jetty.server.Request base = org.eclipse.jetty.server.Request.getBaseRequest(req.raw());
+        return base != null && !base.getHttpChannel().getEndPoint().isOpen();
+    }
+
+    /**
+     * Configures the request threads of the embedded Jetty and puts the admission of requests per lane in front of
+     * all routes. Has to be called before the first route is mapped.
+     *
+     * @param threadPool thread settings, may be null
+     */
+    private static void configureServer(ThreadPoolSettings threadPool) {
+        ThreadPoolSettings pool = threadPool != null ? threadPool : new ThreadPoolSettings();
+        QueuedThreadPool jettyPool = new QueuedThreadPool(pool.getMaxThreads(), pool.getMinThreads(),
+                pool.getIdleTimeout());
+        if (pool.getVirtualThreads()) {
+            jettyPool.setVirtualThreadsExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        }
+        EmbeddedServers.add(EmbeddedServers.Identifiers.JETTY, new EmbeddedJettyFactory(new JettyServerFactory() {
+            @Override
+            public Server create(int maxThreads, int minThreads, int threadTimeoutMillis) {
+                return create(jettyPool);
+            }
+
+            @Override
+            public Server create(ThreadPool threadPool) {
+                return new Server(threadPool) {
+                    @Override
+                    public void setHandler(Handler handler) {
+                        admission.setHandler(handler);
+                        super.setHandler(admission);
+                    }
+                };
+            }
+        }).withThreadPool(jettyPool));
+    }
+
+    /**
+     * Opens the write-behind journal and applies the saves it recovered.
+     */
+    private static void startWriteBehind(WriteBehindSettings writeBehindSettings) {
+        try {
+            WriteJournal journal = new WriteJournal(Paths.get(writeBehindSettings.getDirectory()),
+                    writeBehindSettings.getSegmentSize(), false);
+            System.out.println("Write-behind journal: " + journal.recovered().size() + " saves to replay");
+            writeBehind = new WriteBehind(journal, FhirSpark::applyWrite, writeBehindSettings.getRetryDelay());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Drains the queued write-behind saves first, since they may end up in the outbox, and then stops replaying the
+     * outbox.
+     */
+    private static void shutdown(WriteBehindSettings writeBehindSettings) {
+        if (writeBehind != null && !writeBehind.drain(writeBehindSettings.getDrainTimeout())) {
+            System.out.println("WARNING: Not all saves were applied, they are replayed on the next start");
+        }
+        if (jsonFhirMapper != null) {
+            jsonFhirMapper.closeOutbox();
+        }
+    }
+
+    /**
+     * Deletes entries of a patient, unless older saves of the patient still wait in the write-behind journal:
+     * applying them afterwards would bring the deleted entries back.
+     */
+    private static void deleteEntries(String patientId, Deletions deletions) {
+        if (writeBehind != null && writeBehind.hasQueued(patientId)) {
+            throw new Outbox.PendingException("Saves of the patient wait to be applied to the FHIR server");
+        }
+        jsonFhirMapper.deleteEntries(patientId, deletions);
+    }
+
+    private static WriteBehind.State applyWrite(WriteJournal.Entry entry) throws IOException {
+        CbioportalRest rest = objectMapper.readValue(entry.getPayload(), CbioportalRest.class);
+        boolean sent;
+        if (WRITE_MTB.equals(entry.getKind())) {
+            sent = jsonFhirMapper.mtbFromJson(entry.getPatientId(), rest.getMtbs());
+        } else {
+            sent = jsonFhirMapper.followUpFromJson(entry.getPatientId(), rest.getFollowUps());
+        }
+        return sent ? WriteBehind.State.APPLIED : WriteBehind.State.OUTBOX;
+    }
+
+    private static void accepted(Response res, long id) {
+        res.status(HttpStatus.ACCEPTED_202);
+        res.header("Location", "/write/" + id);
+        res.header("Access-Control-Expose-Headers", "Location");
+    }
+
+    /**
+     * @param startup startup of the application.
+     * @return route that reports the startup status, with 503 until all phases finished successfully.
+     */
+    static Route readiness(Startup startup) {
+        return (req, res) -> {
+            res.status(startup.isReady() ? HttpStatus.OK_200 : HttpStatus.SERVICE_UNAVAILABLE_503);
+            res.type("application/json");
+            res.header("Cache-Control", "no-cache, no-store, max-age=0");
+            return objectMapper.writeValueAsString(startup.status());
+        };
+    }
+
+    /**
+     * @param startup startup of the application.
+     * @return filter that answers every request except preflights and /ready with 503 and Retry-After until all
+     *         phases finished successfully.
+     */
+    static Filter readinessGate(Startup startup) {
+        return (req, res) -> {
+            if (!startup.isReady() && !"OPTIONS".equals(req.requestMethod()) && !"/ready".equals(req.pathInfo())) {
+                addRes(req, res);
+                res.header("Retry-After", RETRY_AFTER);
+                halt(HttpStatus.SERVICE_UNAVAILABLE_503, "FhirSpark is starting");
+            }
+        };
+    }
+
     private static void addRes(Request req, Response res) {
         res.header("Access-Control-Allow-Origin", req.headers("Origin"));
         res.header("Vary", "Origin, Access-Control-Request-Headers");
@@ -0,0 +1,213 @@
+package fhirspark;
+
+import ca.uhn.fhir.rest.client.exceptions.FhirClientConnectionException;
+import ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.entity.BufferedHttpEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.HttpContext;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Apache HTTP client of the FHIR client that guards every single call to the FHIR server, also the lookups the
+ * adapters make while converting resources: each call has to pass the circuit breaker and needs a slot of the
+ * bulkhead of its lane until the FHIR server answered, and its latency and whether the server was overloaded adapt
+ * the limit of that bulkhead. Idempotent calls that failed transiently are retried, see {@link Resilience}. No
+ * attempt is sent once the {@link Deadline} of the request passed or its client disconnected; otherwise waiting
+ * for a connection, connecting and every read time out at the latest when the deadline passes, and such a timeout
+ * fails the call with {@link Deadline.ExceededException} instead of counting against the FHIR server. The
+ * lane is set by {@link #lane(Bulkhead, Supplier)} for the work of a request; calls outside of a lane, e.g. of the
+ * outbox, use the read bulkhead for GET and the write bulkhead otherwise.
+ */
+final class GuardedHttpClient extends CloseableHttpClient {
+
+    private static final ThreadLocal<Bulkhead> LANE = new ThreadLocal<>();
+    private static final int TOO_MANY_REQUESTS = 429;
+    private static final int SERVER_ERROR = 500;
+    private static final Set<String> IDEMPOTENT = Set.of("GET", "HEAD", "OPTIONS", "PUT", "DELETE");
+
+    /**
+     * Answer of the FHIR server that it failed or is overloaded. The entity is buffered, so the connection is
+     * released and the answer can still be passed on to the FHIR client.
+     */
+    private static final class FailedResponseException extends BaseServerResponseException {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient CloseableHttpResponse response;
+
+        FailedResponseException(CloseableHttpResponse response) {
+            super(response.getStatusLine().getStatusCode(), response.getStatusLine().getReasonPhrase());
+            this.response = response;
+        }
+
+        CloseableHttpResponse getResponse() {
+            return response;
+        }
+    }
+
+    private final CloseableHttpClient delegate;
+    private final Resilience resilience;
+    private final Bulkhead reads;
+    private final Bulkhead writes;
+    private final RequestConfig config;
+
+    /**
+     * @param delegate   client that sends the calls.
+     * @param resilience circuit breaker and retries of the calls.
+     * @param reads      bulkhead of GET calls outside of a lane.
+     * @param writes     bulkhead of other calls outside of a lane.
+     * @param config     configured timeouts of the calls.
+     */
+    GuardedHttpClient(CloseableHttpClient delegate, Resilience resilience, Bulkhead reads, Bulkhead writes,
+            RequestConfig config) {
+        this.delegate = delegate;
+        this.resilience = resilience;
+        this.reads = reads;
+        this.writes = writes;
+        this.config = config;
+    }
+
+    /**
+     * Runs work whose calls to the FHIR server count against a bulkhead. Work for a request on another thread
+     * has to enter the lane there again.
+     * @param <T>      result type.
+     * @param bulkhead bulkhead of the calls.
+     * @param work     work to run on the current thread.
+     * @return result of the work.
+     */
+    static <T> T lane(Bulkhead bulkhead, Supplier<T> work) {
+        Bulkhead previous = LANE.get();
+        LANE.set(bulkhead);
+        try {
+            return work.get();
+        } finally {
+            if (previous == null) {
+                LANE.remove();
+            } else {
+                LANE.set(previous);
+            }
+        }
+    }
+
+    /**
+     * @param request call to the FHIR server.
+     * @return bulkhead of the current lane, or of the method of the call outside of a lane.
+     */
+    Bulkhead bulkhead(HttpRequest request) {
+        Bulkhead lane = LANE.get();
+        if (lane != null) {
+            return lane;
+        }
+        return "GET".equals(request.getRequestLine().getMethod()) ? reads : writes;
+    }
+
+    @Override
+    protected CloseableHttpResponse doExecute(HttpHost target, HttpRequest request, HttpContext context)
+            throws IOException, ClientProtocolException {
+        try {
+            return resilience.call(bulkhead(request), isIdempotent(request), () -> attempt(target, request, context));
+        } catch (FailedResponseException e) {
+            return e.getResponse();
+        }
+    }
+
+    /**
+     * @return true if the call can be sent again: its method is idempotent and its body, if any, can be repeated.
+     *         A transaction is a POST, it is retried as a whole by the caller if its entries allow it.
+     */
+    private static boolean isIdempotent(HttpRequest request) {
+        if (!IDEMPOTENT.contains(request.getRequestLine().getMethod())) {
+            return false;
+        }
+        return !(request instanceof HttpEntityEnclosingRequest)
+                || ((HttpEntityEnclosingRequest) request).getEntity() == null
+                || ((HttpEntityEnclosingRequest) request).getEntity().isRepeatable();
+    }
+
+    /**
+     * Sends the call once.
+     * @throws Deadline.ExceededException    if the deadline of the request passed before or while the call ran.
+     * @throws FhirClientConnectionException if the FHIR server could not be reached.
+     * @throws FailedResponseException       if the FHIR server answered with 5xx or 429.
+     */
+    private CloseableHttpResponse attempt(HttpHost target, HttpRequest request, HttpContext context) {
+        Deadline deadline = Deadline.current();
+        if (deadline != null) {
+            deadline.check();
+            applyDeadline(request);
+        }
+        try {
+            CloseableHttpResponse response = delegate.execute(target, request, context);
+            int status = response.getStatusLine().getStatusCode();
+            if (status >= SERVER_ERROR || status == TOO_MANY_REQUESTS) {
+                if (response.getEntity() != null) {
+                    response.setEntity(new BufferedHttpEntity(response.getEntity()));
+                }
+                response.close();
+                throw new FailedResponseException(response);
+            }
+            return response;
+        } catch (InterruptedIOException e) {
+            if (deadline != null && deadline.remainingMillis() <= 0) {
+                throw new Deadline.ExceededException("The FHIR server did not answer before the deadline");
+            }
+            throw new FhirClientConnectionException(e);
+        } catch (IOException e) {
+            throw new FhirClientConnectionException(e);
+        }
+    }
+
+    /**
+     * Bounds the timeouts of the call by the remaining time of the request.
+     */
+    private void applyDeadline(HttpRequest request) {
+        if (request instanceof HttpRequestBase) {
+            HttpRequestBase base = (HttpRequestBase) request;
+            RequestConfig current = base.getConfig() != null ? base.getConfig() : config;
+            base.setConfig(RequestConfig.copy(current)
+                    .setConnectTimeout(timeout(config.getConnectTimeout()))
+                    .setConnectionRequestTimeout(timeout(config.getConnectionRequestTimeout()))
+                    .setSocketTimeout(timeout(config.getSocketTimeout()))
+                    .build());
+        }
+    }
+
+    /**
+     * @param configured configured timeout in milliseconds, 0 or less for none.
+     * @return the configured timeout, but at most the remaining time of the request.
+     */
+    private static int timeout(int configured) {
+        return (int) Deadline.cap(configured > 0 ? configured : Integer.MAX_VALUE);
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+    }
+
+    @Override
+    @Deprecated
+    public HttpParams getParams() {
+        return delegate.getParams();
+    }
+
+    @Override
+    @Deprecated
+    public ClientConnectionManager getConnectionManager() {
+        return delegate.getConnectionManager();
+    }
+
+}
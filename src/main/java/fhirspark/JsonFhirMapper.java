@@ -2,27 +2,46 @@ package fhirspark;
 
 import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.parser.DataFormatException;
+import ca.uhn.fhir.parser.IParser;
+import ca.uhn.fhir.rest.api.EncodingEnum;
+import ca.uhn.fhir.rest.client.apache.GZipContentInterceptor;
 import ca.uhn.fhir.rest.client.api.IGenericClient;
+import ca.uhn.fhir.rest.gclient.ICriterion;
 import ca.uhn.fhir.rest.gclient.ReferenceClientParam;
 import ca.uhn.fhir.rest.gclient.TokenClientParam;
+import ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException;
 import ca.uhn.fhir.rest.server.exceptions.UnprocessableEntityException;
 import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import fhirspark.adapter.FollowUpAdapter;
+import fhirspark.adapter.GeneticAlterationsAdapter;
 import fhirspark.adapter.MtbAdapter;
 import fhirspark.adapter.TherapyRecommendationAdapter;
 import fhirspark.definitions.GenomicsReportingEnum;
 import fhirspark.definitions.Hl7TerminologyEnum;
+import fhirspark.definitions.MolekulargenetischerBefundberichtEnum;
 import fhirspark.definitions.UriEnum;
+import fhirspark.resolver.HgncGeneName;
 import fhirspark.restmodel.CbioportalRest;
 import fhirspark.restmodel.Deletions;
 import fhirspark.restmodel.FollowUp;
 import fhirspark.restmodel.GeneticAlteration;
 import fhirspark.restmodel.Mtb;
 import fhirspark.restmodel.TherapyRecommendation;
+import fhirspark.settings.BulkheadSettings;
+import fhirspark.settings.FhirClientSettings;
+import fhirspark.settings.OutboxSettings;
+import fhirspark.settings.ResilienceSettings;
 import fhirspark.settings.Settings;
-import org.hl7.fhir.instance.model.api.IAnyResource;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.entity.BufferedHttpEntity;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.r4.model.Bundle;
 import org.hl7.fhir.r4.model.Bundle.BundleEntryComponent;
 import org.hl7.fhir.r4.model.DiagnosticReport;
@@ -32,27 +51,53 @@ import org.hl7.fhir.r4.model.Identifier.IdentifierUse;
 import org.hl7.fhir.r4.model.MedicationStatement;
 import org.hl7.fhir.r4.model.Observation;
 import org.hl7.fhir.r4.model.Patient;
+import org.hl7.fhir.r4.model.Practitioner;
 import org.hl7.fhir.r4.model.Reference;
 import org.hl7.fhir.r4.model.RelatedArtifact;
 import org.hl7.fhir.r4.model.RelatedArtifact.RelatedArtifactType;
+import org.hl7.fhir.r4.model.ResearchStudy;
+import org.hl7.fhir.r4.model.ServiceRequest;
+import org.hl7.fhir.r4.model.Specimen;
+import org.hl7.fhir.r4.model.Task;
 
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 /**
  * Fulfils the persistence in HL7 FHIR resources.
  */
-public class JsonFhirMapper {
-
-    public static final int TIMEOUT = 60000;
+public final class JsonFhirMapper {
+
+    private static final String WARM_UP_FIXTURE = "warmup.json";
+    private static final int PATIENT_CACHE_SIZE = 10000;
+    private static final long EMPTY_PATIENT_TTL = 60000;
+    private static final int DEFAULT_COALESCE_WINDOW = 250;
+    private static final String KIND_MTB = "mtb";
+    private static final String KIND_FOLLOW_UP = "followup";
+    private static final List<Class<? extends IBaseResource>> WARM_UP_RESOURCES = List.of(Bundle.class,
+            DiagnosticReport.class, Observation.class, MedicationStatement.class, Task.class, Specimen.class,
+            Practitioner.class, ServiceRequest.class, ResearchStudy.class, Patient.class);
 
     private static String patientUri;
     private static String therapyRecommendationUri;
@@ -63,7 +108,17 @@ public class JsonFhirMapper {
 
     private FhirContext ctx = FhirContext.forR4();
     private IGenericClient client;
+    private PatientCache patientCache = new PatientCache(PATIENT_CACHE_SIZE, EMPTY_PATIENT_TTL);
     private ObjectMapper objectMapper = new ObjectMapper(new JsonFactory());
+    private ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private Bulkhead reads;
+    private Bulkhead writes;
+    private Bulkhead searches;
+    private Resilience resilience;
+    private PatientLocks patientLocks = new PatientLocks();
+    private SaveCoalescer<List<Mtb>> mtbSaves;
+    private SaveCoalescer<List<FollowUp>> followUpSaves;
+    private Outbox outbox;
 
     /**
      *
@@ -73,9 +128,48 @@ public class JsonFhirMapper {
      */
     public JsonFhirMapper(Settings settings) {
         JsonFhirMapper.settings = settings;
-        ctx.getRestfulClientFactory().setConnectTimeout(TIMEOUT);
-        ctx.getRestfulClientFactory().setSocketTimeout(TIMEOUT);
+        FhirClientSettings clientSettings = settings.getFhirClient() != null ? settings.getFhirClient()
+                : new FhirClientSettings();
+        BulkheadSettings bulkheadSettings = settings.getBulkhead() != null ? settings.getBulkhead()
+                : new BulkheadSettings();
+        this.reads = bulkhead("read", bulkheadSettings, bulkheadSettings.getRead());
+        this.writes = bulkhead("write", bulkheadSettings, bulkheadSettings.getWrite());
+        this.searches = bulkhead("search", bulkheadSettings, bulkheadSettings.getSearch());
+        int lanes = bulkheadSettings.getRead().getMaxConcurrent() + bulkheadSettings.getWrite().getMaxConcurrent()
+                + bulkheadSettings.getSearch().getMaxConcurrent();
+        if (lanes > clientSettings.getPoolMaxTotal()) {
+            System.out.println("WARNING: The bulkheads allow " + lanes + " concurrent calls but the FHIR client "
+                    + "only " + clientSettings.getPoolMaxTotal() + " connections, searches may delay reads.");
+        }
+        ResilienceSettings resilienceSettings = settings.getResilience() != null ? settings.getResilience()
+                : new ResilienceSettings();
+        this.resilience = new Resilience(new CircuitBreaker(resilienceSettings.getFailureThreshold(),
+                resilienceSettings.getOpenDuration()), resilienceSettings.getMaxAttempts(),
+                resilienceSettings.getBaseDelay(), resilienceSettings.getMaxDelay());
+        // the pool size and timeouts of the factory only apply to a client it builds itself
+        ctx.getRestfulClientFactory().setHttpClient(createHttpClient(clientSettings, resilience, reads, writes));
         this.client = ctx.newRestfulGenericClient(settings.getFhirDbBase());
+        this.client.setEncoding(EncodingEnum.valueOf(clientSettings.getEncoding().toUpperCase(Locale.ROOT)));
+        this.client.setPrettyPrint(false);
+        if (clientSettings.getCompressRequests()) {
+            this.client.registerInterceptor(new GZipContentInterceptor());
+        }
+        int coalesceWindow = settings.getCoalesceWindow() != null ? settings.getCoalesceWindow()
+                : DEFAULT_COALESCE_WINDOW;
+        this.mtbSaves = new SaveCoalescer<>(coalesceWindow, this::mtbFromJson);
+        this.followUpSaves = new SaveCoalescer<>(coalesceWindow, this::followUpFromJson);
+        OutboxSettings outboxSettings = settings.getOutbox() != null ? settings.getOutbox() : new OutboxSettings();
+        if (Boolean.TRUE.equals(outboxSettings.getEnabled())) {
+            try {
+                WriteJournal journal = new WriteJournal(Paths.get(outboxSettings.getDirectory()),
+                        outboxSettings.getSegmentSize(), true);
+                System.out.println("Outbox: " + journal.recovered().size() + " saves to replay");
+                this.outbox = new Outbox(journal, patientLocks, this::replay, outboxSettings.getRetryDelay(),
+                        outboxSettings.getMaxRetryDelay());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
         MtbAdapter.initialize(settings, client);
         FollowUpAdapter.initialize(settings, client);
         JsonFhirMapper.patientUri = settings.getPatientSystem();
@@ -86,6 +180,156 @@ public class JsonFhirMapper {
 
     }
 
+    private static Bulkhead bulkhead(String name, BulkheadSettings bulkheadSettings, BulkheadSettings.Pool pool) {
+        AdaptiveLimit limit = Boolean.TRUE.equals(bulkheadSettings.getAdaptive())
+                ? new AdaptiveLimit(bulkheadSettings.getMinConcurrent(), pool.getMaxConcurrent(),
+                        bulkheadSettings.getLatencyTolerance())
+                : AdaptiveLimit.fixed(pool.getMaxConcurrent());
+        return new Bulkhead(name, limit, pool.getMaxQueue(), pool.getMaxWait());
+    }
+
+    /**
+     * @return current limit, usual latency and running, queued and rejected calls to the FHIR server per kind of
+     *         call.
+     */
+    public Map<String, Object> bulkheadStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        for (Bulkhead bulkhead : List.of(reads, writes, searches)) {
+            stats.put(bulkhead.getName(), bulkhead.stats());
+        }
+        return stats;
+    }
+
+    /**
+     * @return state and transitions of the circuit breaker and the number of retried calls to the FHIR server.
+     */
+    public Map<String, Object> resilienceStats() {
+        return resilience.stats();
+    }
+
+    PatientCache getPatientCache() {
+        return patientCache;
+    }
+
+    /**
+     * @return number of writes that waited for another write of the same patient and how long writes waited.
+     */
+    public Map<String, Object> patientLockStats() {
+        return patientLocks.stats();
+    }
+
+    /**
+     * @return number of saves per kind and of the writes they were merged into.
+     */
+    public Map<String, Object> coalescingStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("mtb", mtbSaves.stats());
+        stats.put("followUp", followUpSaves.stats());
+        return stats;
+    }
+
+    /**
+     * @return number and age of the saves waiting in the outbox and the number of replayed, skipped and retried
+     *         ones, or null if the outbox is disabled.
+     */
+    public Map<String, Object> outboxStats() {
+        return outbox != null ? outbox.stats() : null;
+    }
+
+    /**
+     * Stops replaying the outbox; the saves still waiting are replayed after the next start.
+     */
+    public void closeOutbox() {
+        if (outbox != null) {
+            outbox.close();
+        }
+    }
+
+    /**
+     * Builds the pooled HTTP client behind the FHIR client. Responses are transparently decompressed if
+     * compression is enabled, idle and expired connections are evicted in the background. Every call passes a
+     * bulkhead and the circuit breaker and is retried, see {@link GuardedHttpClient}.
+     */
+    private static HttpClient createHttpClient(FhirClientSettings clientSettings, Resilience resilience,
+            Bulkhead reads, Bulkhead writes) {
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(clientSettings.getPoolMaxTotal());
+        connectionManager.setDefaultMaxPerRoute(clientSettings.getPoolMaxPerRoute());
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(clientSettings.getConnectTimeout())
+                .setSocketTimeout(clientSettings.getSocketTimeout())
+                .setConnectionRequestTimeout(clientSettings.getConnectTimeout())
+                .build();
+        HttpClientBuilder builder = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .evictExpiredConnections()
+                .evictIdleConnections(clientSettings.getIdleTimeout(), TimeUnit.MILLISECONDS)
+                // HAPI FHIR parses the body inside the monitor of a PushbackReader, reading it here first keeps
+                // request threads on virtual threads from pinning their carrier while waiting for the socket
+                .addInterceptorLast((HttpResponseInterceptor) (response, context) -> {
+                    if (response.getEntity() != null && response.getEntity().isStreaming()) {
+                        response.setEntity(new BufferedHttpEntity(response.getEntity()));
+                    }
+                });
+        if (!clientSettings.getCompressResponses()) {
+            builder.disableContentCompression();
+        }
+        return new OfflineHttpClient(new GuardedHttpClient(builder.build(), resilience, reads, writes,
+                requestConfig));
+    }
+
+    /**
+     * Initializes the lazily built parts of HAPI FHIR, the Jackson mappers and the adapters before the first
+     * request: the resource definitions we persist are scanned and a bundled MTB fixture is mapped to FHIR,
+     * encoded, parsed again and mapped back through MtbAdapter. Nothing is sent to the FHIR server, the lookups
+     * of the adapters are answered locally with empty results, and the patient cache is not touched.
+     *
+     * @return true if the warm-up completed.
+     */
+    public boolean warmUp() {
+        for (Class<? extends IBaseResource> type : WARM_UP_RESOURCES) {
+            ctx.getResourceDefinition(type);
+        }
+        try (InputStream in = JsonFhirMapper.class.getClassLoader().getResourceAsStream(WARM_UP_FIXTURE)) {
+            CbioportalRest fixture = objectMapper.readValue(in, CbioportalRest.class);
+            Bundle bundle = new Bundle();
+            bundle.setType(Bundle.BundleType.TRANSACTION);
+            Reference fhirPatient = patientEntry(bundle, fixture.getId());
+            for (Mtb mtb : fixture.getMtbs()) {
+                MtbAdapter.fromJson(bundle, settings.getRegex(), fhirPatient, fixture.getId(), mtb);
+            }
+            IParser parser = ctx.newJsonParser();
+            Bundle parsed = parser.parseResource(Bundle.class, parser.encodeResourceToString(bundle));
+            List<GeneticAlteration> alterations = new ArrayList<>();
+            List<DiagnosticReport> reports = new ArrayList<>();
+            for (BundleEntryComponent bec : parsed.getEntry()) {
+                if (bec.getResource() instanceof DiagnosticReport) {
+                    reports.add((DiagnosticReport) bec.getResource());
+                } else if (bec.getResource() instanceof Observation
+                        && bec.getResource().getMeta().hasProfile(MolekulargenetischerBefundberichtEnum.VARIANT
+                                .getSystem())) {
+                    alterations.add(GeneticAlterationsAdapter.toJson((Observation) bec.getResource()));
+                }
+            }
+            List<Mtb> mtbs = OfflineHttpClient.offline(() -> {
+                List<Mtb> mapped = new ArrayList<>();
+                Map<String, CompletableFuture<TherapyRecommendation>> recommendations = new HashMap<>();
+                for (DiagnosticReport report : reports) {
+                    mapped.add(MtbAdapter.toJson(settings.getRegex(), fixture.getId(), report, recommendations));
+                }
+                return mapped;
+            });
+            objectMapper.writeValueAsString(new CbioportalRest().withId(fixture.getId()).withMtbs(mtbs));
+            objectMapper.writeValueAsString(alterations);
+            entrezGeneIds(alterations);
+            return true;
+        } catch (IOException | DataFormatException | BaseServerResponseException e) {
+            System.out.println("WARNING: Warm-up failed, the first requests may be slow: " + e.getMessage());
+            return false;
+        }
+    }
+
     /**
      * Retrieves MTB data from FHIR server and transforms it into JSON format for
      * cBioPortal.
@@ -95,21 +339,49 @@ public class JsonFhirMapper {
      * @throws JsonProcessingException if the JSON representation could not be created.
      */
     public String mtbToJson(String patientId) throws JsonProcessingException {
-        List<Mtb> mtbs = new ArrayList<Mtb>();
-        Bundle bPatient = (Bundle) client.search().forResource(Patient.class)
-                .where(new TokenClientParam("identifier").exactly().systemAndCode(patientUri, patientId)).prettyPrint()
-                .execute();
-        Patient fhirPatient = (Patient) bPatient.getEntryFirstRep().getResource();
+        return this.objectMapper.writeValueAsString(new CbioportalRest().withId(patientId)
+                .withMtbs(GuardedHttpClient.lane(reads, () -> mtbs(patientId, new HashMap<>()))));
+    }
 
-        if (fhirPatient == null) {
-            return this.objectMapper.writeValueAsString(new CbioportalRest().withId(patientId).withMtbs(mtbs));
+    /**
+     * Retrieves MTB and FollowUp data of a patient from FHIR server and transforms it into one JSON document for
+     * cBioPortal. Both are fetched concurrently, and therapy recommendations referenced by both are converted
+     * only once.
+     *
+     * @param patientId id of the patient.
+     * @return JSON representation of the MTB and FollowUp data.
+     * @throws JsonProcessingException if the JSON representation could not be created.
+     */
+    public String patientToJson(String patientId) throws JsonProcessingException {
+        Map<String, CompletableFuture<TherapyRecommendation>> recommendations = new ConcurrentHashMap<>();
+        Deadline deadline = Deadline.current();
+        CompletableFuture<List<FollowUp>> followUps = CompletableFuture.supplyAsync(() -> Deadline.with(deadline,
+                () -> GuardedHttpClient.lane(reads, () -> followUps(patientId, recommendations))), executor);
+        List<Mtb> mtbs = GuardedHttpClient.lane(reads, () -> mtbs(patientId, recommendations));
+        try {
+            return this.objectMapper.writeValueAsString(new CbioportalRest().withId(patientId).withMtbs(mtbs)
+                    .withFollowUps(followUps.join()));
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private List<Mtb> mtbs(String patientId, Map<String, CompletableFuture<TherapyRecommendation>> recommendations) {
+        List<Mtb> mtbs = new ArrayList<Mtb>();
+        if (patientCache.isEmpty(PatientCache.Kind.MTB, patientId)) {
+            return mtbs;
         }
+        long cacheVersion = patientCache.version();
 
-        Bundle bDiagnosticReports = (Bundle) client.search().forResource(DiagnosticReport.class)
-                .where(new ReferenceClientParam("subject").hasId(harmonizeId(fhirPatient))).prettyPrint()
+        Bundle bDiagnosticReports = searchBySubject(patientId, subject -> (Bundle) client.search()
+                .forResource(DiagnosticReport.class)
+                .where(subject)
                 .include(DiagnosticReport.INCLUDE_BASED_ON)
                 .include(DiagnosticReport.INCLUDE_RESULT.asRecursive())
-                .include(DiagnosticReport.INCLUDE_SPECIMEN.asRecursive()).execute();
+                .include(DiagnosticReport.INCLUDE_SPECIMEN.asRecursive()).execute());
 
         List<BundleEntryComponent> diagnosticReports = bDiagnosticReports.getEntry();
 
@@ -118,20 +390,27 @@ public class JsonFhirMapper {
                 continue;
             }
             DiagnosticReport diagnosticReport = (DiagnosticReport) diagnosticReports.get(i).getResource();
-            mtbs.add(MtbAdapter.toJson(settings.getRegex(), patientId, diagnosticReport));
+            patientCache.putLogicalId(patientId, diagnosticReport.getSubject().getReference());
+            mtbs.add(MtbAdapter.toJson(settings.getRegex(), patientId, diagnosticReport, recommendations));
 
         }
+        if (mtbs.isEmpty()) {
+            patientCache.markEmpty(PatientCache.Kind.MTB, patientId, cacheVersion);
+        }
 
         mtbs.sort(Comparator.comparing(Mtb::getId).reversed());
 
-        return this.objectMapper.writeValueAsString(new CbioportalRest().withId(patientId).withMtbs(mtbs));
+        return mtbs;
 
     }
 
     /**
      * Retrieves MTB data from cBioPortal and persists it in FHIR resources.
+     *
+     * @return true if the data was persisted, false if the FHIR server is unavailable and the data waits in the
+     *         outbox.
      */
-    public void mtbFromJson(String patientId, List<Mtb> mtbs) throws DataFormatException, IOException {
+    public boolean mtbFromJson(String patientId, List<Mtb> mtbs) throws DataFormatException, IOException {
 
         Bundle bundle = new Bundle();
         bundle.setType(Bundle.BundleType.TRANSACTION);
@@ -142,20 +421,22 @@ public class JsonFhirMapper {
             MtbAdapter.fromJson(bundle, settings.getRegex(), fhirPatient, patientId, mtb);
         }
 
-        try {
-            System.out.println(bundle);
-            System.out.println(ctx.newJsonParser().setPrettyPrint(true).encodeResourceToString(bundle));
+        return store(KIND_MTB, patientId, bundle);
 
-            Bundle resp = client.transaction().withBundle(bundle).execute();
-
-            // Log the response
-            System.out.println(ctx.newJsonParser().setPrettyPrint(true).encodeResourceToString(resp));
-        } catch (UnprocessableEntityException entityException) {
-            try (FileWriter f = new FileWriter("error.json")) {
-                f.write(entityException.getResponseBody());
-            }
-        }
+    }
 
+    /**
+     * Persists the MTB data of a patient like {@link #mtbFromJson(String, List)}. Saves of the same patient
+     * that arrive within the coalesce window are merged and only the latest is persisted.
+     *
+     * @param patientId id of the patient.
+     * @param mtbs      all MTBs of the patient.
+     * @return true if the data was persisted, false if the FHIR server is unavailable and the data waits in the
+     *         outbox.
+     * @throws IOException if the error response of the FHIR server could not be written.
+     */
+    public boolean saveMtbs(String patientId, List<Mtb> mtbs) throws IOException {
+        return mtbSaves.save(patientId, mtbs);
     }
 
     /**
@@ -166,25 +447,24 @@ public class JsonFhirMapper {
      * @throws JsonProcessingException if the JSON representation could not be created.
      */
     public String followUpToJson(String patientId) throws JsonProcessingException {
-        List<FollowUp> followUps = new ArrayList<FollowUp>();
-        Bundle bPatient = (Bundle) client.search().forResource(Patient.class)
-                .where(new TokenClientParam("identifier").exactly().systemAndCode(patientUri, patientId)).prettyPrint()
-                .execute();
-        Patient fhirPatient = (Patient) bPatient.getEntryFirstRep().getResource();
+        return this.objectMapper.writeValueAsString(new CbioportalRest().withId(patientId)
+                .withFollowUps(GuardedHttpClient.lane(reads, () -> followUps(patientId, new HashMap<>()))));
+    }
 
-        if (fhirPatient == null) {
-            return this.objectMapper.writeValueAsString(
-                new CbioportalRest()
-                .withId(patientId)
-                .withFollowUps(followUps)
-            );
+    private List<FollowUp> followUps(String patientId,
+            Map<String, CompletableFuture<TherapyRecommendation>> recommendations) {
+        List<FollowUp> followUps = new ArrayList<FollowUp>();
+        if (patientCache.isEmpty(PatientCache.Kind.FOLLOW_UP, patientId)) {
+            return followUps;
         }
+        long cacheVersion = patientCache.version();
 
-        Bundle bMedicationStatements = (Bundle) client.search().forResource(MedicationStatement.class)
-                .where(new ReferenceClientParam("subject").hasId(harmonizeId(fhirPatient))).prettyPrint()
+        Bundle bMedicationStatements = searchBySubject(patientId, subject -> (Bundle) client.search()
+                .forResource(MedicationStatement.class)
+                .where(subject)
                 .include(MedicationStatement.INCLUDE_PART_OF)
                 .include(MedicationStatement.INCLUDE_CONTEXT.asRecursive())
-                .execute();
+                .execute());
 
         List<BundleEntryComponent> medicationStatements = bMedicationStatements.getEntry();
 
@@ -193,18 +473,26 @@ public class JsonFhirMapper {
                 continue;
             }
             MedicationStatement medicationStatement = (MedicationStatement) medicationStatements.get(i).getResource();
-            followUps.add(FollowUpAdapter.toJson(settings.getRegex(), medicationStatement));
+            patientCache.putLogicalId(patientId, medicationStatement.getSubject().getReference());
+            followUps.add(FollowUpAdapter.toJson(settings.getRegex(), medicationStatement, recommendations));
 
         }
+        if (followUps.isEmpty()) {
+            patientCache.markEmpty(PatientCache.Kind.FOLLOW_UP, patientId, cacheVersion);
+        }
 
-        return this.objectMapper.writeValueAsString(new CbioportalRest().withId(patientId).withFollowUps(followUps));
+        return followUps;
 
     }
 
     /**
      * Retrieves FollowUp data from cBioPortal and persists it in FHIR resources.
+     *
+     * @return true if the data was persisted, false if the FHIR server is unavailable and the data waits in the
+     *         outbox.
      */
-    public void followUpFromJson(String patientId, List<FollowUp> followUps) throws DataFormatException, IOException {
+    public boolean followUpFromJson(String patientId, List<FollowUp> followUps)
+            throws DataFormatException, IOException {
 
         Bundle bundle = new Bundle();
         bundle.setType(Bundle.BundleType.TRANSACTION);
@@ -215,11 +503,81 @@ public class JsonFhirMapper {
             FollowUpAdapter.fromJson(bundle, settings.getRegex(), fhirPatient, patientId, followUp);
         }
 
+        return store(KIND_FOLLOW_UP, patientId, bundle);
+
+    }
+
+    /**
+     * Persists the FollowUp data of a patient like {@link #followUpFromJson(String, List)}. Saves of the same
+     * patient that arrive within the coalesce window are merged and only the latest is persisted.
+     *
+     * @param patientId id of the patient.
+     * @param followUps all follow-ups of the patient.
+     * @return true if the data was persisted, false if the FHIR server is unavailable and the data waits in the
+     *         outbox.
+     * @throws IOException if the error response of the FHIR server could not be written.
+     */
+    public boolean saveFollowUps(String patientId, List<FollowUp> followUps) throws IOException {
+        return followUpSaves.save(patientId, followUps);
+    }
+
+    /**
+     * Sends a transaction with all data of one kind of a patient. If the FHIR server is unavailable and the outbox
+     * is enabled, the transaction is kept in the outbox and replayed later.
+     *
+     * @return true if the transaction was sent, false if it waits in the outbox.
+     */
+    private boolean store(String kind, String patientId, Bundle bundle) throws IOException {
+        return patientLocks.call(patientId, () -> {
+            try {
+                resilience.retry(isIdempotent(bundle), () -> transaction(patientId, bundle));
+            } catch (BaseServerResponseException | CircuitBreaker.OpenException | Bulkhead.RejectedException e) {
+                if (outbox == null || !WriteBehind.isUnavailable(e)) {
+                    throw e;
+                }
+                outbox.add(kind, patientId, ctx.newJsonParser().encodeResourceToString(bundle));
+                System.out.println("The FHIR server is unavailable, the " + kind + " data of patient " + patientId
+                        + " waits in the outbox: " + e.getMessage());
+                return false;
+            }
+            if (outbox != null) {
+                outbox.sent(kind, patientId);
+            }
+            return true;
+        });
+    }
+
+    /**
+     * Sends a transaction from the outbox. The outbox holds the lock of the patient.
+     */
+    private void replay(WriteJournal.Entry entry) throws IOException {
+        Bundle bundle = ctx.newJsonParser().parseResource(Bundle.class, entry.getPayload());
+        resilience.retry(isIdempotent(bundle), () -> transaction(entry.getPatientId(), bundle));
+    }
+
+    /**
+     * A transaction can be repeated if it only reads, updates (like the conditional updates by identifier the
+     * adapters create) and deletes, but does not create resources.
+     */
+    private static boolean isIdempotent(Bundle bundle) {
+        for (BundleEntryComponent entry : bundle.getEntry()) {
+            Bundle.HTTPVerb method = entry.getRequest().getMethod();
+            if (method != Bundle.HTTPVerb.PUT && method != Bundle.HTTPVerb.DELETE
+                    && method != Bundle.HTTPVerb.GET) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void transaction(String patientId, Bundle bundle) throws IOException {
         try {
             System.out.println(bundle);
             System.out.println(ctx.newJsonParser().setPrettyPrint(true).encodeResourceToString(bundle));
 
             Bundle resp = client.transaction().withBundle(bundle).execute();
+            // a GET that ran while the transaction was in flight may have seen the patient without data
+            patientCache.invalidate(patientId);
 
             // Log the response
             System.out.println(ctx.newJsonParser().setPrettyPrint(true).encodeResourceToString(resp));
@@ -228,7 +586,6 @@ public class JsonFhirMapper {
                 f.write(entityException.getResponseBody());
             }
         }
-
     }
 
     /**
@@ -241,10 +598,19 @@ public class JsonFhirMapper {
         // deletions.getTherapyRecommendation()
         // .forEach(recommendation -> deleteTherapyRecommendation(patientId,
         // recommendation));
-        deletions.getMtb().forEach(mtb -> deleteMtb(patientId, mtb));
-        deletions.getFollowUp().forEach(followUp -> deleteFollowUps(patientId, followUp));
-        deletions.getTherapyRecommendation()
-                .forEach(therapyRecommendationId -> deleteTherapyRecommendation(patientId, therapyRecommendationId));
+        patientLocks.run(patientId, () -> {
+            if (outbox != null && outbox.hasQueued(patientId)) {
+                // replaying the older saves afterwards would bring the deleted entries back
+                throw new Outbox.PendingException();
+            }
+            GuardedHttpClient.lane(writes, () -> {
+                deletions.getMtb().forEach(mtb -> deleteMtb(patientId, mtb));
+                deletions.getFollowUp().forEach(followUp -> deleteFollowUps(patientId, followUp));
+                deletions.getTherapyRecommendation().forEach(therapyRecommendationId ->
+                        deleteTherapyRecommendation(patientId, therapyRecommendationId));
+                return null;
+            });
+        });
     }
 
     private void deleteTherapyRecommendation(String patientId, String therapyRecommendationId) {
@@ -274,7 +640,7 @@ public class JsonFhirMapper {
         Bundle b = (Bundle) client.search().forResource(Observation.class)
             .where(new TokenClientParam("identifier")
             .hasSystemWithAnyCode(responseUri))
-            .prettyPrint().execute();
+            .execute();
 
         for (BundleEntryComponent bec : b.getEntry()) {
             String responseId = ((Observation) bec.getResource()).getIdentifierFirstRep().getValue();
@@ -283,7 +649,14 @@ public class JsonFhirMapper {
     }
 
     private Reference getOrCreatePatient(Bundle b, String patientId) {
+        patientCache.invalidate(patientId);
+        return patientEntry(b, patientId);
+    }
 
+    /**
+     * Adds the conditional update of the Patient to a transaction.
+     */
+    private static Reference patientEntry(Bundle b, String patientId) {
         Patient patient = new Patient();
         patient.setId(IdType.newRandomUuid());
         patient.getIdentifierFirstRep().setSystem(patientUri).setValue(patientId);
@@ -296,12 +669,50 @@ public class JsonFhirMapper {
         return new Reference(patient);
     }
 
-    private String harmonizeId(IAnyResource resource) {
-        if (resource.getIdElement().getValue().startsWith("urn:uuid:")) {
-            return resource.getIdElement().getValue();
-        } else {
-            return resource.getIdElement().getResourceType() + "/" + resource.getIdElement().getIdPart();
+    /**
+     * Searches resources of a patient. If the logical id of the Patient is known from an earlier result, it is
+     * searched by subject directly. Otherwise, or if that finds nothing because the Patient was replaced by another
+     * instance, the chained criterion subject:Patient.identifier=system|patientId finds the resources in one round
+     * trip without resolving the Patient first. A patient that does not exist yields an empty result.
+     */
+    private Bundle searchBySubject(String patientId, Function<ICriterion<ReferenceClientParam>, Bundle> search) {
+        String logicalId = patientCache.logicalId(patientId);
+        if (logicalId != null) {
+            Bundle bundle = search.apply(new ReferenceClientParam("subject").hasId(logicalId));
+            if (bundle.hasEntry()) {
+                return bundle;
+            }
+            patientCache.removeLogicalId(patientId, logicalId);
+        }
+        return search.apply(new ReferenceClientParam("subject").hasChainedProperty("Patient",
+                Patient.IDENTIFIER.exactly().systemAndCode(patientUri, patientId)));
+    }
+
+    /**
+     * Collects the NCBI gene ids of the alterations. Alterations that only carry a Hugo symbol are resolved via
+     * the HGNC index, the set is empty if no alteration could be resolved.
+     */
+    private static Set<String> entrezGeneIds(List<GeneticAlteration> alterations) {
+        Set<String> entrez = new HashSet<>();
+        for (GeneticAlteration a : alterations) {
+            Integer entrezGeneId = a.getEntrezGeneId() != null ? a.getEntrezGeneId()
+                    : HgncGeneName.resolveEntrezGeneId(a.getHugoSymbol());
+            if (entrezGeneId != null) {
+                entrez.add(String.valueOf(entrezGeneId));
+            }
         }
+        return entrez;
+    }
+
+    /**
+     * Therapeutic implications and medication efficacies of the genes, together with the observations derived
+     * from them.
+     */
+    private Bundle observationsByGene(Set<String> entrez) {
+        return (Bundle) client.search().forResource(Observation.class)
+                .where(new TokenClientParam("component-value-concept").exactly()
+                        .systemAndValues(UriEnum.NCBI_GENE.getUri(), new ArrayList<>(entrez)))
+                .revInclude(Observation.INCLUDE_DERIVED_FROM).execute();
     }
 
     /**
@@ -312,16 +723,17 @@ public class JsonFhirMapper {
      * @return List of matching references
      */
     public Collection<fhirspark.restmodel.Reference> getPmidsByAlteration(List<GeneticAlteration> alterations) {
+        return GuardedHttpClient.lane(searches, () -> pmidsByAlteration(alterations));
+    }
 
-        Set<String> entrez = new HashSet<>();
-        for (GeneticAlteration a : alterations) {
-            entrez.add(String.valueOf(a.getEntrezGeneId()));
+    private Collection<fhirspark.restmodel.Reference> pmidsByAlteration(List<GeneticAlteration> alterations) {
+
+        Set<String> entrez = entrezGeneIds(alterations);
+        if (entrez.isEmpty()) {
+            return Collections.emptyList();
         }
 
-        Bundle bStuff = (Bundle) client.search().forResource(Observation.class)
-                .where(new TokenClientParam("component-value-concept").exactly()
-                        .systemAndValues(UriEnum.NCBI_GENE.getUri(), new ArrayList<>(entrez)))
-                .prettyPrint().revInclude(Observation.INCLUDE_DERIVED_FROM).execute();
+        Bundle bStuff = observationsByGene(entrez);
 
         Map<Integer, fhirspark.restmodel.Reference> refMap = new HashMap<>();
 
@@ -356,16 +768,17 @@ public class JsonFhirMapper {
      */
     public Collection<TherapyRecommendation> getTherapyRecommendationsByAlteration(
             List<GeneticAlteration> alterations) {
+        return GuardedHttpClient.lane(searches, () -> therapyRecommendationsByAlteration(alterations));
+    }
 
-        Set<String> entrez = new HashSet<>();
-        for (GeneticAlteration a : alterations) {
-            entrez.add(String.valueOf(a.getEntrezGeneId()));
+    private Collection<TherapyRecommendation> therapyRecommendationsByAlteration(List<GeneticAlteration> alterations) {
+
+        Set<String> entrez = entrezGeneIds(alterations);
+        if (entrez.isEmpty()) {
+            return Collections.emptyList();
         }
 
-        Bundle bStuff = (Bundle) client.search().forResource(Observation.class)
-                .where(new TokenClientParam("component-value-concept").exactly()
-                        .systemAndValues(UriEnum.NCBI_GENE.getUri(), new ArrayList<>(entrez)))
-                .prettyPrint().revInclude(Observation.INCLUDE_DERIVED_FROM).execute();
+        Bundle bStuff = observationsByGene(entrez);
 
         Map<String, TherapyRecommendation> tcMap = new HashMap<>();
 
@@ -388,16 +801,17 @@ public class JsonFhirMapper {
     }
 
     public Collection<FollowUp> getFollowUpsByAlteration(List<GeneticAlteration> alterations) {
+        return GuardedHttpClient.lane(searches, () -> followUpsByAlteration(alterations));
+    }
 
-        Set<String> entrez = new HashSet<>();
-        for (GeneticAlteration a : alterations) {
-            entrez.add(String.valueOf(a.getEntrezGeneId()));
+    private Collection<FollowUp> followUpsByAlteration(List<GeneticAlteration> alterations) {
+
+        Set<String> entrez = entrezGeneIds(alterations);
+        if (entrez.isEmpty()) {
+            return Collections.emptyList();
         }
 
-        Bundle bStuff = (Bundle) client.search().forResource(Observation.class)
-                .where(new TokenClientParam("component-value-concept").exactly()
-                        .systemAndValues(UriEnum.NCBI_GENE.getUri(), new ArrayList<>(entrez)))
-                .prettyPrint().revInclude(Observation.INCLUDE_DERIVED_FROM).execute();
+        Bundle bStuff = observationsByGene(entrez);
 
         Map<String, FollowUp> tcMap = new HashMap<>();
 
@@ -411,7 +825,8 @@ public class JsonFhirMapper {
             idents.addAll(ob.getIdentifier());
         }
 
-        Bundle bFollowUps = (Bundle) client.search().forResource(MedicationStatement.class)
+        Bundle bFollowUps = (Bundle) client.search()
+            .forResource(MedicationStatement.class)
             .execute();
 
         for (BundleEntryComponent bec : bFollowUps.getEntry()) {
@@ -0,0 +1,42 @@
+package fhirspark;
+
+/**
+ * Priority class of a request. Each lane has its own bulkhead towards the FHIR server (read, write and search),
+ * so expensive cross-patient searches by alteration can only use the capacity of the bulk lane and never the
+ * capacity reserved for viewing or storing the data of a patient.
+ */
+enum Lane {
+
+    /** Viewing the MTBs and follow-ups of a patient. */
+    INTERACTIVE,
+    /** Storing and deleting MTBs and follow-ups. */
+    WRITE,
+    /** Searching therapy recommendations, follow-ups and references by alteration across patients. */
+    BULK;
+
+    /**
+     * @param method HTTP method of the request.
+     * @param path   path of the request.
+     * @return lane of the request, or null for requests that do not reach the FHIR server, like OPTIONS, /ready
+     *         and /metrics.
+     */
+    static Lane of(String method, String path) {
+        if (path == null || !(path.startsWith("/mtb/") || path.startsWith("/followup/")
+                || path.startsWith("/patient/"))) {
+            return null;
+        }
+        if (path.endsWith("/alteration") || path.endsWith("/alteration/pmid")) {
+            return "POST".equals(method) ? BULK : null;
+        }
+        switch (method) {
+            case "GET":
+                return INTERACTIVE;
+            case "PUT":
+            case "DELETE":
+                return WRITE;
+            default:
+                return null;
+        }
+    }
+
+}
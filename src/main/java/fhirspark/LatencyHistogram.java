@@ -0,0 +1,72 @@
+package fhirspark;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts request durations in fixed buckets, from which count, mean and percentiles (as the upper bound of the
+ * bucket they fall into) are reported. Recording is lock-free.
+ */
+final class LatencyHistogram {
+
+    private static final long[] BOUNDS = {5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000, 60000};
+    private static final double[] PERCENTILES = {0.5, 0.9, 0.99};
+    private static final String[] PERCENTILE_NAMES = {"p50Millis", "p90Millis", "p99Millis"};
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BOUNDS.length + 1);
+    private final LongAdder sum = new LongAdder();
+
+    /**
+     * @param millis duration of a request in milliseconds.
+     */
+    void record(long millis) {
+        int bucket = 0;
+        while (bucket < BOUNDS.length && millis > BOUNDS[bucket]) {
+            bucket++;
+        }
+        buckets.incrementAndGet(bucket);
+        sum.add(millis);
+    }
+
+    /**
+     * @return count, mean, p50, p90 and p99 in milliseconds and the count per bucket, keyed by its upper bound.
+     */
+    Map<String, Object> snapshot() {
+        long[] counts = new long[buckets.length()];
+        long count = 0;
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = buckets.get(i);
+            count += counts[i];
+        }
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("count", count);
+        snapshot.put("meanMillis", count == 0 ? 0 : sum.sum() / count);
+        for (int i = 0; i < PERCENTILES.length; i++) {
+            snapshot.put(PERCENTILE_NAMES[i], percentile(counts, count, PERCENTILES[i]));
+        }
+        Map<String, Long> le = new LinkedHashMap<>();
+        for (int i = 0; i < counts.length; i++) {
+            le.put(i < BOUNDS.length ? String.valueOf(BOUNDS[i]) : "+Inf", counts[i]);
+        }
+        snapshot.put("buckets", le);
+        return snapshot;
+    }
+
+    private static Object percentile(long[] counts, long count, double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(count * percentile);
+        long seen = 0;
+        for (int i = 0; i < BOUNDS.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return BOUNDS[i];
+            }
+        }
+        return "+Inf";
+    }
+
+}
@@ -0,0 +1,107 @@
+package fhirspark;
+
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.HttpContext;
+
+import java.io.IOException;
+
+/**
+ * Apache HTTP client of the FHIR client that answers the requests of a thread locally while it runs
+ * {@link #offline(Task)}, with an empty search result, or an R4 capability statement if the client validates the
+ * server. The warm-up uses it to run the read path without reaching the FHIR server; all other requests are
+ * passed on.
+ */
+final class OfflineHttpClient extends CloseableHttpClient {
+
+    private static final ThreadLocal<Boolean> OFFLINE = new ThreadLocal<>();
+    private static final String EMPTY_SEARCH = "{\"resourceType\":\"Bundle\",\"type\":\"searchset\",\"total\":0}";
+    private static final String CAPABILITIES = "{\"resourceType\":\"CapabilityStatement\",\"fhirVersion\":\"4.0.1\"}";
+    private static final ContentType FHIR_JSON = ContentType.create("application/fhir+json", "UTF-8");
+
+    private final CloseableHttpClient delegate;
+
+    OfflineHttpClient(CloseableHttpClient delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * Code whose FHIR calls are answered locally.
+     * @param <T> result type.
+     */
+    interface Task<T> {
+        T call() throws IOException;
+    }
+
+    /**
+     * Runs a task whose FHIR calls are answered locally.
+     * @param <T>  result type of the task.
+     * @param task task to run on the current thread.
+     * @return result of the task.
+     * @throws IOException if the task failed.
+     */
+    static <T> T offline(Task<T> task) throws IOException {
+        OFFLINE.set(Boolean.TRUE);
+        try {
+            return task.call();
+        } finally {
+            OFFLINE.remove();
+        }
+    }
+
+    @Override
+    protected CloseableHttpResponse doExecute(HttpHost target, HttpRequest request, HttpContext context)
+            throws IOException, ClientProtocolException {
+        if (OFFLINE.get() == null) {
+            return delegate.execute(target, request, context);
+        }
+        LocalResponse response = new LocalResponse();
+        String body = request.getRequestLine().getUri().contains("/metadata") ? CAPABILITIES : EMPTY_SEARCH;
+        response.setEntity(new StringEntity(body, FHIR_JSON));
+        response.setHeader("Content-Type", FHIR_JSON.toString());
+        return response;
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+    }
+
+    @Override
+    @Deprecated
+    public HttpParams getParams() {
+        return delegate.getParams();
+    }
+
+    @Override
+    @Deprecated
+    public ClientConnectionManager getConnectionManager() {
+        return delegate.getConnectionManager();
+    }
+
+    /**
+     * Response created without a connection, closing it releases nothing.
+     */
+    private static final class LocalResponse extends BasicHttpResponse implements CloseableHttpResponse {
+
+        LocalResponse() {
+            super(HttpVersion.HTTP_1_1, HttpStatus.SC_OK, "OK");
+        }
+
+        @Override
+        public void close() {
+            // nothing to release
+        }
+    }
+
+}
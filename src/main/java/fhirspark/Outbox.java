@@ -0,0 +1,122 @@
+package fhirspark;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps transaction bundles that could not be sent because the FHIR server was unavailable and replays them once
+ * it is back. The bundles are kept deflated in a {@link WriteJournal}, so they survive restarts, and replayed by a
+ * {@link WriteBehind} in the order they were added per patient, with exponential backoff while the FHIR server is
+ * still unavailable. Every bundle contains all data of one kind of a patient, so a bundle is skipped if a later
+ * bundle of the same kind and patient was added or sent successfully in the meantime.
+ */
+final class Outbox {
+
+    /**
+     * Sends a bundle to the FHIR server.
+     */
+    @FunctionalInterface
+    interface Replayer {
+        void replay(WriteJournal.Entry entry) throws IOException;
+    }
+
+    /**
+     * Thrown when data of a patient cannot be deleted because older saves of the patient wait in the outbox or
+     * the write-behind journal.
+     */
+    static final class PendingException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        PendingException() {
+            this("Saves of the patient wait to be replayed to the FHIR server");
+        }
+
+        PendingException(String message) {
+            super(message);
+        }
+    }
+
+    private final WriteJournal journal;
+    private final WriteBehind replayer;
+    // kind and patient -> sequence numbers below are replaced by a later bundle
+    private final Map<String, Long> supersededBelow = new ConcurrentHashMap<>();
+
+    /**
+     * Replays the bundles the journal recovered.
+     * @param journal       journal of the bundles.
+     * @param patientLocks  locks that serialize the writes of a patient.
+     * @param replay        sends a bundle to the FHIR server.
+     * @param retryDelay    milliseconds before the first retry while the FHIR server is unavailable, doubled for
+     *                      every further retry.
+     * @param maxRetryDelay upper bound of the delay before a retry in milliseconds.
+     */
+    Outbox(WriteJournal journal, PatientLocks patientLocks, Replayer replay, long retryDelay, long maxRetryDelay) {
+        this.journal = journal;
+        for (WriteJournal.Entry entry : journal.recovered()) {
+            supersede(entry.getKind(), entry.getPatientId(), entry.getSeq());
+        }
+        this.replayer = new WriteBehind(journal, entry -> patientLocks.call(entry.getPatientId(), () -> {
+            if (entry.getSeq() < supersededBelow.getOrDefault(key(entry.getKind(), entry.getPatientId()), 0L)) {
+                return WriteBehind.State.SUPERSEDED;
+            }
+            replay.replay(entry);
+            return WriteBehind.State.APPLIED;
+        }), retryDelay, maxRetryDelay);
+    }
+
+    /**
+     * Adds a bundle that could not be sent. Has to be called while holding the lock of the patient.
+     * @param kind      kind of data in the bundle.
+     * @param patientId id of the patient.
+     * @param bundle    encoded transaction bundle.
+     * @throws IOException if the bundle could not be stored.
+     */
+    void add(String kind, String patientId, String bundle) throws IOException {
+        supersede(kind, patientId, replayer.submit(kind, patientId, bundle));
+    }
+
+    /**
+     * Skips the bundles added so far of a kind and patient, because a later bundle was sent successfully. Has to
+     * be called while holding the lock of the patient.
+     * @param kind      kind of data in the bundle.
+     * @param patientId id of the patient.
+     */
+    void sent(String kind, String patientId) {
+        if (replayer.hasQueued(patientId)) {
+            supersede(kind, patientId, journal.nextSeq());
+        }
+    }
+
+    /**
+     * @param patientId id of the patient.
+     * @return true if bundles of the patient wait to be replayed.
+     */
+    boolean hasQueued(String patientId) {
+        return replayer.hasQueued(patientId);
+    }
+
+    /**
+     * Stops replaying and closes the journal; the bundles not replayed yet are replayed after the next start.
+     */
+    void close() {
+        replayer.drain(0);
+    }
+
+    /**
+     * @return number and age of the waiting bundles and the number of replayed, skipped, failed and retried ones.
+     */
+    Map<String, Object> stats() {
+        return replayer.stats();
+    }
+
+    private void supersede(String kind, String patientId, long below) {
+        supersededBelow.merge(key(kind, patientId), below, Math::max);
+    }
+
+    private static String key(String kind, String patientId) {
+        return kind + "|" + patientId;
+    }
+
+}
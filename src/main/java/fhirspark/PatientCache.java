@@ -0,0 +1,151 @@
+package fhirspark;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Remembers the logical id of patients in the FHIR server and which patients are known to have no MTBs or
+ * follow-ups, so that browsing patients without data does not reach the FHIR server. Both maps are bounded LRU
+ * maps. Entries of the negative cache expire and logical ids are dropped when a search by them finds nothing, as
+ * other instances may write to the same FHIR server. Both maps are guarded by one lock rather than a monitor, so
+ * that request threads contending for it on virtual threads do not pin their carrier threads.
+ */
+final class PatientCache {
+
+    /**
+     * Kind of data a patient may be known to have none of.
+     */
+    enum Kind {
+        MTB,
+        FOLLOW_UP
+    }
+
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private final int maxSize;
+    private final long ttl;
+    private final Map<String, String> logicalIds;
+    private final Map<String, Long> empty;
+    private final AtomicLong version = new AtomicLong();
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * @param maxSize maximum number of entries per map.
+     * @param ttl     milliseconds a patient stays known as empty.
+     */
+    PatientCache(int maxSize, long ttl) {
+        this.maxSize = maxSize;
+        this.ttl = ttl;
+        this.logicalIds = lru();
+        this.empty = lru();
+    }
+
+    private <V> Map<String, V> lru() {
+        return new LinkedHashMap<String, V>(maxSize, LOAD_FACTOR, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * @return current version, to be passed to {@link #markEmpty} after the query.
+     */
+    long version() {
+        return version.get();
+    }
+
+    /**
+     * @param patientId patient identifier.
+     * @return reference to the Patient resource, e.g. Patient/123, or null if it is not known.
+     */
+    String logicalId(String patientId) {
+        lock.lock();
+        try {
+            return logicalIds.get(patientId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void putLogicalId(String patientId, String reference) {
+        lock.lock();
+        try {
+            if (reference != null) {
+                logicalIds.put(patientId, reference);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Forgets the logical id of a patient if it is still the given one, e.g. after a search by it found nothing.
+     * @param patientId patient identifier.
+     * @param reference reference that is no longer valid.
+     */
+    void removeLogicalId(String patientId, String reference) {
+        lock.lock();
+        try {
+            logicalIds.remove(patientId, reference);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param kind      kind of data.
+     * @param patientId patient identifier.
+     * @return true if the patient was recently found to have no data of that kind.
+     */
+    boolean isEmpty(Kind kind, String patientId) {
+        lock.lock();
+        try {
+            Long expires = empty.get(kind + "|" + patientId);
+            return expires != null && expires > System.currentTimeMillis();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Remembers that a patient has no data of the kind, unless data was written since the query started.
+     * @param kind         kind of data.
+     * @param patientId    patient identifier.
+     * @param queryVersion {@link #version()} before the query was sent.
+     */
+    void markEmpty(Kind kind, String patientId, long queryVersion) {
+        lock.lock();
+        try {
+            if (version.get() == queryVersion) {
+                empty.put(kind + "|" + patientId, System.currentTimeMillis() + ttl);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Forgets that a patient has no data and its logical id, to be called before and after data of the patient is
+     * written, as the write may replace the Patient.
+     * @param patientId patient identifier.
+     */
+    void invalidate(String patientId) {
+        lock.lock();
+        try {
+            version.incrementAndGet();
+            for (Kind kind : Kind.values()) {
+                empty.remove(kind + "|" + patientId);
+            }
+            logicalIds.remove(patientId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+}
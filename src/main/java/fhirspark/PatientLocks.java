@@ -0,0 +1,99 @@
+package fhirspark;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Serializes the writes of one patient, so that two users saving the same patient do not send overlapping
+ * transactions that conflict on the versions of the resources or create the same resources twice. Writes of
+ * different patients run in parallel. Each patient with a running or waiting write has its own fair lock, which
+ * is removed once the last write of the patient finished. The time writes wait for the lock is recorded.
+ */
+final class PatientLocks {
+
+    private static final class Entry {
+        private final ReentrantLock lock = new ReentrantLock(true);
+        private int users;
+    }
+
+    private final Map<String, Entry> locks = new ConcurrentHashMap<>();
+    private final LatencyHistogram waits = new LatencyHistogram();
+    private final LongAdder contended = new LongAdder();
+
+    /**
+     * @param <T>       result type.
+     * @param <E>       checked exception of the write.
+     * @param patientId id of the patient.
+     * @param write     write of the patient.
+     * @return result of the write.
+     * @throws E of the write.
+     * @throws Deadline.ExceededException if the deadline of the request passed while waiting for the lock.
+     */
+    <T, E extends Exception> T call(String patientId, Bulkhead.Call<T, E> write) throws E {
+        Entry entry = locks.compute(patientId, (id, e) -> {
+            Entry current = e != null ? e : new Entry();
+            current.users++;
+            return current;
+        });
+        try {
+            lock(entry.lock);
+            try {
+                return write.call();
+            } finally {
+                entry.lock.unlock();
+            }
+        } finally {
+            locks.computeIfPresent(patientId, (id, e) -> --e.users == 0 ? null : e);
+        }
+    }
+
+    <E extends Exception> void run(String patientId, Bulkhead.Action<E> write) throws E {
+        call(patientId, () -> {
+            write.run();
+            return null;
+        });
+    }
+
+    private void lock(ReentrantLock lock) {
+        if (lock.tryLock()) {
+            waits.record(0);
+            return;
+        }
+        contended.increment();
+        long start = System.nanoTime();
+        boolean locked = false;
+        try {
+            Deadline deadline = Deadline.current();
+            if (deadline == null) {
+                lock.lockInterruptibly();
+                locked = true;
+            } else {
+                locked = lock.tryLock(Math.max(0, deadline.remainingMillis()), TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            waits.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+        if (!locked) {
+            throw new Deadline.ExceededException("Gave up waiting for other writes of the patient");
+        }
+    }
+
+    /**
+     * @return number of patients with running or waiting writes, number of writes that had to wait and a
+     *         histogram of the time writes waited for their patient.
+     */
+    Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("patients", locks.size());
+        stats.put("contended", contended.sum());
+        stats.put("wait", waits.snapshot());
+        return stats;
+    }
+
+}
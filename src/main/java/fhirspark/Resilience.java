@@ -0,0 +1,158 @@
+package fhirspark;
+
+import ca.uhn.fhir.rest.client.exceptions.FhirClientConnectionException;
+import ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Guards every HTTP call to the FHIR server with a circuit breaker and retries idempotent calls that failed
+ * transiently, e.g. with a 502 from a proxy, with exponential backoff and full jitter. Every attempt passes the
+ * bulkhead of its kind and is recorded by the breaker on its own; the backoff is spent outside of the bulkhead.
+ * Transactions are retried as a whole. No retry is made that would end after the deadline of the request.
+ */
+final class Resilience {
+
+    private static final Set<Integer> TRANSIENT_STATUS = Set.of(429, 502, 503, 504);
+
+    private final CircuitBreaker breaker;
+    private final int maxAttempts;
+    private final long baseDelay;
+    private final long maxDelay;
+    private final LongAdder retries = new LongAdder();
+
+    /**
+     * @param breaker     circuit breaker of the FHIR server.
+     * @param maxAttempts maximum number of attempts of an idempotent call, 1 disables retries.
+     * @param baseDelay   upper bound of the backoff before the second attempt in milliseconds, doubled for every
+     *                    further attempt.
+     * @param maxDelay    upper bound of any backoff in milliseconds.
+     */
+    Resilience(CircuitBreaker breaker, int maxAttempts, long baseDelay, long maxDelay) {
+        this.breaker = breaker;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.baseDelay = baseDelay;
+        this.maxDelay = maxDelay;
+    }
+
+    /**
+     * Guards a single HTTP call to the FHIR server, see {@link GuardedHttpClient}.
+     * @param <T>        result type.
+     * @param <E>        checked exception of the call.
+     * @param bulkhead   bulkhead of the kind of call.
+     * @param idempotent whether the call may be repeated, e.g. a GET, PUT or DELETE.
+     * @param call       call to the FHIR server.
+     * @return result of the call.
+     * @throws E of the call.
+     */
+    <T, E extends Exception> T call(Bulkhead bulkhead, boolean idempotent, Bulkhead.Call<T, E> call) throws E {
+        for (int attempt = 1;; attempt++) {
+            breaker.acquire();
+            boolean recorded = false;
+            try {
+                T result = bulkhead.call(call);
+                breaker.onSuccess();
+                recorded = true;
+                return result;
+            } catch (Bulkhead.RejectedException | Deadline.ExceededException e) {
+                throw e;
+            } catch (BaseServerResponseException e) {
+                if (Bulkhead.isOverload(e)) {
+                    breaker.onFailure();
+                } else {
+                    breaker.onSuccess();
+                }
+                recorded = true;
+                if (!idempotent || attempt >= maxAttempts || !isTransient(e)) {
+                    throw e;
+                }
+                pause(attempt, e);
+            } finally {
+                if (!recorded) {
+                    breaker.onIgnored();
+                }
+            }
+        }
+    }
+
+    /**
+     * Repeats a FHIR transaction that failed transiently. Its HTTP call is guarded by the circuit breaker and a
+     * bulkhead itself, but as a POST it is not retried there.
+     * @param <E>        checked exception of the transaction.
+     * @param idempotent whether the transaction may be repeated, e.g. if it only consists of conditional updates.
+     * @param action     transaction.
+     * @throws E of the transaction.
+     */
+    <E extends Exception> void retry(boolean idempotent, Bulkhead.Action<E> action) throws E {
+        for (int attempt = 1;; attempt++) {
+            try {
+                action.run();
+                return;
+            } catch (BaseServerResponseException e) {
+                if (!idempotent || attempt >= maxAttempts || !isTransient(e)) {
+                    throw e;
+                }
+                pause(attempt, e);
+            }
+        }
+    }
+
+    /**
+     * Waits before the next attempt.
+     * @throws BaseServerResponseException the failure of the attempt if the next one would end after the deadline
+     *                                     of the request or the thread was interrupted.
+     */
+    private void pause(int attempt, BaseServerResponseException failure) {
+        long delay = backoff(attempt);
+        Deadline deadline = Deadline.current();
+        if (deadline != null && deadline.remainingMillis() <= delay) {
+            throw failure;
+        }
+        retries.increment();
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw failure;
+        }
+    }
+
+    /**
+     * @return true if repeating the call may succeed: the FHIR server could not be reached or answered that it is
+     *         temporarily unavailable.
+     */
+    static boolean isTransient(RuntimeException e) {
+        if (e instanceof FhirClientConnectionException) {
+            return true;
+        }
+        return e instanceof BaseServerResponseException
+                && TRANSIENT_STATUS.contains(((BaseServerResponseException) e).getStatusCode());
+    }
+
+    /**
+     * @param attempt number of the failed attempt, starting with 1.
+     * @return random delay between 0 and min(maxDelay, baseDelay * 2^(attempt - 1)) milliseconds.
+     */
+    long backoff(int attempt) {
+        long bound = Math.min(maxDelay, baseDelay << Math.min(attempt - 1, Long.SIZE - 2));
+        if (bound <= 0) {
+            return 0;
+        }
+        return ThreadLocalRandom.current().nextLong(bound + 1);
+    }
+
+    /**
+     * @return state of the circuit breaker and the number of retried attempts.
+     */
+    Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("circuitBreaker", breaker.stats());
+        stats.put("retries", retries.sum());
+        return stats;
+    }
+
+}
@@ -0,0 +1,161 @@
+package fhirspark;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Merges saves of the same patient that arrive within a short window into one write. cBioPortal always sends
+ * the complete data of a patient, so only the latest payload of the window is written. The first save of a
+ * window waits for the window to end and writes; the saves that arrived meanwhile wait for that write and
+ * complete with its outcome, whatever it throws. The merged write runs until the latest deadline of its saves
+ * and is only given up once all of their clients disconnected. A window of 0 writes every save on its own.
+ * @param <T> payload of a save.
+ */
+final class SaveCoalescer<T> {
+
+    /**
+     * Writes the payload of a patient.
+     * @param <T> payload of a save.
+     */
+    @FunctionalInterface
+    interface Writer<T> {
+        /**
+         * @return true if the payload was written, false if it was kept to be written later.
+         */
+        boolean write(String patientId, T payload) throws IOException;
+    }
+
+    private static final class Batch<T> {
+        private final CompletableFuture<Boolean> done = new CompletableFuture<>();
+        private final List<Deadline> deadlines = new ArrayList<>();
+        private T payload;
+    }
+
+    private final long window;
+    private final Writer<T> writer;
+    // the lock is not a monitor, so that saves contending for it on virtual threads do not pin their carrier threads
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<String, Batch<T>> pending = new HashMap<>();
+    private final LongAdder saves = new LongAdder();
+    private final LongAdder writes = new LongAdder();
+
+    /**
+     * @param window milliseconds saves of a patient are collected before the latest is written.
+     * @param writer writes the payload of a patient.
+     */
+    SaveCoalescer(long window, Writer<T> writer) {
+        this.window = window;
+        this.writer = writer;
+    }
+
+    /**
+     * Saves the payload of a patient and returns once it or a later payload of the same patient is written.
+     * @param patientId id of the patient.
+     * @param payload   complete data of the patient.
+     * @return outcome of the write.
+     * @throws IOException of the write.
+     * @throws Deadline.ExceededException if the deadline of the request passed while waiting for the write.
+     */
+    boolean save(String patientId, T payload) throws IOException {
+        saves.increment();
+        if (window <= 0) {
+            writes.increment();
+            return writer.write(patientId, payload);
+        }
+        Batch<T> batch;
+        boolean first;
+        lock.lock();
+        try {
+            batch = pending.get(patientId);
+            first = batch == null;
+            if (first) {
+                batch = new Batch<>();
+                pending.put(patientId, batch);
+            }
+            batch.payload = payload;
+            batch.deadlines.add(Deadline.current());
+        } finally {
+            lock.unlock();
+        }
+        if (first) {
+            write(patientId, batch);
+        }
+        return await(batch);
+    }
+
+    private void write(String patientId, Batch<T> batch) {
+        try {
+            Thread.sleep(Deadline.cap(window));
+        } catch (InterruptedException e) {
+            // write what was collected so far
+            Thread.currentThread().interrupt();
+        }
+        T payload;
+        Deadline deadline;
+        lock.lock();
+        try {
+            pending.remove(patientId);
+            payload = batch.payload;
+            deadline = Deadline.latest(batch.deadlines);
+        } finally {
+            lock.unlock();
+        }
+        writes.increment();
+        // completes the batch with any outcome of the write, also an Error, so no save waits forever
+        batch.done.completeAsync(() -> Deadline.with(deadline, () -> {
+            try {
+                return writer.write(patientId, payload);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }), Runnable::run);
+    }
+
+    private boolean await(Batch<T> batch) throws IOException {
+        try {
+            Deadline deadline = Deadline.current();
+            if (deadline == null) {
+                return batch.done.get();
+            }
+            return batch.done.get(Math.max(0, deadline.remainingMillis()), TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (TimeoutException e) {
+            throw new Deadline.ExceededException("Gave up waiting for the save of the patient");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new Deadline.ExceededException("Interrupted while waiting for the save of the patient");
+        }
+    }
+
+    /**
+     * @return number of saves and of writes they were merged into.
+     */
+    Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("saves", saves.sum());
+        stats.put("writes", writes.sum());
+        return stats;
+    }
+
+}
@@ -0,0 +1,155 @@
+package fhirspark;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the initialization phases of the application concurrently on a small executor and keeps track of their
+ * state, so that the HTTP listener can be opened before all reference data and clients are ready.
+ */
+public final class Startup {
+
+    private static final int THREADS = 4;
+    private static final long KEEP_ALIVE = 1;
+
+    private final ThreadPoolExecutor executor = new ThreadPoolExecutor(THREADS, THREADS, KEEP_ALIVE,
+            TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+                Thread thread = new Thread(r, "startup");
+                thread.setDaemon(true);
+                return thread;
+            });
+    private final List<Phase> phases = new ArrayList<>();
+    private final long started = System.nanoTime();
+    private volatile CompletableFuture<Void> all = CompletableFuture.completedFuture(null);
+
+    /**
+     * Creates an empty startup. The threads of the executor end once they are idle.
+     */
+    public Startup() {
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Schedules an initialization phase. All phases have to be added before the status is queried.
+     * @param name  name of the phase as reported by {@link #status()}.
+     * @param task  initialization code.
+     * @param after phases that have to be finished before this phase can start.
+     * @return the scheduled phase.
+     */
+    public Phase phase(String name, Runnable task, Phase... after) {
+        CompletableFuture<?>[] dependencies = new CompletableFuture<?>[after.length];
+        for (int i = 0; i < after.length; i++) {
+            dependencies[i] = after[i].future;
+        }
+        Phase phase = new Phase(name);
+        phase.future = CompletableFuture.allOf(dependencies).thenRunAsync(() -> phase.run(task), executor)
+                .whenComplete((result, failure) -> phase.complete(failure));
+        phases.add(phase);
+        all = CompletableFuture.allOf(phases.stream().map(p -> p.future).toArray(CompletableFuture<?>[]::new));
+        return phase;
+    }
+
+    /**
+     * @return true if all phases finished successfully.
+     */
+    public boolean isReady() {
+        return all.isDone() && !all.isCompletedExceptionally();
+    }
+
+    /**
+     * Runs an action once all phases added so far finished successfully.
+     * @param action action to run.
+     */
+    public void whenReady(Runnable action) {
+        all.thenRun(action);
+    }
+
+    /**
+     * @return readiness, overall startup time and state and duration of every phase.
+     */
+    public Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("ready", isReady());
+        List<Map<String, Object>> states = new ArrayList<>();
+        long finished = started;
+        for (Phase phase : phases) {
+            states.add(phase.status());
+            finished = Math.max(finished, phase.finished);
+        }
+        status.put("millis", isReady() ? TimeUnit.NANOSECONDS.toMillis(finished - started) : null);
+        status.put("phases", states);
+        return status;
+    }
+
+    /**
+     * A single initialization step.
+     */
+    public static final class Phase {
+
+        private final String name;
+        private CompletableFuture<Void> future;
+        private volatile String state = "pending";
+        private volatile long begin;
+        private volatile long finished;
+
+        private Phase(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Runs the task. The state is set in a finally block, so that an Error thrown by the task marks the phase
+         * as failed as well; the future of the phase completes exceptionally with it.
+         */
+        private void run(Runnable task) {
+            begin = System.nanoTime();
+            state = "running";
+            boolean done = false;
+            try {
+                task.run();
+                done = true;
+            } finally {
+                finished = System.nanoTime();
+                state = done ? "done" : "failed";
+            }
+        }
+
+        /**
+         * Reports the failure of the phase. A phase that never ran because one of its dependencies failed is
+         * marked as skipped.
+         */
+        private void complete(Throwable failure) {
+            if (failure == null) {
+                return;
+            }
+            if ("pending".equals(state)) {
+                state = "skipped";
+                return;
+            }
+            System.out.println("Startup phase " + name + " failed:");
+            (failure instanceof CompletionException ? failure.getCause() : failure).printStackTrace();
+        }
+
+        /**
+         * @return pending, running, done, failed or skipped.
+         */
+        public String getState() {
+            return state;
+        }
+
+        private Map<String, Object> status() {
+            Map<String, Object> status = new LinkedHashMap<>();
+            status.put("name", name);
+            status.put("state", state);
+            status.put("millis", finished != 0 ? TimeUnit.NANOSECONDS.toMillis(finished - begin) : null);
+            return status;
+        }
+    }
+
+}
@@ -0,0 +1,432 @@
+package fhirspark;
+
+import ca.uhn.fhir.parser.DataFormatException;
+import ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Accepts writes into a {@link WriteJournal} and applies them to the FHIR server in the background, in the order
+ * they were accepted per patient. Writes of different patients are applied in parallel. A write that failed
+ * because the FHIR server is unavailable is retried with exponential backoff and blocks the later writes of its
+ * patient; any other failure is final and reported by {@link #status(long)}. Writes the journal recovered on
+ * startup are applied first. If the journal cannot record that a write was applied, recording it is tried again
+ * with the next write and on shutdown; a write that stays unrecorded is applied again after a restart.
+ */
+final class WriteBehind {
+
+    private static final int MAX_STATUSES = 10000;
+    // keeps retryDelay * 2^attempts far from overflowing
+    private static final int MAX_DOUBLINGS = 20;
+
+    /**
+     * State of an accepted write.
+     */
+    enum State {
+        QUEUED,
+        APPLIED,
+        // the FHIR server was unavailable, the outbox replays the write later
+        OUTBOX,
+        SUPERSEDED,
+        FAILED
+    }
+
+    /**
+     * Applies a write to the FHIR server.
+     */
+    @FunctionalInterface
+    interface Applier {
+        /**
+         * @param entry write to apply.
+         * @return {@link State#APPLIED}, {@link State#OUTBOX} if the write was handed to the outbox, or
+         *         {@link State#SUPERSEDED} if it was skipped because a later write of the patient replaces it.
+         * @throws IOException if the write failed.
+         */
+        State apply(WriteJournal.Entry entry) throws IOException;
+    }
+
+    private static final class Status {
+        private final State state;
+        private final String error;
+
+        Status(State state, String error) {
+            this.state = state;
+            this.error = error;
+        }
+    }
+
+    private final WriteJournal journal;
+    private final Applier applier;
+    private final long retryDelay;
+    private final long maxRetryDelay;
+    // the lock is not a monitor, so that virtual flushers waiting for a retry do not pin their carrier threads
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final Map<String, Deque<WriteJournal.Entry>> queues = new HashMap<>();
+    private final Map<Long, Status> statuses = new LinkedHashMap<>() {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Status> eldest) {
+            return size() > MAX_STATUSES;
+        }
+    };
+    // applied writes the journal could not mark as applied yet
+    private final Set<Long> unrecorded = new TreeSet<>();
+    private final ExecutorService flushers = Executors.newVirtualThreadPerTaskExecutor();
+    private final LongAdder applied = new LongAdder();
+    private final LongAdder deferred = new LongAdder();
+    private final LongAdder superseded = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private volatile boolean draining;
+    private volatile boolean stopped;
+
+    /**
+     * @param journal    journal the writes are accepted into.
+     * @param applier    applies a write to the FHIR server.
+     * @param retryDelay milliseconds before a write that failed because the FHIR server is unavailable is retried.
+     */
+    WriteBehind(WriteJournal journal, Applier applier, long retryDelay) {
+        this(journal, applier, retryDelay, retryDelay);
+    }
+
+    /**
+     * @param journal       journal the writes are accepted into.
+     * @param applier       applies a write to the FHIR server.
+     * @param retryDelay    milliseconds before the first retry of a write that failed because the FHIR server is
+     *                      unavailable, doubled for every further retry.
+     * @param maxRetryDelay upper bound of the delay before a retry in milliseconds.
+     */
+    WriteBehind(WriteJournal journal, Applier applier, long retryDelay, long maxRetryDelay) {
+        this.journal = journal;
+        this.applier = applier;
+        this.retryDelay = retryDelay;
+        this.maxRetryDelay = Math.max(retryDelay, maxRetryDelay);
+        for (WriteJournal.Entry entry : journal.recovered()) {
+            enqueue(entry);
+        }
+    }
+
+    /**
+     * Stores a write durably and queues it.
+     * @param kind      kind of the write.
+     * @param patientId id of the patient.
+     * @param payload   payload of the write.
+     * @return id of the write for {@link #status(long)}.
+     * @throws IOException if the write could not be stored.
+     */
+    long submit(String kind, String patientId, String payload) throws IOException {
+        if (draining) {
+            throw new IllegalStateException("FhirSpark is shutting down");
+        }
+        WriteJournal.Entry entry = journal.append(kind, patientId, payload);
+        enqueue(entry);
+        return entry.getSeq();
+    }
+
+    /**
+     * @param patientId id of the patient.
+     * @return true if writes of the patient are waiting to be applied.
+     */
+    boolean hasQueued(String patientId) {
+        lock.lock();
+        try {
+            return queues.containsKey(patientId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param id id of the write.
+     * @return state of the write and, if it failed, the reason, or null if the write is unknown.
+     */
+    Map<String, Object> status(long id) {
+        Status status;
+        lock.lock();
+        try {
+            status = statuses.get(id);
+        } finally {
+            lock.unlock();
+        }
+        if (status == null) {
+            return null;
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("id", id);
+        result.put("state", status.state.name().toLowerCase(Locale.ROOT));
+        if (status.error != null) {
+            result.put("error", status.error);
+        }
+        return result;
+    }
+
+    /**
+     * Stops accepting writes and waits until the queued writes are applied. Writes that are not applied when the
+     * timeout is reached, e.g. because the FHIR server is unavailable, stay in the journal.
+     * @param timeout milliseconds to wait.
+     * @return true if all queued writes were applied.
+     */
+    boolean drain(long timeout) {
+        draining = true;
+        lock.lock();
+        try {
+            long remaining = TimeUnit.MILLISECONDS.toNanos(timeout);
+            while (!queues.isEmpty() && remaining > 0) {
+                remaining = changed.awaitNanos(remaining);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            stopped = true;
+            changed.signalAll();
+            lock.unlock();
+        }
+        record();
+        boolean drained = journal.pending() == 0;
+        try {
+            journal.close();
+        } catch (IOException e) {
+            System.out.println("WARNING: The write journal could not be closed: " + e.getMessage());
+            return false;
+        }
+        return drained;
+    }
+
+    private void enqueue(WriteJournal.Entry entry) {
+        lock.lock();
+        try {
+            statuses.put(entry.getSeq(), new Status(State.QUEUED, null));
+            Deque<WriteJournal.Entry> queue = queues.get(entry.getPatientId());
+            if (queue != null) {
+                queue.add(entry);
+                return;
+            }
+            queue = new ArrayDeque<>();
+            queue.add(entry);
+            queues.put(entry.getPatientId(), queue);
+        } finally {
+            lock.unlock();
+        }
+        flushers.execute(() -> flush(entry.getPatientId()));
+    }
+
+    private void flush(String patientId) {
+        while (true) {
+            WriteJournal.Entry entry;
+            lock.lock();
+            try {
+                entry = queues.get(patientId).peek();
+            } finally {
+                lock.unlock();
+            }
+            boolean done = true;
+            boolean returned = false;
+            try {
+                done = apply(entry);
+                returned = true;
+            } finally {
+                if (!returned && next(patientId, true)) {
+                    // the write failed unexpectedly; the later writes of the patient are still applied
+                    flushers.execute(() -> flush(patientId));
+                }
+            }
+            if (!next(patientId, done)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Removes the write at the head of the queue of the patient.
+     * @param done false if the write was not applied because FhirSpark shut down.
+     * @return true if the next write of the patient is to be applied.
+     */
+    private boolean next(String patientId, boolean done) {
+        lock.lock();
+        try {
+            Deque<WriteJournal.Entry> queue = queues.get(patientId);
+            queue.poll();
+            // if FhirSpark shut down before the write could be applied, the journal keeps it
+            if (!done || queue.isEmpty() || stopped) {
+                queues.remove(patientId);
+                changed.signalAll();
+                return false;
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return false if the write could not be applied because the FHIR server is unavailable and FhirSpark shut
+     *         down.
+     */
+    private boolean apply(WriteJournal.Entry entry) {
+        boolean settled = false;
+        try {
+            for (int attempt = 1;; attempt++) {
+                try {
+                    State state = applier.apply(entry);
+                    if (state == State.APPLIED) {
+                        applied.increment();
+                    } else if (state == State.OUTBOX) {
+                        deferred.increment();
+                    } else {
+                        superseded.increment();
+                    }
+                    finish(entry, state, null);
+                    settled = true;
+                    return true;
+                } catch (BaseServerResponseException | CircuitBreaker.OpenException | Bulkhead.RejectedException e) {
+                    if (!isUnavailable(e)) {
+                        fail(entry, e.getMessage());
+                        settled = true;
+                        return true;
+                    }
+                    System.out.println("Write " + entry.getSeq() + " is retried: " + e.getMessage());
+                } catch (IOException | DataFormatException | IllegalArgumentException e) {
+                    fail(entry, e.getMessage());
+                    settled = true;
+                    return true;
+                }
+                retries.increment();
+                lock.lock();
+                try {
+                    if (stopped) {
+                        settled = true;
+                        return false;
+                    }
+                    // woken early when drain() gives up
+                    changed.await(backoff(attempt), TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    settled = true;
+                    return false;
+                } finally {
+                    lock.unlock();
+                }
+            }
+        } finally {
+            if (!settled) {
+                fail(entry, "The write failed unexpectedly");
+            }
+        }
+    }
+
+    /**
+     * @param attempt number of the failed attempt, starting with 1.
+     * @return random delay between half and all of min(maxRetryDelay, retryDelay * 2^(attempt - 1)) milliseconds,
+     *         so that the writes of many patients are not retried in lockstep.
+     */
+    long backoff(int attempt) {
+        long delay = Math.min(maxRetryDelay, retryDelay << Math.min(attempt - 1, MAX_DOUBLINGS));
+        if (delay <= 1) {
+            return Math.max(0, delay);
+        }
+        return ThreadLocalRandom.current().nextLong(delay / 2, delay + 1);
+    }
+
+    /**
+     * @return true if the FHIR server could not be reached or is temporarily unavailable, so that the write may
+     *         succeed later.
+     */
+    static boolean isUnavailable(RuntimeException e) {
+        return e instanceof CircuitBreaker.OpenException || e instanceof Bulkhead.RejectedException
+                || Resilience.isTransient(e);
+    }
+
+    private void fail(WriteJournal.Entry entry, String error) {
+        System.out.println("Write " + entry.getSeq() + " of patient " + entry.getPatientId() + " failed: " + error);
+        failed.increment();
+        finish(entry, State.FAILED, error);
+    }
+
+    private void finish(WriteJournal.Entry entry, State state, String error) {
+        lock.lock();
+        try {
+            statuses.put(entry.getSeq(), new Status(state, error));
+            unrecorded.add(entry.getSeq());
+        } finally {
+            lock.unlock();
+        }
+        record();
+    }
+
+    /**
+     * Marks the finished writes as applied in the journal. Writes whose marker could
+     * not be stored are tried again next time.
+     */
+    private void record() {
+        List<Long> seqs;
+        lock.lock();
+        try {
+            seqs = new ArrayList<>(unrecorded);
+        } finally {
+            lock.unlock();
+        }
+        for (long seq : seqs) {
+            try {
+                journal.applied(seq);
+            } catch (IOException e) {
+                System.out.println("WARNING: The journal could not record that write " + seq
+                        + " was applied, it is tried again later: " + e.getMessage());
+                return;
+            }
+            lock.lock();
+            try {
+                unrecorded.remove(seq);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * @return number of queued writes, the patients they belong to and the age of the oldest, and the number of
+     *         applied, handed to the outbox, superseded, failed and retried writes and of finished writes the
+     *         journal could not record yet.
+     */
+    Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("queued", journal.pending());
+        lock.lock();
+        try {
+            stats.put("patients", queues.size());
+            stats.put("unrecorded", unrecorded.size());
+            long oldest = System.currentTimeMillis();
+            for (Deque<WriteJournal.Entry> queue : queues.values()) {
+                oldest = Math.min(oldest, queue.peek().getTime());
+            }
+            stats.put("oldestAgeMillis", System.currentTimeMillis() - oldest);
+        } finally {
+            lock.unlock();
+        }
+        stats.put("applied", applied.sum());
+        stats.put("outbox", deferred.sum());
+        stats.put("superseded", superseded.sum());
+        stats.put("failed", failed.sum());
+        stats.put("retries", retries.sum());
+        return stats;
+    }
+
+}
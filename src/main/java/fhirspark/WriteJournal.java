@@ -0,0 +1,336 @@
+package fhirspark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Append-only journal of accepted writes in memory-mapped segment files. A write is appended and forced to disk
+ * before it is acknowledged; once it has been applied to the FHIR server, a marker is appended. Reopening the
+ * journal returns the writes without marker in the order they were appended. A segment is deleted as soon as it
+ * and all older segments only contain applied writes.
+ *
+ * Each record is its length, the CRC32 of its body and the body: type, sequence number and, for writes, time,
+ * kind, patient id and the payload, optionally deflated. Reading stops at the first record that is empty or does
+ * not match its checksum, which is where a crash interrupted the last append.
+ */
+final class WriteJournal implements Closeable {
+
+    private static final String PREFIX = "segment-";
+    private static final String SUFFIX = ".log";
+    private static final int RECORD_HEADER = Integer.BYTES * 2;
+    private static final byte WRITE = 1;
+    private static final byte APPLIED = 2;
+    private static final byte DEFLATED_WRITE = 3;
+
+    /**
+     * Write accepted by the journal.
+     */
+    static final class Entry {
+        private final long seq;
+        private final long time;
+        private final String kind;
+        private final String patientId;
+        private final String payload;
+
+        Entry(long seq, long time, String kind, String patientId, String payload) {
+            this.seq = seq;
+            this.time = time;
+            this.kind = kind;
+            this.patientId = patientId;
+            this.payload = payload;
+        }
+
+        long getSeq() {
+            return seq;
+        }
+
+        /**
+         * @return time the write was accepted in milliseconds since the epoch.
+         */
+        long getTime() {
+            return time;
+        }
+
+        String getKind() {
+            return kind;
+        }
+
+        String getPatientId() {
+            return patientId;
+        }
+
+        String getPayload() {
+            return payload;
+        }
+    }
+
+    private final Path directory;
+    private final int segmentSize;
+    private final boolean deflate;
+    // segment, named by the first sequence number that may be in it -> number of writes that are not applied yet
+    private final SortedMap<Long, Integer> open = new TreeMap<>();
+    private final Map<Long, Long> segmentOf = new LinkedHashMap<>();
+    private final List<Entry> recovered = new ArrayList<>();
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private long segment;
+    private long nextSeq = 1;
+
+    /**
+     * Opens the journal in a directory, recovers the writes that were not applied and starts a new segment.
+     * @param directory   directory of the segment files, created if missing.
+     * @param segmentSize size of a segment file in bytes.
+     * @param deflate     whether payloads are compressed.
+     * @throws IOException if the directory or a segment could not be read or created.
+     */
+    WriteJournal(Path directory, int segmentSize, boolean deflate) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.deflate = deflate;
+        Files.createDirectories(directory);
+        Map<Long, Entry> pending = new LinkedHashMap<>();
+        for (Map.Entry<Long, Path> file : segments().entrySet()) {
+            open.put(file.getKey(), 0);
+            read(file.getKey(), file.getValue(), pending);
+        }
+        recovered.addAll(pending.values());
+        segment = open.isEmpty() ? 0 : open.lastKey();
+        deleteApplied();
+        roll(0);
+    }
+
+    /**
+     * @return writes that were accepted but not applied before the journal was closed, oldest first.
+     */
+    synchronized List<Entry> recovered() {
+        return new ArrayList<>(recovered);
+    }
+
+    /**
+     * Appends a write and forces it to disk.
+     * @param kind      kind of the write.
+     * @param patientId id of the patient.
+     * @param payload   payload of the write.
+     * @return the appended write with its sequence number.
+     * @throws IOException if the write could not be stored.
+     */
+    synchronized Entry append(String kind, String patientId, String payload) throws IOException {
+        if (channel == null) {
+            throw new IOException("The journal is closed");
+        }
+        Entry entry = new Entry(nextSeq++, System.currentTimeMillis(), kind, patientId, payload);
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(body)) {
+            out.writeByte(deflate ? DEFLATED_WRITE : WRITE);
+            out.writeLong(entry.getSeq());
+            out.writeLong(entry.getTime());
+            out.writeUTF(kind);
+            out.writeUTF(patientId);
+            byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+            if (deflate) {
+                bytes = deflate(bytes);
+            }
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+        put(body.toByteArray(), true);
+        open.merge(segment, 1, Integer::sum);
+        segmentOf.put(entry.getSeq(), segment);
+        return entry;
+    }
+
+    /**
+     * Marks a write as applied. The marker is not forced to disk; if it is lost in a crash, the write is
+     * recovered and applied again.
+     * @param seq sequence number of the write.
+     * @throws IOException if the marker could not be stored.
+     */
+    synchronized void applied(long seq) throws IOException {
+        if (channel == null) {
+            // the write is recovered and applied again after the restart
+            return;
+        }
+        Long of = segmentOf.get(seq);
+        if (of == null) {
+            return;
+        }
+        ByteBuffer body = ByteBuffer.allocate(1 + Long.BYTES);
+        body.put(APPLIED).putLong(seq);
+        put(body.array(), false);
+        // only once the marker is stored, so that marking the write can be tried again
+        segmentOf.remove(seq);
+        open.merge(of, -1, Integer::sum);
+        deleteApplied();
+    }
+
+    /**
+     * @return sequence number the next appended write gets.
+     */
+    synchronized long nextSeq() {
+        return nextSeq;
+    }
+
+    /**
+     * @return number of writes that are not applied yet.
+     */
+    synchronized int pending() {
+        return segmentOf.size();
+    }
+
+    /**
+     * @return number of segment files.
+     */
+    synchronized int segmentCount() {
+        return open.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            buffer.force();
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private Map<Long, Path> segments() throws IOException {
+        Map<Long, Path> segments = new TreeMap<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(file -> {
+                String name = file.getFileName().toString();
+                if (name.startsWith(PREFIX) && name.endsWith(SUFFIX)) {
+                    segments.put(Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length())),
+                            file);
+                }
+            });
+        }
+        return segments;
+    }
+
+    private void read(long id, Path file, Map<Long, Entry> pending) throws IOException {
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(file));
+        while (data.remaining() >= RECORD_HEADER) {
+            int length = data.getInt();
+            int crc = data.getInt();
+            if (length <= 0 || length > data.remaining()) {
+                break;
+            }
+            byte[] body = new byte[length];
+            data.get(body);
+            if (crc != checksum(body)) {
+                System.out.println("WARNING: Journal segment " + file + " ends with a torn record");
+                break;
+            }
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(body))) {
+                byte type = in.readByte();
+                long seq = in.readLong();
+                nextSeq = Math.max(nextSeq, seq + 1);
+                if (type == WRITE || type == DEFLATED_WRITE) {
+                    long time = in.readLong();
+                    String kind = in.readUTF();
+                    String patientId = in.readUTF();
+                    byte[] payload = new byte[in.readInt()];
+                    in.readFully(payload);
+                    if (type == DEFLATED_WRITE) {
+                        payload = inflate(payload);
+                    }
+                    pending.put(seq, new Entry(seq, time, kind, patientId,
+                            new String(payload, StandardCharsets.UTF_8)));
+                    open.merge(id, 1, Integer::sum);
+                    segmentOf.put(seq, id);
+                } else if (pending.remove(seq) != null) {
+                    open.merge(segmentOf.remove(seq), -1, Integer::sum);
+                }
+            }
+        }
+    }
+
+    private void put(byte[] body, boolean force) throws IOException {
+        if (buffer.remaining() < RECORD_HEADER + body.length) {
+            roll(RECORD_HEADER + body.length);
+        }
+        int position = buffer.position();
+        buffer.putInt(body.length);
+        buffer.putInt(checksum(body));
+        buffer.put(body);
+        if (force) {
+            buffer.force(position, RECORD_HEADER + body.length);
+        }
+    }
+
+    private void roll(int minSize) throws IOException {
+        close();
+        deleteApplied();
+        // markers of applied writes may fill a segment without advancing the sequence
+        segment = Math.max(nextSeq, segment + 1);
+        channel = FileChannel.open(file(segment), StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(segmentSize, minSize));
+        channel.force(true);
+        open.put(segment, 0);
+    }
+
+    /**
+     * Deletes the oldest segments as long as all their writes are applied, except the one appended to.
+     */
+    private void deleteApplied() throws IOException {
+        Iterator<Map.Entry<Long, Integer>> segments = open.entrySet().iterator();
+        while (segments.hasNext()) {
+            Map.Entry<Long, Integer> oldest = segments.next();
+            if (oldest.getValue() > 0 || channel != null && oldest.getKey() == segment) {
+                return;
+            }
+            Files.deleteIfExists(file(oldest.getKey()));
+            segments.remove();
+        }
+    }
+
+    private Path file(long id) {
+        return directory.resolve(String.format(Locale.ROOT, "%s%020d%s", PREFIX, id, SUFFIX));
+    }
+
+    private static byte[] deflate(byte[] bytes) throws IOException {
+        ByteArrayOutputStream deflated = new ByteArrayOutputStream();
+        try (DeflaterOutputStream out = new DeflaterOutputStream(deflated, new Deflater(Deflater.BEST_SPEED))) {
+            out.write(bytes);
+        }
+        return deflated.toByteArray();
+    }
+
+    private static byte[] inflate(byte[] bytes) throws IOException {
+        try (InflaterInputStream in = new InflaterInputStream(new ByteArrayInputStream(bytes))) {
+            return in.readAllBytes();
+        }
+    }
+
+    private static int checksum(byte[] body) {
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        return (int) crc.getValue();
+    }
+
+}
@@ -3,6 +3,7 @@ package fhirspark.adapter;
 import fhirspark.definitions.LoincEnum;
 import fhirspark.definitions.UriEnum;
 import fhirspark.resolver.OncoKbDrug;
+import fhirspark.resolver.model.Drug;
 import fhirspark.restmodel.Treatment;
 import org.hl7.fhir.r4.model.Coding;
 import org.hl7.fhir.r4.model.Observation.ObservationComponentComponent;
@@ -25,7 +26,7 @@ public final class DrugAdapter {
         assessed.getCode().addCoding(LoincEnum.MEDICATION_ASSESSED.toCoding());
 
         String ncitCode = treatment.getNcitCode() != null ? treatment.getNcitCode()
-                : OncoKbDrug.resolve(treatment.getName()).getNcitCode();
+                : OncoKbDrug.resolve(treatment.getName()).map(Drug::getNcitCode).orElse(null);
         if (ncitCode != null) {
             assessed.getValueCodeableConcept()
                     .addCoding(new Coding(UriEnum.NCIT_URI.getUri(), ncitCode, treatment.getName()));
@@ -36,10 +37,20 @@ public final class DrugAdapter {
         return assessed;
     }
 
+    /**
+     *
+     * @param result Observation component for medication.
+     * @return The treatment, with the name taken from OncoKB if only the NCIt code was stored.
+     */
     public static Treatment toJson(ObservationComponentComponent result) {
+        Coding coding = result.getValueCodeableConcept().getCodingFirstRep();
+        String name = coding.getDisplay();
+        if (name == null && coding.getCode() != null) {
+            name = OncoKbDrug.resolveByNcitCode(coding.getCode()).map(Drug::getDrugName).orElse(null);
+        }
         return new Treatment()
-                .withNcitCode(result.getValueCodeableConcept().getCodingFirstRep().getCode())
-                .withName(result.getValueCodeableConcept().getCodingFirstRep().getDisplay());
+                .withNcitCode(coding.getCode())
+                .withName(name);
     }
 
 }
@@ -4,7 +4,6 @@ import ca.uhn.fhir.rest.client.api.IGenericClient;
 import ca.uhn.fhir.rest.gclient.TokenClientParam;
 import fhirspark.definitions.GenomicsReportingEnum;
 import fhirspark.definitions.MolekulargenetischerBefundberichtEnum;
-import fhirspark.definitions.ResponseEnum;
 import fhirspark.definitions.SnomedEnum;
 import fhirspark.restmodel.FollowUp;
 import fhirspark.restmodel.ResponseCriteria;
@@ -22,11 +21,13 @@ import org.hl7.fhir.r4.model.Observation;
 import org.hl7.fhir.r4.model.Practitioner;
 import org.hl7.fhir.r4.model.Reference;
 
-import java.lang.reflect.InvocationTargetException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 public final class FollowUpAdapter {
 
@@ -46,14 +47,24 @@ public final class FollowUpAdapter {
     }
 
     public static FollowUp toJson(List<Regex> regex, MedicationStatement medicationStatement) {
+        return toJson(regex, medicationStatement, new HashMap<>());
+    }
+
+    /**
+     *
+     * @param regex               regular expressions for sample ids.
+     * @param medicationStatement MedicationStatement of the follow-up.
+     * @param recommendations     therapy recommendations already converted for the current request, by Observation
+     *                            id.
+     * @return the follow-up.
+     */
+    public static FollowUp toJson(List<Regex> regex, MedicationStatement medicationStatement,
+            Map<String, CompletableFuture<TherapyRecommendation>> recommendations) {
         FollowUp followUp = new FollowUp();
 
         if (medicationStatement.hasInformationSource()) {
-            Bundle b2 = (Bundle) client.search().forResource(Practitioner.class).where(new TokenClientParam("_id")
-                    .exactly().code(medicationStatement.getInformationSource().getReference())).prettyPrint()
-                    .execute();
-            Practitioner author = (Practitioner) b2.getEntryFirstRep().getResource();
-            followUp.setAuthor(author.getIdentifierFirstRep().getValue());
+            followUp.setAuthor(IdentifierLookup.identifierValue(client, Practitioner.class,
+                    medicationStatement.getInformationSource().getReference(), Practitioner::getIdentifierFirstRep));
         }
 
         //followUp.setTherapyRecommendation(medicationStatement.getBasedOnFirstRep().getReference());
@@ -80,7 +91,7 @@ public final class FollowUpAdapter {
 
             Bundle b1 = (Bundle) client.search().forResource(Observation.class)
                 .where(new TokenClientParam("_id")
-                .exactly().code(reference.getReference())).prettyPrint()
+                .exactly().code(reference.getReference()))
                 .include(Observation.INCLUDE_DERIVED_FROM)
                 .include(Observation.INCLUDE_SPECIMEN.asRecursive())
                 .execute();
@@ -90,22 +101,18 @@ public final class FollowUpAdapter {
             if (obs.getIdentifierFirstRep().getValue().startsWith("response_")) {
                 String tag = obs.getIdentifierFirstRep().getValue().split("_")[1];
 
-                try {
-                    ResponseCriteria.class
-                        .getDeclaredMethod("set" + tag, Boolean.class)
-                        .invoke(respCrit, true);
-                } catch (NoSuchMethodException e) {
-                    e.printStackTrace();
-                } catch (IllegalAccessException e) {
-                    e.printStackTrace();
-                } catch (InvocationTargetException e) {
-                    e.printStackTrace();
+                ResponseSlot slot = ResponseSlot.fromTag(tag);
+                if (slot != null) {
+                    slot.set(respCrit, true);
+                } else {
+                    System.out.println("WARNING: Skipping response observation with unknown tag "
+                            + obs.getIdentifierFirstRep().getValue());
                 }
 
             } else if (obs.getIdentifierFirstRep().getSystem().equals(therapyRecommendationUri)) {
 
                 therapyRecommendation = TherapyRecommendationAdapter.toJson(client,
-                        regex, obs);
+                        regex, obs, recommendations);
 
             }
 
@@ -163,75 +170,44 @@ public final class FollowUpAdapter {
 
         if (followUp.getResponse() != null) {
             ResponseCriteria response = followUp.getResponse();
-            ArrayList<String> responseTags = new ArrayList<String>();
-            ArrayList<Boolean> responseValues = new ArrayList<Boolean>();
-            final int respCount = 12;
-            final Double numOfResp = 4.0;
-
-            responseTags.add("Pd3");
-            responseValues.add(response.getPd3());
-            responseTags.add("Pr3");
-            responseValues.add(response.getPr3());
-            responseTags.add("Cr3");
-            responseValues.add(response.getCr3());
-            responseTags.add("Sd3");
-            responseValues.add(response.getSd3());
-            responseTags.add("Pd6");
-            responseValues.add(response.getPd6());
-            responseTags.add("Pr6");
-            responseValues.add(response.getPr6());
-            responseTags.add("Cr6");
-            responseValues.add(response.getCr6());
-            responseTags.add("Sd6");
-            responseValues.add(response.getSd6());
-            responseTags.add("Pd12");
-            responseValues.add(response.getPd12());
-            responseTags.add("Pr12");
-            responseValues.add(response.getPr12());
-            responseTags.add("Cr12");
-            responseValues.add(response.getCr12());
-            responseTags.add("Sd12");
-            responseValues.add(response.getSd12());
-
-            for (int i = 0; i < respCount; i++) {
-
-                if (!responseValues.get(i)) {
+
+            for (ResponseSlot slot : ResponseSlot.values()) {
+
+                if (!slot.isSet(response)) {
                     continue;
                 }
 
-                String[] months = {"3", "6", "12"};
-
                 Observation responseObs = new Observation();
 
                 responseObs.getCode()
                     .addCoding(GenomicsReportingEnum.THERAPEUTIC_IMPLICATION_CODING.toCoding());
 
                 CodeableConcept codeConc = new CodeableConcept();
-                codeConc.addCoding(ResponseEnum.valueOf(responseTags.get(i).substring(0, 2).toUpperCase()).toCoding());
+                codeConc.addCoding(slot.getResponse().toCoding());
                 responseObs.setValue(codeConc);
 
                 DateTimeType dTime = new DateTimeType(followUp.getDate());
                 DateTimeType respTime = getMTBDate(followUp.getAuthor(), followUp.getTherapyRecommendation().getId());
-                respTime.add(Calendar.MONTH, Integer.valueOf(months[(int) Math.floor(i / numOfResp)]));
+                respTime.add(Calendar.MONTH, slot.getMonths());
 
                 responseObs.setEffective(respTime);
                 responseObs.setIssued(dTime.getValue());
 
-                dTime.add(Calendar.MONTH, Integer.valueOf(months[(int) Math.floor(i / numOfResp)]));
+                dTime.add(Calendar.MONTH, slot.getMonths());
 
                 responseObs.setId(IdType.newRandomUuid());
                 responseObs.setStatus(Observation.ObservationStatus.FINAL);
                 responseObs.addIdentifier().setSystem(responseUri)
-                    .setValue("response_" + responseTags.get(i) + "_" + followUp.getId());
+                    .setValue("response_" + slot.getTag() + "_" + followUp.getId());
 
                 bundle.addEntry().setFullUrl(responseObs.getIdElement().getValue()).setResource(responseObs)
                         .getRequest().setUrl(
-                            "Observation?identifier=" + "response_" + responseTags.get(i) + "_" + followUp.getId()
+                            "Observation?identifier=" + "response_" + slot.getTag() + "_" + followUp.getId()
                         )
-                        .setIfNoneExist("identifier=" + "response_" + responseTags.get(i) + "_" + followUp.getId())
+                        .setIfNoneExist("identifier=" + "response_" + slot.getTag() + "_" + followUp.getId())
                         .setMethod(Bundle.HTTPVerb.PUT);
                 medicationStatement.addReasonReference(new Reference(responseObs)
-                    .setDisplay("TherapyResponse_" + months[(int) Math.floor(i / numOfResp)] + "_ Months"));
+                    .setDisplay("TherapyResponse_" + slot.getMonths() + "_ Months"));
             }
         }
 
@@ -245,7 +221,8 @@ public final class FollowUpAdapter {
 
         Bundle b1 = (Bundle) client.search().forResource(Observation.class)
                 .where(new TokenClientParam("identifier")
-                .exactly().code(trIdentifier)).prettyPrint()
+                .exactly().code(trIdentifier))
+                .elementsSubset(IdentifierLookup.ELEMENTS)
                 .execute();
 
         Observation obs = (Observation) b1.getEntryFirstRep().getResource();
@@ -260,7 +237,7 @@ public final class FollowUpAdapter {
         Bundle b1 = (Bundle) client.search().forResource(DiagnosticReport.class)
                 .where(new TokenClientParam("result")
                 .exactly().code(getTherapyRecommendationReference(credentials, trIdentifier).getId()))
-                .prettyPrint()
+                .elementsSubset("effective")
                 .execute();
 
         DiagnosticReport dr = (DiagnosticReport) b1.getEntryFirstRep().getResource();
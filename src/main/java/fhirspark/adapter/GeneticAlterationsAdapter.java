@@ -3,6 +3,7 @@ package fhirspark.adapter;
 import fhirspark.definitions.GenomicsReportingEnum;
 import fhirspark.definitions.LoincEnum;
 import fhirspark.definitions.MolekulargenetischerBefundberichtEnum;
+import fhirspark.definitions.Terminology;
 import fhirspark.definitions.UriEnum;
 import fhirspark.resolver.HgncGeneName;
 import fhirspark.resolver.model.Genenames;
@@ -82,8 +83,10 @@ public final class GeneticAlterationsAdapter {
 
         ObservationComponentComponent variationCode = new ObservationComponentComponent()
                 .setCode(new CodeableConcept(LoincEnum.DISCRETE_GENETIC_VARIANT.toCoding()));
+        Integer entrezGeneId = geneticAlteration.getEntrezGeneId() != null ? geneticAlteration.getEntrezGeneId()
+                : HgncGeneName.resolveEntrezGeneId(geneticAlteration.getHugoSymbol());
         variationCode.getValueCodeableConcept().addCoding().setSystem(UriEnum.NCBI_GENE.getUri())
-                .setCode(String.valueOf(geneticAlteration.getEntrezGeneId()));
+                .setCode(String.valueOf(entrezGeneId));
         if (geneticAlteration.getClinvar() != null) {
             variationCode.getValueCodeableConcept().addCoding().setSystem(UriEnum.CLINVAR.getUri())
                     .setCode(String.valueOf(geneticAlteration.getClinvar()));
@@ -95,7 +98,7 @@ public final class GeneticAlterationsAdapter {
         }
         variant.addComponent(variationCode);
 
-        Genenames gn = HgncGeneName.resolve(geneticAlteration.getEntrezGeneId());
+        Genenames gn = entrezGeneId != null ? HgncGeneName.resolve(entrezGeneId) : null;
         if (gn != null) {
             ObservationComponentComponent hgnc = new ObservationComponentComponent()
                 .setCode(new CodeableConcept(LoincEnum.GENE_STUDIED.toCoding()));
@@ -159,14 +162,22 @@ public final class GeneticAlterationsAdapter {
         GeneticAlteration g = new GeneticAlteration();
         if (o != null && o.hasComponent()) {
             o.getComponent().forEach(variant -> {
-                switch (LoincEnum.fromCode(variant.getCode().getCodingFirstRep().getCode())) {
+                LoincEnum component = Terminology.fromCoding(variant.getCode().getCodingFirstRep(), LoincEnum.class);
+                if (component == null) {
+                    return;
+                }
+                switch (component) {
                     case AMINO_ACID_CHANGE:
                         g.setAlteration(variant.getValueCodeableConcept().getCodingFirstRep().getCode()
                                 .replaceFirst("p.", ""));
                         break;
                     case DISCRETE_GENETIC_VARIANT:
                         variant.getValueCodeableConcept().getCoding().forEach(coding -> {
-                            switch (UriEnum.fromUri(coding.getSystem())) {
+                            UriEnum system = Terminology.fromCoding(coding, UriEnum.class);
+                            if (system == null) {
+                                return;
+                            }
+                            switch (system) {
                                 case NCBI_GENE:
                                     g.setEntrezGeneId(Integer.valueOf(coding.getCode()));
                                     break;
@@ -198,16 +209,12 @@ public final class GeneticAlterationsAdapter {
                         g.setDbsnp(variant.getValueCodeableConcept().getCodingFirstRep().getCode());
                         break;
                     case CHROMOSOME_COPY_NUMBER_CHANGE:
-                        switch (LoincEnum.fromCode(variant.getValueCodeableConcept().getCodingFirstRep()
-                                .getCode())) {
-                            case COPY_NUMBER_GAIN:
-                                g.setAlteration("Amplification");
-                                break;
-                            case COPY_NUMBER_LOSS:
-                                g.setAlteration("Deletion");
-                                break;
-                            default:
-                                break;
+                        LoincEnum change = Terminology.fromCoding(
+                                variant.getValueCodeableConcept().getCodingFirstRep(), LoincEnum.class);
+                        if (change == LoincEnum.COPY_NUMBER_GAIN) {
+                            g.setAlteration("Amplification");
+                        } else if (change == LoincEnum.COPY_NUMBER_LOSS) {
+                            g.setAlteration("Deletion");
                         }
                         break;
                     case GENOMIC_ALT_ALLELE:
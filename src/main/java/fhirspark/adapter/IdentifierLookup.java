@@ -0,0 +1,45 @@
+package fhirspark.adapter;
+
+import ca.uhn.fhir.rest.client.api.IGenericClient;
+import ca.uhn.fhir.rest.gclient.TokenClientParam;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Identifier;
+import org.hl7.fhir.r4.model.Resource;
+
+import java.util.function.Function;
+
+/**
+ * Resolves references to the business identifier of the referenced resource. The FHIR server is asked to return
+ * only the identifier elements (_elements=identifier), so neither the transfer nor the parsing of the rest of the
+ * resource is paid for.
+ */
+public final class IdentifierLookup {
+
+    static final String ELEMENTS = "identifier";
+
+    private IdentifierLookup() {
+    }
+
+    /**
+     *
+     * @param <T>        type of the referenced resource.
+     * @param client     FHIR client.
+     * @param type       class of the referenced resource.
+     * @param reference  reference or id of the resource.
+     * @param identifier selects the identifier of the resource.
+     * @return value of the identifier or null if the resource does not exist.
+     */
+    public static <T extends Resource> String identifierValue(IGenericClient client, Class<T> type,
+            String reference, Function<T, Identifier> identifier) {
+        Bundle b = (Bundle) client.search().forResource(type)
+                .where(new TokenClientParam("_id").exactly().code(reference))
+                .elementsSubset(ELEMENTS)
+                .execute();
+        Resource resource = b.getEntryFirstRep().getResource();
+        if (!type.isInstance(resource)) {
+            return null;
+        }
+        return identifier.apply(type.cast(resource)).getValue();
+    }
+
+}
@@ -1,17 +1,16 @@
 package fhirspark.adapter;
 
 import ca.uhn.fhir.rest.client.api.IGenericClient;
-import ca.uhn.fhir.rest.gclient.TokenClientParam;
 import fhirspark.definitions.GenomicsReportingEnum;
 import fhirspark.definitions.Hl7TerminologyEnum;
 import fhirspark.definitions.LoincEnum;
 import fhirspark.definitions.MolekulargenetischerBefundberichtEnum;
+import fhirspark.definitions.Terminology;
 import fhirspark.restmodel.Mtb;
 import fhirspark.restmodel.TherapyRecommendation;
 import fhirspark.settings.Regex;
 import fhirspark.settings.Settings;
 import org.hl7.fhir.r4.model.Bundle;
-import org.hl7.fhir.r4.model.Coding;
 import org.hl7.fhir.r4.model.DiagnosticReport;
 import org.hl7.fhir.r4.model.DiagnosticReport.DiagnosticReportStatus;
 import org.hl7.fhir.r4.model.Extension;
@@ -33,6 +32,7 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 public final class MtbAdapter {
 
@@ -53,8 +53,16 @@ public final class MtbAdapter {
         MtbAdapter.serviceRequestUri = settings.getServiceRequestSystem();
     }
 
+    /**
+     *
+     * @param regex            regular expressions for sample ids.
+     * @param patientId        id of the patient.
+     * @param diagnosticReport DiagnosticReport with included results, specimens and service requests.
+     * @param recommendations  therapy recommendations already converted for the current request, by Observation id.
+     * @return the MTB.
+     */
     public static Mtb toJson(List<Regex> regex, String patientId,
-            DiagnosticReport diagnosticReport) {
+            DiagnosticReport diagnosticReport, Map<String, CompletableFuture<TherapyRecommendation>> recommendations) {
         Mtb mtb = new Mtb().withTherapyRecommendations(new ArrayList<>())
                 .withSamples(new ArrayList<>());
 
@@ -64,11 +72,8 @@ public final class MtbAdapter {
         }
 
         if (diagnosticReport.hasPerformer()) {
-            Bundle b2 = (Bundle) client.search().forResource(Practitioner.class).where(new TokenClientParam("_id")
-                    .exactly().code(diagnosticReport.getPerformerFirstRep().getReference())).prettyPrint()
-                    .execute();
-            Practitioner author = (Practitioner) b2.getEntryFirstRep().getResource();
-            mtb.setAuthor(author.getIdentifierFirstRep().getValue());
+            mtb.setAuthor(IdentifierLookup.identifierValue(client, Practitioner.class,
+                    diagnosticReport.getPerformerFirstRep().getReference(), Practitioner::getIdentifierFirstRep));
         }
 
         SimpleDateFormat f = new SimpleDateFormat("yyyy-MM-dd");
@@ -97,16 +102,12 @@ public final class MtbAdapter {
 
                 Task t = (Task) ((Reference) recommendedActionReference.getValue()).getResource();
                 if (t != null && t.getMeta().hasProfile(GenomicsReportingEnum.TASK_REC_FOLLOWUP.getSystem())) {
-                    Coding c = t.getCode().getCodingFirstRep();
-                    switch (LoincEnum.fromCode(c.getCode())) {
-                        case CONFIRMATORY_TESTING_RECOMMENDED:
-                            mtb.setRebiopsyRecommendation(true);
-                            break;
-                        case GENETIC_COUNSELING_RECOMMENDED:
-                            mtb.setGeneticCounselingRecommendation(true);
-                            break;
-                        default:
-                            break;
+                    LoincEnum recommendation = Terminology.fromCoding(t.getCode().getCodingFirstRep(),
+                            LoincEnum.class);
+                    if (recommendation == LoincEnum.CONFIRMATORY_TESTING_RECOMMENDED) {
+                        mtb.setRebiopsyRecommendation(true);
+                    } else if (recommendation == LoincEnum.GENETIC_COUNSELING_RECOMMENDED) {
+                        mtb.setGeneticCounselingRecommendation(true);
                     }
                 }
             });
@@ -116,7 +117,7 @@ public final class MtbAdapter {
                     || ((Observation) reference.getResource()).getMeta()
                             .hasProfile(GenomicsReportingEnum.MEDICATION_EFFICACY.getSystem())) {
                 TherapyRecommendation therapyRecommendation = TherapyRecommendationAdapter.toJson(client,
-                        regex, (Observation) reference.getResource());
+                        regex, (Observation) reference.getResource(), recommendations);
                 mtb.getTherapyRecommendations().add(therapyRecommendation);
             }
         }
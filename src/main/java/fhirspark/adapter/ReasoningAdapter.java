@@ -1,7 +1,8 @@
 package fhirspark.adapter;
 
 import ca.uhn.fhir.rest.client.api.IGenericClient;
-import fhirspark.adapter.clinicaldata.GenericAdapter;
+import fhirspark.adapter.clinicaldata.ClinicalDataAdapter;
+import fhirspark.adapter.clinicaldata.ClinicalDataAdapterRegistry;
 import fhirspark.definitions.UriEnum;
 import fhirspark.restmodel.ClinicalDatum;
 import fhirspark.restmodel.GeneticAlteration;
@@ -11,11 +12,8 @@ import org.hl7.fhir.r4.model.Bundle;
 import org.hl7.fhir.r4.model.IdType;
 import org.hl7.fhir.r4.model.Observation;
 import org.hl7.fhir.r4.model.Reference;
-import org.hl7.fhir.r4.model.Resource;
 import org.hl7.fhir.r4.model.Specimen;
 
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -43,16 +41,8 @@ public final class ReasoningAdapter {
                                     + sampleId)
                             .setMethod(Bundle.HTTPVerb.PUT);
                 }
-                try {
-                    Method m = Class.forName("fhirspark.adapter.clinicaldata." + clinical.getAttributeId())
-                            .getMethod("process", ClinicalDatum.class);
-                    efficacyObservation.addHasMember(new Reference((Resource) m.invoke(null, clinical)));
-                } catch (ClassNotFoundException | NoSuchMethodException | IllegalAccessException
-                        | InvocationTargetException e) {
-                    GenericAdapter genericAdapter = new GenericAdapter();
-                    efficacyObservation
-                            .addHasMember(new Reference(genericAdapter.fromJson(clinical, new Reference(s))));
-                }
+                ClinicalDataAdapter adapter = ClinicalDataAdapterRegistry.resolve(clinical.getAttributeId());
+                efficacyObservation.addHasMember(new Reference(adapter.fromJson(clinical, new Reference(s))));
             });
         }
 
@@ -92,8 +82,8 @@ public final class ReasoningAdapter {
                 .add(GeneticAlterationsAdapter.toJson((Observation) reference.getResource())));
 
         clinical.forEach(member -> {
-            GenericAdapter genericAdapter = new GenericAdapter();
-            ClinicalDatum cd = genericAdapter.toJson(regex, (Observation) member.getResource(), client);
+            Observation obs = (Observation) member.getResource();
+            ClinicalDatum cd = ClinicalDataAdapterRegistry.resolve(obs).toJson(regex, obs, client);
             clinicalData.add(cd);
         });
 
@@ -2,26 +2,167 @@ package fhirspark.adapter;
 
 import fhirspark.settings.Regex;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
+/**
+ * Translates sample ids between the HIS and cBioPortal representation using the configured regular expressions.
+ * The rules are compiled once and recent translations are memoized, as the adapters call this for every sample
+ * and every clinical datum. The memo is read without locking; when it is full it is cleared and filled again
+ * with the ids translated from then on.
+ */
 public final class RegexAdapter {
 
+    private static final String METACHARACTERS = "\\^$.|?*+()[]{}";
+    private static final String QUANTIFIERS = "?*+{";
+    private static final int MEMO_SIZE = 1024;
+
+    private static volatile Pipeline pipeline = new Pipeline(Collections.emptyList());
+
     private RegexAdapter() {
     }
 
+    /**
+     * Compiles the configured rules ahead of the first request.
+     * @param regex rules from the settings.
+     */
+    public static void initialize(List<Regex> regex) {
+        pipeline = new Pipeline(regex);
+    }
+
     public static String applyRegexToCbioportal(List<Regex> regex, String input) {
-        String output = input;
-        for (Regex r : regex) {
-            output = output.replaceAll(r.getHis(), r.getCbio());
-        }
-        return output;
+        return pipelineFor(regex).toCbioportal(input);
     }
 
     public static String applyRegexFromCbioportal(List<Regex> regex, String input) {
-        String output = input;
-        for (Regex r : regex) {
-            output = output.replaceAll(r.getCbio(), r.getHis());
+        return pipelineFor(regex).fromCbioportal(input);
+    }
+
+    private static Pipeline pipelineFor(List<Regex> regex) {
+        Pipeline current = pipeline;
+        if (current.source != regex) {
+            current = new Pipeline(regex);
+            pipeline = current;
+        }
+        return current;
+    }
+
+    /**
+     * Compiled rules of both directions for one list of {@link Regex}.
+     */
+    private static final class Pipeline {
+
+        private final List<Regex> source;
+        private final List<Rule> toCbio = new ArrayList<>();
+        private final List<Rule> fromCbio = new ArrayList<>();
+        private final Map<String, String> toCbioMemo = new ConcurrentHashMap<>();
+        private final Map<String, String> fromCbioMemo = new ConcurrentHashMap<>();
+
+        Pipeline(List<Regex> regex) {
+            this.source = regex;
+            if (regex != null) {
+                for (Regex r : regex) {
+                    toCbio.add(Rule.compile(r.getHis(), r.getCbio()));
+                    fromCbio.add(Rule.compile(r.getCbio(), r.getHis()));
+                }
+            }
+        }
+
+        String toCbioportal(String input) {
+            return translate(toCbio, toCbioMemo, input);
+        }
+
+        String fromCbioportal(String input) {
+            return translate(fromCbio, fromCbioMemo, input);
+        }
+
+        private static String translate(List<Rule> rules, Map<String, String> memo, String input) {
+            if (rules.isEmpty()) {
+                return input;
+            }
+            String output = memo.get(input);
+            if (output == null) {
+                output = input;
+                for (Rule rule : rules) {
+                    output = rule.apply(output);
+                }
+                if (memo.size() >= MEMO_SIZE) {
+                    memo.clear();
+                }
+                memo.put(input, output);
+            }
+            return output;
+        }
+    }
+
+    /**
+     * A single replacement. Patterns without metacharacters are applied as plain string replacements, all
+     * others are precompiled and only run if their literal prefix occurs in the input.
+     */
+    private static final class Rule {
+
+        private final String literal;
+        private final String replacement;
+        private final Pattern pattern;
+        private final String prefix;
+
+        private Rule(String literal, String replacement, Pattern pattern, String prefix) {
+            this.literal = literal;
+            this.replacement = replacement;
+            this.pattern = pattern;
+            this.prefix = prefix;
+        }
+
+        static Rule compile(String regex, String replacement) {
+            if (!regex.isEmpty() && isLiteral(regex, METACHARACTERS) && isLiteral(replacement, "\\$")) {
+                return new Rule(regex, replacement, null, null);
+            }
+            return new Rule(null, replacement, Pattern.compile(regex), literalPrefix(regex));
+        }
+
+        String apply(String input) {
+            if (literal != null) {
+                if (literal.length() == 1 && replacement.length() == 1) {
+                    return input.replace(literal.charAt(0), replacement.charAt(0));
+                }
+                return input.replace(literal, replacement);
+            }
+            if (!prefix.isEmpty() && !input.contains(prefix)) {
+                return input;
+            }
+            Matcher m = pattern.matcher(input);
+            return m.find() ? m.replaceAll(replacement) : input;
+        }
+
+        private static boolean isLiteral(String s, String reserved) {
+            for (int i = 0; i < s.length(); i++) {
+                if (reserved.indexOf(s.charAt(i)) >= 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Longest leading part of the pattern that every match has to start with.
+         */
+        private static String literalPrefix(String regex) {
+            if (regex.indexOf('|') >= 0) {
+                return "";
+            }
+            int end = 0;
+            while (end < regex.length() && METACHARACTERS.indexOf(regex.charAt(end)) < 0) {
+                end++;
+            }
+            if (end > 0 && end < regex.length() && QUANTIFIERS.indexOf(regex.charAt(end)) >= 0) {
+                end--;
+            }
+            return regex.substring(0, end);
         }
-        return output;
     }
 }
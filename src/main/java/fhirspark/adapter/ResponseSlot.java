@@ -0,0 +1,88 @@
+package fhirspark.adapter;
+
+import fhirspark.definitions.ResponseEnum;
+import fhirspark.restmodel.ResponseCriteria;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * The twelve RECIST response flags of {@link ResponseCriteria}, in the order they are persisted.
+ */
+public enum ResponseSlot {
+    PD3("Pd3", ResponseEnum.PD, ResponseSlot.THREE, ResponseCriteria::getPd3, ResponseCriteria::setPd3),
+    PR3("Pr3", ResponseEnum.PR, ResponseSlot.THREE, ResponseCriteria::getPr3, ResponseCriteria::setPr3),
+    CR3("Cr3", ResponseEnum.CR, ResponseSlot.THREE, ResponseCriteria::getCr3, ResponseCriteria::setCr3),
+    SD3("Sd3", ResponseEnum.SD, ResponseSlot.THREE, ResponseCriteria::getSd3, ResponseCriteria::setSd3),
+    PD6("Pd6", ResponseEnum.PD, ResponseSlot.SIX, ResponseCriteria::getPd6, ResponseCriteria::setPd6),
+    PR6("Pr6", ResponseEnum.PR, ResponseSlot.SIX, ResponseCriteria::getPr6, ResponseCriteria::setPr6),
+    CR6("Cr6", ResponseEnum.CR, ResponseSlot.SIX, ResponseCriteria::getCr6, ResponseCriteria::setCr6),
+    SD6("Sd6", ResponseEnum.SD, ResponseSlot.SIX, ResponseCriteria::getSd6, ResponseCriteria::setSd6),
+    PD12("Pd12", ResponseEnum.PD, ResponseSlot.TWELVE, ResponseCriteria::getPd12, ResponseCriteria::setPd12),
+    PR12("Pr12", ResponseEnum.PR, ResponseSlot.TWELVE, ResponseCriteria::getPr12, ResponseCriteria::setPr12),
+    CR12("Cr12", ResponseEnum.CR, ResponseSlot.TWELVE, ResponseCriteria::getCr12, ResponseCriteria::setCr12),
+    SD12("Sd12", ResponseEnum.SD, ResponseSlot.TWELVE, ResponseCriteria::getSd12, ResponseCriteria::setSd12);
+
+    private static final int THREE = 3;
+    private static final int SIX = 6;
+    private static final int TWELVE = 12;
+
+    private static final Map<String, ResponseSlot> BY_TAG = new HashMap<>();
+
+    static {
+        for (ResponseSlot slot : values()) {
+            BY_TAG.put(slot.tag, slot);
+        }
+    }
+
+    private final String tag;
+    private final ResponseEnum response;
+    private final int months;
+    private final Function<ResponseCriteria, Boolean> getter;
+    private final BiConsumer<ResponseCriteria, Boolean> setter;
+
+    ResponseSlot(String tag, ResponseEnum response, int months, Function<ResponseCriteria, Boolean> getter,
+            BiConsumer<ResponseCriteria, Boolean> setter) {
+        this.tag = tag;
+        this.response = response;
+        this.months = months;
+        this.getter = getter;
+        this.setter = setter;
+    }
+
+    /**
+     * @param tag tag as used in the identifier of a response observation, e.g. Pd3.
+     * @return the matching slot or null, the caller decides how to handle a tag that has no flag.
+     */
+    public static ResponseSlot fromTag(String tag) {
+        return BY_TAG.get(tag);
+    }
+
+    /**
+     * @param criteria response criteria of a follow-up.
+     * @return whether the flag of this slot is true. A flag sent as null counts as not set, no response
+     *         observation is written for it.
+     */
+    public boolean isSet(ResponseCriteria criteria) {
+        return Boolean.TRUE.equals(getter.apply(criteria));
+    }
+
+    public void set(ResponseCriteria criteria, Boolean value) {
+        setter.accept(criteria, value);
+    }
+
+    public String getTag() {
+        return tag;
+    }
+
+    public ResponseEnum getResponse() {
+        return response;
+    }
+
+    public int getMonths() {
+        return months;
+    }
+
+}
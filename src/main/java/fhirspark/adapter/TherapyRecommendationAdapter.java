@@ -1,10 +1,10 @@
 package fhirspark.adapter;
 
 import ca.uhn.fhir.rest.client.api.IGenericClient;
-import ca.uhn.fhir.rest.gclient.TokenClientParam;
 import fhirspark.definitions.GenomicsReportingEnum;
 import fhirspark.definitions.LoincEnum;
 import fhirspark.definitions.MolekulargenetischerBefundberichtEnum;
+import fhirspark.definitions.Terminology;
 import fhirspark.definitions.UriEnum;
 import fhirspark.resolver.PubmedPublication;
 import fhirspark.restmodel.Reasoning;
@@ -33,6 +33,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 public final class TherapyRecommendationAdapter {
 
@@ -143,39 +144,61 @@ public final class TherapyRecommendationAdapter {
 
     }
 
+    /**
+     * Converts a therapy recommendation, unless the same Observation was already converted for the current request.
+     * The conversion looks up referenced resources, so it runs outside of the map; a concurrent caller of the same
+     * Observation waits for the first one instead of converting it again. A failed conversion is removed, so a retry
+     * converts the Observation again.
+     * @param client          FHIR client.
+     * @param regex           regular expressions for sample ids.
+     * @param ob              therapy recommendation Observation.
+     * @param recommendations therapy recommendations already converted or being converted for the current request,
+     *                        by Observation id.
+     * @return the therapy recommendation.
+     */
+    public static TherapyRecommendation toJson(IGenericClient client, List<Regex> regex, Observation ob,
+            Map<String, CompletableFuture<TherapyRecommendation>> recommendations) {
+        String key = ob.getIdElement().toUnqualifiedVersionless().getValue();
+        if (key == null) {
+            return toJson(client, regex, ob);
+        }
+        CompletableFuture<TherapyRecommendation> conversion = new CompletableFuture<>();
+        CompletableFuture<TherapyRecommendation> running = recommendations.putIfAbsent(key, conversion);
+        if (running != null) {
+            return running.join();
+        }
+        try {
+            conversion.complete(toJson(client, regex, ob));
+        } finally {
+            if (!conversion.isDone()) {
+                recommendations.remove(key, conversion);
+                conversion.completeExceptionally(new IllegalStateException("Conversion of " + key + " failed"));
+            }
+        }
+        return conversion.join();
+    }
+
     public static TherapyRecommendation toJson(IGenericClient client, List<Regex> regex, Observation ob) {
         TherapyRecommendation therapyRecommendation = new TherapyRecommendation()
                 .withComment(new ArrayList<>()).withReasoning(new Reasoning()).withClinicalTrial(new ArrayList<>());
 
         if (ob.hasPerformer()) {
-            Bundle b2 = (Bundle) client
-                    .search().forResource(Practitioner.class).where(new TokenClientParam("_id")
-                            .exactly().code(ob.getPerformerFirstRep().getReference()))
-                    .prettyPrint().execute();
-            Practitioner author = (Practitioner) b2.getEntryFirstRep().getResource();
-            therapyRecommendation.setAuthor(author.getIdentifierFirstRep().getValue());
+            therapyRecommendation.setAuthor(IdentifierLookup.identifierValue(client, Practitioner.class,
+                    ob.getPerformerFirstRep().getReference(), Practitioner::getIdentifierFirstRep));
         }
 
         Bundle bDiagnosticReports = (Bundle) client.search().forResource(DiagnosticReport.class)
-            .where(DiagnosticReport.RESULT.hasId(ob.getIdElement().getIdPart())).prettyPrint()
-            .include(DiagnosticReport.INCLUDE_SUBJECT).execute();
+            .where(DiagnosticReport.RESULT.hasId(ob.getIdElement().getIdPart()))
+            .elementsSubset("subject").execute();
         if (bDiagnosticReports.hasEntry()) {
             DiagnosticReport mtb = (DiagnosticReport) bDiagnosticReports.getEntryFirstRep().getResource();
-            Bundle bPat = (Bundle) client.search().forResource(Patient.class)
-                .where(new TokenClientParam("_id")
-                .exactly().code(mtb.getSubject().getReference())).prettyPrint().execute();
-            Patient subject = (Patient) bPat.getEntryFirstRep().getResource();
-
-            therapyRecommendation.setCaseId(subject.getIdentifierFirstRep().getValue());
+            therapyRecommendation.setCaseId(IdentifierLookup.identifierValue(client, Patient.class,
+                    mtb.getSubject().getReference(), Patient::getIdentifierFirstRep));
         }
 
         if (ob.hasFocus()) {
-            Bundle b2 = (Bundle) client
-                    .search().forResource(ResearchStudy.class).where(new TokenClientParam("_id")
-                            .exactly().code(ob.getFocusFirstRep().getReference()))
-                    .prettyPrint().execute();
-            ResearchStudy rs = (ResearchStudy) b2.getEntryFirstRep().getResource();
-            therapyRecommendation.setStudyId(rs.getIdentifierFirstRep().getValue());
+            therapyRecommendation.setStudyId(IdentifierLookup.identifierValue(client, ResearchStudy.class,
+                    ob.getFocusFirstRep().getReference(), ResearchStudy::getIdentifierFirstRep));
         }
 
         therapyRecommendation.setId(ob.getIdentifierFirstRep().getValue());
@@ -199,7 +222,8 @@ public final class TherapyRecommendationAdapter {
         therapyRecommendation.setReferences(references);
 
         ob.getComponent().forEach(result -> {
-            if (result.getCode().getCodingFirstRep().getCode().equals("93044-6")) {
+            Enum<?> concept = Terminology.fromCoding(result.getCode().getCodingFirstRep());
+            if (concept == LoincEnum.LEVEL_OF_EVIDENCE) {
                 String[] evidence = result.getValueCodeableConcept().getCodingFirstRep().getDisplay()
                         .split(" ");
                 therapyRecommendation.setEvidenceLevel(evidence[0]);
@@ -213,10 +237,10 @@ public final class TherapyRecommendationAdapter {
                                     .replace("(", "").replace(")", ""));
                 }
             }
-            if (result.getCode().getCodingFirstRep().getCode().equals("51963-7")) {
+            if (concept == LoincEnum.MEDICATION_ASSESSED) {
                 therapyRecommendation.getTreatments().add(DrugAdapter.toJson(result));
             }
-            if (result.getCode().getCodingFirstRep().getCode().equals("associated-therapy")) {
+            if (concept == GenomicsReportingEnum.ASSOCIATED_THERAPY) {
                 therapyRecommendation.setClinicalTrial(ClinicalTrialAdapter.toJson(result));
             }
         });
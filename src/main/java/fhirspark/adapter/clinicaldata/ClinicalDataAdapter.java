@@ -7,10 +7,13 @@ import org.hl7.fhir.r4.model.Observation;
 import org.hl7.fhir.r4.model.Reference;
 import org.hl7.fhir.r4.model.Resource;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 /**
- * General interface for all adapters of clinical data.
+ * General interface for all adapters of clinical data. Implementations are discovered via
+ * {@link java.util.ServiceLoader} by the {@link ClinicalDataAdapterRegistry}.
  */
 public interface ClinicalDataAdapter {
 
@@ -20,4 +23,19 @@ public interface ClinicalDataAdapter {
 
     ClinicalDatum toJson(List<Regex> regex, Observation fhirResource, IGenericClient client);
 
+    /**
+     * @return cBioPortal attribute ids this adapter is responsible for.
+     */
+    default Collection<String> getAttributeIds() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * @param fhirResource clinical datum observation read from the FHIR server.
+     * @return whether this adapter converts the observation back to a clinical datum.
+     */
+    default boolean accepts(Observation fhirResource) {
+        return false;
+    }
+
 }
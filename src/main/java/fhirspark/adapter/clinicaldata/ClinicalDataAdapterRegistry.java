@@ -0,0 +1,78 @@
+package fhirspark.adapter.clinicaldata;
+
+import org.hl7.fhir.r4.model.Observation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+
+/**
+ * Maps cBioPortal attribute ids and stored observations to their {@link ClinicalDataAdapter}. The registry is
+ * built once from all registered service implementations, attributes and observations without a specific
+ * adapter resolve to the {@link GenericAdapter}.
+ */
+public final class ClinicalDataAdapterRegistry {
+
+    private static final List<ClinicalDataAdapter> REGISTERED = new ArrayList<>();
+    private static final Map<String, ClinicalDataAdapter> ADAPTERS = new HashMap<>();
+    private static final ClinicalDataAdapter GENERIC;
+
+    static {
+        ClinicalDataAdapter generic = null;
+        for (ClinicalDataAdapter adapter : ServiceLoader.load(ClinicalDataAdapter.class)) {
+            REGISTERED.add(adapter);
+            for (String attributeId : adapter.getAttributeIds()) {
+                ADAPTERS.putIfAbsent(attributeId, adapter);
+            }
+            if (generic == null && adapter instanceof GenericAdapter) {
+                generic = adapter;
+            }
+        }
+        GENERIC = generic != null ? generic : new GenericAdapter();
+    }
+
+    private ClinicalDataAdapterRegistry() {
+    }
+
+    /**
+     * @param attributeId cBioPortal attribute id of the clinical datum.
+     * @return specific adapter for the attribute or the generic fallback.
+     */
+    public static ClinicalDataAdapter resolve(String attributeId) {
+        if (attributeId == null) {
+            return GENERIC;
+        }
+        return ADAPTERS.getOrDefault(attributeId, GENERIC);
+    }
+
+    /**
+     * @param observation clinical datum observation read from the FHIR server.
+     * @return first registered adapter that accepts the observation or the generic fallback.
+     */
+    public static ClinicalDataAdapter resolve(Observation observation) {
+        for (ClinicalDataAdapter adapter : REGISTERED) {
+            if (adapter != GENERIC && adapter.accepts(observation)) {
+                return adapter;
+            }
+        }
+        return GENERIC;
+    }
+
+    /**
+     * @return shared instance of the generic fallback adapter.
+     */
+    public static ClinicalDataAdapter generic() {
+        return GENERIC;
+    }
+
+    /**
+     * @return all adapters registered as service implementations, in the order they were loaded.
+     */
+    public static List<ClinicalDataAdapter> registered() {
+        return Collections.unmodifiableList(REGISTERED);
+    }
+
+}
@@ -1,12 +1,12 @@
 package fhirspark.adapter.clinicaldata;
 
 import ca.uhn.fhir.rest.client.api.IGenericClient;
-import ca.uhn.fhir.rest.gclient.TokenClientParam;
+import fhirspark.adapter.IdentifierLookup;
 import fhirspark.adapter.SpecimenAdapter;
 import fhirspark.definitions.LoincEnum;
+import fhirspark.definitions.Terminology;
 import fhirspark.restmodel.ClinicalDatum;
 import fhirspark.settings.Regex;
-import org.hl7.fhir.r4.model.Bundle;
 import org.hl7.fhir.r4.model.CodeableConcept;
 import org.hl7.fhir.r4.model.Observation;
 import org.hl7.fhir.r4.model.Observation.ObservationStatus;
@@ -43,6 +43,11 @@ public class GenericAdapter implements ClinicalDataAdapter {
         return obs;
     }
 
+    @Override
+    public boolean accepts(Observation obs) {
+        return Terminology.fromCoding(obs.getCode().getCodingFirstRep()) == LoincEnum.CLINICAL_FINDING;
+    }
+
     @Override
     public ClinicalDatum toJson(List<Regex> regex, Observation obs, IGenericClient client) {
         if (obs.getValueStringType().asStringValue() == null) {
@@ -55,14 +60,8 @@ public class GenericAdapter implements ClinicalDataAdapter {
         }
         if (obs.getSpecimen().getReference() != null && obs.getSpecimen().getResource() == null) {
 
-            Bundle b1 = (Bundle) client.search().forResource(Specimen.class)
-                    .where(new TokenClientParam("_id")
-                            .exactly().code(obs.getSpecimen().getReference()))
-                    .prettyPrint()
-                    .execute();
-
-            cd.setSampleId(((Specimen) b1.getEntryFirstRep().getResource())
-                    .getIdentifierFirstRep().getValue());
+            cd.setSampleId(IdentifierLookup.identifierValue(client, Specimen.class,
+                    obs.getSpecimen().getReference(), Specimen::getIdentifierFirstRep));
 
         }
         if (obs.getSpecimen().getResource() != null) {
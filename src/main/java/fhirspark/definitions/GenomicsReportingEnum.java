@@ -2,6 +2,9 @@ package fhirspark.definitions;
 
 import org.hl7.fhir.r4.model.Coding;
 
+import java.util.HashMap;
+import java.util.Map;
+
 public enum GenomicsReportingEnum {
     THERAPEUTIC_IMPLICATION(
             "http://hl7.org/fhir/uv/genomics-reporting/StructureDefinition/therapeutic-implication", null, null),
@@ -24,27 +27,32 @@ public enum GenomicsReportingEnum {
     ASSOCIATED_THERAPY("http://hl7.org/fhir/uv/genomics-reporting/CodeSystem/TbdCodes", "associated-therapy",
             "Genomically linked therapy");
 
+    private static final Map<String, GenomicsReportingEnum> BY_SYSTEM = new HashMap<>();
+
+    static {
+        for (GenomicsReportingEnum e : values()) {
+            BY_SYSTEM.putIfAbsent(e.system, e);
+        }
+    }
+
     private final String system;
     private final String code;
     private final String display;
+    private final Coding coding;
 
     GenomicsReportingEnum(String system, String code, String display) {
         this.system = system;
         this.code = code;
         this.display = display;
+        this.coding = new Coding(system, code, display);
     }
 
     public Coding toCoding() {
-        return new Coding(this.system, this.code, this.display);
+        return this.coding.copy();
     }
 
     public static GenomicsReportingEnum fromSystem(String s) {
-        for (GenomicsReportingEnum e : GenomicsReportingEnum.values()) {
-            if (e.system.equals(s)) {
-                return e;
-            }
-        }
-        return null;
+        return BY_SYSTEM.get(s);
     }
 
     /**
@@ -54,4 +62,11 @@ public enum GenomicsReportingEnum {
         return system;
     }
 
+    /**
+     * @return the code
+     */
+    public String getCode() {
+        return code;
+    }
+
 }
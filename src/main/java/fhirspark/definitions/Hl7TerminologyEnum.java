@@ -2,23 +2,54 @@ package fhirspark.definitions;
 
 import org.hl7.fhir.r4.model.Coding;
 
+import java.util.HashMap;
+import java.util.Map;
+
 public enum Hl7TerminologyEnum {
     MR("0203", "MR", "Medical record number"),
     GE("0074", "GE", "Genetic"),
     TUMOR("0487", "TUMOR", "Tumor");
 
+    private static final Map<String, Hl7TerminologyEnum> BY_CODE = new HashMap<>();
+
+    static {
+        for (Hl7TerminologyEnum e : values()) {
+            BY_CODE.put(e.code, e);
+        }
+    }
+
     private final String table;
     private final String code;
     private final String display;
+    private final Coding coding;
 
     Hl7TerminologyEnum(String table, String code, String display) {
         this.table = table;
         this.code = code;
         this.display = display;
+        this.coding = new Coding(UriEnum.HL7_TERMINOLOGY.getUri() + table, code, display);
     }
 
     public Coding toCoding() {
-        return new Coding(UriEnum.HL7_TERMINOLOGY.getUri() + this.table, this.code, this.display);
+        return this.coding.copy();
+    }
+
+    public static Hl7TerminologyEnum fromCode(String s) {
+        return BY_CODE.get(s);
+    }
+
+    /**
+     * @return the system
+     */
+    public String getSystem() {
+        return UriEnum.HL7_TERMINOLOGY.getUri() + this.table;
+    }
+
+    /**
+     * @return the code
+     */
+    public String getCode() {
+        return code;
     }
 
 }
@@ -2,6 +2,9 @@ package fhirspark.definitions;
 
 import org.hl7.fhir.r4.model.Coding;
 
+import java.util.HashMap;
+import java.util.Map;
+
 public enum LoincEnum {
     GENOMIC_ALT_ALLELE("69551-0", "Genomic alt allele [ID]"),
     GENOMIC_REF_ALLELE("69547-8", "Genomic ref allele [ID]"),
@@ -25,25 +28,44 @@ public enum LoincEnum {
     MEDICATION_ASSESSED("51963-7", "Medication assessed [ID]"),
     EXACT_START_END("exact-start-end", "Variant exact start and end");
 
+    private static final Map<String, LoincEnum> BY_CODE = new HashMap<>();
+
+    static {
+        for (LoincEnum e : values()) {
+            BY_CODE.put(e.code, e);
+        }
+    }
+
     private final String code;
     private final String display;
+    private final Coding coding;
 
     LoincEnum(String code, String display) {
         this.code = code;
         this.display = display;
+        this.coding = new Coding(UriEnum.LOINC_URI.getUri(), code, display);
     }
 
     public Coding toCoding() {
-        return new Coding(UriEnum.LOINC_URI.getUri(), this.code, this.display);
+        return this.coding.copy();
     }
 
     public static LoincEnum fromCode(String s) {
-        for (LoincEnum e : LoincEnum.values()) {
-            if (e.code.equals(s)) {
-                return e;
-            }
-        }
-        return null;
+        return BY_CODE.get(s);
+    }
+
+    /**
+     * @return the system
+     */
+    public String getSystem() {
+        return UriEnum.LOINC_URI.getUri();
+    }
+
+    /**
+     * @return the code
+     */
+    public String getCode() {
+        return code;
     }
 
 }
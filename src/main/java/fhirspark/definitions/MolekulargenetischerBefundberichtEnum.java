@@ -2,6 +2,9 @@ package fhirspark.definitions;
 
 import org.hl7.fhir.r4.model.Coding;
 
+import java.util.HashMap;
+import java.util.Map;
+
 public enum MolekulargenetischerBefundberichtEnum {
     THERAPEUTIC_IMPLICATION(
             "https://www.medizininformatik-initiative.de/fhir/ext/modul-molgen/StructureDefinition/therapeutische-implikation",
@@ -15,27 +18,32 @@ public enum MolekulargenetischerBefundberichtEnum {
             "https://www.medizininformatik-initiative.de/fhir/ext/modul-molgen/StructureDefinition/empfohlene-folgemassnahme",
             null, null);
 
+    private static final Map<String, MolekulargenetischerBefundberichtEnum> BY_SYSTEM = new HashMap<>();
+
+    static {
+        for (MolekulargenetischerBefundberichtEnum e : values()) {
+            BY_SYSTEM.putIfAbsent(e.system, e);
+        }
+    }
+
     private final String system;
     private final String code;
     private final String display;
+    private final Coding coding;
 
     MolekulargenetischerBefundberichtEnum(String system, String code, String display) {
         this.system = system;
         this.code = code;
         this.display = display;
+        this.coding = new Coding(system, code, display);
     }
 
     public Coding toCoding() {
-        return new Coding(this.system, this.code, this.display);
+        return this.coding.copy();
     }
 
     public static MolekulargenetischerBefundberichtEnum fromSystem(String s) {
-        for (MolekulargenetischerBefundberichtEnum e : MolekulargenetischerBefundberichtEnum.values()) {
-            if (e.system.equals(s)) {
-                return e;
-            }
-        }
-        return null;
+        return BY_SYSTEM.get(s);
     }
 
     /**
@@ -45,4 +53,11 @@ public enum MolekulargenetischerBefundberichtEnum {
         return system;
     }
 
+    /**
+     * @return the code
+     */
+    public String getCode() {
+        return code;
+    }
+
 }
@@ -2,6 +2,9 @@ package fhirspark.definitions;
 
 import org.hl7.fhir.r4.model.Coding;
 
+import java.util.HashMap;
+import java.util.Map;
+
 public enum ResponseEnum {
     CR("LA28366-5", "Complete response"),
     PR("LA28369-9", "Partial response"),
@@ -9,16 +12,44 @@ public enum ResponseEnum {
     PD("LA28370-7", "Progressive disease"),
     NA("LA9348-9", "Not assessed");
 
+    private static final Map<String, ResponseEnum> BY_CODE = new HashMap<>();
+
+    static {
+        for (ResponseEnum e : values()) {
+            BY_CODE.put(e.code, e);
+        }
+    }
+
     private final String code;
     private final String display;
+    private final Coding coding;
 
     ResponseEnum(String code, String display) {
         this.code = code;
         this.display = display;
+        this.coding = new Coding(UriEnum.LOINC_URI.getUri() + "/88040-1", code, display);
     }
 
     public Coding toCoding() {
-        return new Coding(UriEnum.LOINC_URI.getUri() + "/88040-1", this.code, this.display);
+        return this.coding.copy();
+    }
+
+    public static ResponseEnum fromCode(String s) {
+        return BY_CODE.get(s);
+    }
+
+    /**
+     * @return the system
+     */
+    public String getSystem() {
+        return coding.getSystem();
+    }
+
+    /**
+     * @return the code
+     */
+    public String getCode() {
+        return code;
     }
 
 }
@@ -2,29 +2,51 @@ package fhirspark.definitions;
 
 import org.hl7.fhir.r4.model.Coding;
 
+import java.util.HashMap;
+import java.util.Map;
+
 public enum SnomedEnum {
     PATIENT_ELIGIBLE_FOR_CLINICAL_TRIAL("399223003", "Patient eligible for clinical trial"),
     SIDE_EFFECT("395009001", "Medication stopped - side effect");
 
+    private static final Map<String, SnomedEnum> BY_CODE = new HashMap<>();
+
+    static {
+        for (SnomedEnum e : values()) {
+            BY_CODE.put(e.code, e);
+        }
+    }
+
     private final String code;
     private final String display;
+    private final Coding coding;
 
     SnomedEnum(String code, String display) {
         this.code = code;
         this.display = display;
+        this.coding = new Coding(UriEnum.SNOMED.getUri(), code, display);
     }
 
     public Coding toCoding() {
-        return new Coding(UriEnum.SNOMED.getUri(), this.code, this.display);
+        return this.coding.copy();
     }
 
     public static SnomedEnum fromCode(String s) {
-        for (SnomedEnum e : SnomedEnum.values()) {
-            if (e.code.equals(s)) {
-                return e;
-            }
-        }
-        return null;
+        return BY_CODE.get(s);
+    }
+
+    /**
+     * @return the system
+     */
+    public String getSystem() {
+        return UriEnum.SNOMED.getUri();
+    }
+
+    /**
+     * @return the code
+     */
+    public String getCode() {
+        return code;
     }
 
 }
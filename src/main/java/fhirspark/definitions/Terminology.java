@@ -0,0 +1,107 @@
+package fhirspark.definitions;
+
+import org.hl7.fhir.r4.model.Coding;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Registry over all concepts of the definition enums, to resolve codings read from FHIR resources. Enums that
+ * name a code system rather than a concept, like {@link UriEnum}, are resolved by the system of a coding.
+ */
+public final class Terminology {
+
+    private static final Map<String, Enum<?>> BY_SYSTEM_AND_CODE = new HashMap<>();
+    private static final Map<String, Enum<?>> BY_CODE = new HashMap<>();
+    private static final Map<String, Enum<?>> BY_TYPE_AND_CODE = new HashMap<>();
+    private static final Map<String, Enum<?>> BY_SYSTEM = new HashMap<>();
+
+    static {
+        for (LoincEnum e : LoincEnum.values()) {
+            register(e.getSystem(), e.getCode(), e);
+        }
+        for (SnomedEnum e : SnomedEnum.values()) {
+            register(e.getSystem(), e.getCode(), e);
+        }
+        for (ResponseEnum e : ResponseEnum.values()) {
+            register(e.getSystem(), e.getCode(), e);
+        }
+        for (Hl7TerminologyEnum e : Hl7TerminologyEnum.values()) {
+            register(e.getSystem(), e.getCode(), e);
+        }
+        for (GenomicsReportingEnum e : GenomicsReportingEnum.values()) {
+            register(e.getSystem(), e.getCode(), e);
+        }
+        for (MolekulargenetischerBefundberichtEnum e : MolekulargenetischerBefundberichtEnum.values()) {
+            register(e.getSystem(), e.getCode(), e);
+        }
+        for (UriEnum e : UriEnum.values()) {
+            register(e.getUri(), null, e);
+        }
+    }
+
+    private Terminology() {
+    }
+
+    private static void register(String system, String code, Enum<?> e) {
+        if (code == null) {
+            BY_SYSTEM.putIfAbsent(system, e);
+            return;
+        }
+        BY_SYSTEM_AND_CODE.putIfAbsent(key(system, code), e);
+        BY_CODE.putIfAbsent(code, e);
+        BY_TYPE_AND_CODE.putIfAbsent(key(e.getDeclaringClass().getName(), code), e);
+    }
+
+    private static String key(String system, String code) {
+        return system + "|" + code;
+    }
+
+    /**
+     * @param system system of the concept
+     * @param code   code of the concept
+     * @return the matching enum constant or null
+     */
+    public static Enum<?> fromSystemAndCode(String system, String code) {
+        return BY_SYSTEM_AND_CODE.get(key(system, code));
+    }
+
+    /**
+     * @param code code of the concept, regardless of its system
+     * @return the first registered enum constant with this code or null
+     */
+    public static Enum<?> fromCode(String code) {
+        return BY_CODE.get(code);
+    }
+
+    /**
+     * Resolves a coding by system and code, falling back to the code alone for codings written without a
+     * system.
+     * @param coding coding of a FHIR resource
+     * @return the matching enum constant or null
+     */
+    public static Enum<?> fromCoding(Coding coding) {
+        Enum<?> e = fromSystemAndCode(coding.getSystem(), coding.getCode());
+        return e != null ? e : fromCode(coding.getCode());
+    }
+
+    /**
+     * Resolves a coding to a constant of one definition enum: by system and code, by the code among the
+     * constants of the enum, or, for enums of code systems, by the system.
+     * @param <E>    type of the definition enum
+     * @param coding coding of a FHIR resource
+     * @param type   definition enum the coding is expected from
+     * @return the matching enum constant or null
+     */
+    public static <E extends Enum<E>> E fromCoding(Coding coding, Class<E> type) {
+        Enum<?> e = fromSystemAndCode(coding.getSystem(), coding.getCode());
+        if (!type.isInstance(e)) {
+            e = BY_TYPE_AND_CODE.get(key(type.getName(), coding.getCode()));
+        }
+        if (e == null) {
+            e = BY_SYSTEM.get(coding.getSystem());
+        }
+        return type.isInstance(e) ? type.cast(e) : null;
+    }
+
+}
@@ -1,5 +1,8 @@
 package fhirspark.definitions;
 
+import java.util.HashMap;
+import java.util.Map;
+
 public enum UriEnum {
     LOINC_URI("http://loinc.org"),
     PUBMED_URI("https://www.ncbi.nlm.nih.gov/pubmed/"),
@@ -15,6 +18,14 @@ public enum UriEnum {
     CLINICALTRIALS("http://clinicaltrials.gov/"),
     SNOMED("http://snomed.info/sct");
 
+    private static final Map<String, UriEnum> BY_URI = new HashMap<>();
+
+    static {
+        for (UriEnum e : values()) {
+            BY_URI.put(e.uri, e);
+        }
+    }
+
     private final String uri;
 
     UriEnum(String uri) {
@@ -22,12 +33,7 @@ public enum UriEnum {
     }
 
     public static UriEnum fromUri(String s) {
-        for (UriEnum e : UriEnum.values()) {
-            if (e.uri.equals(s)) {
-                return e;
-            }
-        }
-        return null;
+        return BY_URI.get(s);
     }
 
     /**
@@ -0,0 +1,248 @@
+package fhirspark.resolver;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Compact, read-only index of OncoKB drugs. Name, NCIt code and uuid of every drug are kept in a shared string
+ * pool. Drugs are found by name through open-addressing tables over the exact names and over the normalized
+ * names and synonyms, and by NCIt code through a reverse table. The buffers are either heap arrays or views of a
+ * memory-mapped snapshot.
+ */
+public final class DrugIndex {
+
+    static final int MAGIC = 0x4f4e434b;
+
+    private static final int FIELDS = 3;
+    private static final int NAME = 0;
+    private static final int NCIT_CODE = 1;
+    private static final int UUID = 2;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final StringPool fields;
+    private final KeyTable names;
+    private final KeyTable codes;
+
+    private DrugIndex(StringPool fields, KeyTable names, KeyTable codes) {
+        this.fields = fields;
+        this.names = names;
+        this.codes = codes;
+    }
+
+    /**
+     * Folds a drug name or synonym to its lookup form: lower case letters and digits only, so that e.g.
+     * "AZD-9496", "AZD 9496" and "azd9496" share one key.
+     * @param name drug name or synonym.
+     * @return normalized key.
+     */
+    public static String normalize(String name) {
+        StringBuilder sb = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                sb.append(c);
+            }
+        }
+        return sb.toString().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * @return number of drugs in the index.
+     */
+    public int size() {
+        return fields.size() / FIELDS;
+    }
+
+    /**
+     * Looks up a drug by its exact OncoKB name first and by the normalized form of names and synonyms second.
+     * @param name name or synonym of a drug.
+     * @return position of the drug in the index or -1 if the name is unknown.
+     */
+    public int find(String name) {
+        int entry = names.find(name);
+        if (entry < 0) {
+            String key = normalize(name);
+            if (!key.isEmpty() && !key.equals(name)) {
+                entry = names.find(key);
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * @param ncitCode NCIt code of a drug.
+     * @return position of the drug in the index or -1 if the code is unknown.
+     */
+    public int findNcitCode(String ncitCode) {
+        return codes.find(ncitCode);
+    }
+
+    public String name(int entry) {
+        return field(entry, NAME);
+    }
+
+    public String ncitCode(int entry) {
+        return field(entry, NCIT_CODE);
+    }
+
+    public String uuid(int entry) {
+        return field(entry, UUID);
+    }
+
+    private String field(int entry, int field) {
+        String value = fields.get(entry * FIELDS + field);
+        return value.isEmpty() ? null : value;
+    }
+
+    ByteBuffer toSnapshot() {
+        ByteBuffer out = ByteBuffer.allocate(fields.byteSize() + names.byteSize() + codes.byteSize());
+        fields.writeTo(out);
+        names.writeTo(out);
+        codes.writeTo(out);
+        return out.flip();
+    }
+
+    static DrugIndex fromSnapshot(ByteBuffer in) {
+        StringPool fields = StringPool.read(in);
+        KeyTable names = KeyTable.read(in);
+        return new DrugIndex(fields, names, KeyTable.read(in));
+    }
+
+    /**
+     * Open-addressing table from string keys to drug positions.
+     */
+    private static final class KeyTable {
+
+        private final StringPool keys;
+        private final IntBuffer entries;
+        private final IntBuffer slots;
+        private final int mask;
+
+        private KeyTable(StringPool keys, IntBuffer entries, IntBuffer slots) {
+            this.keys = keys;
+            this.entries = entries;
+            this.slots = slots;
+            this.mask = slots.limit() - 1;
+        }
+
+        int find(String key) {
+            byte[] encoded = key.getBytes(StandardCharsets.UTF_8);
+            int slot = StringPool.hash(encoded) & mask;
+            while (slots.get(slot) != 0) {
+                int k = slots.get(slot) - 1;
+                if (keys.matches(k, encoded)) {
+                    return entries.get(k);
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+
+        int byteSize() {
+            return keys.byteSize() + SnapshotFile.intsSize(entries) + SnapshotFile.intsSize(slots);
+        }
+
+        void writeTo(ByteBuffer out) {
+            keys.writeTo(out);
+            SnapshotFile.putInts(out, entries);
+            SnapshotFile.putInts(out, slots);
+        }
+
+        static KeyTable read(ByteBuffer in) {
+            StringPool keys = StringPool.read(in);
+            IntBuffer entries = SnapshotFile.getInts(in);
+            return new KeyTable(keys, entries, SnapshotFile.getInts(in));
+        }
+
+        /**
+         * Collects keys before the table is built. A key that was already added keeps its first drug.
+         */
+        static final class Builder {
+
+            private final StringPool.Builder keys = new StringPool.Builder();
+            private int[] entries = new int[INITIAL_CAPACITY];
+
+            void add(String key, int entry) {
+                int k = keys.add(key);
+                if (k == entries.length) {
+                    entries = Arrays.copyOf(entries, entries.length * 2);
+                }
+                entries[k] = entry;
+            }
+
+            KeyTable build() {
+                StringPool pool = keys.build();
+                int size = keys.size();
+                int capacity = StringPool.tableCapacity(size);
+                int tableMask = capacity - 1;
+                int[] slots = new int[capacity];
+                for (int k = 0; k < size; k++) {
+                    int slot = pool.hash(k) & tableMask;
+                    while (slots[slot] != 0 && !pool.matches(slots[slot] - 1, pool, k)) {
+                        slot = (slot + 1) & tableMask;
+                    }
+                    if (slots[slot] == 0) {
+                        slots[slot] = k + 1;
+                    }
+                }
+                return new KeyTable(pool, IntBuffer.wrap(Arrays.copyOf(entries, size)), IntBuffer.wrap(slots));
+            }
+        }
+    }
+
+    /**
+     * Collects drugs before the tables are built.
+     */
+    public static final class Builder {
+
+        private int drugs;
+        private final StringPool.Builder fields = new StringPool.Builder();
+        private final KeyTable.Builder names = new KeyTable.Builder();
+        private final KeyTable.Builder codes = new KeyTable.Builder();
+        private final List<Map.Entry<String, Integer>> normalizedNames = new ArrayList<>();
+        private final List<Map.Entry<String, Integer>> synonyms = new ArrayList<>();
+
+        /**
+         * Adds a drug. If several drugs share a name, synonym or code, the first one wins, and names always win
+         * over synonyms.
+         * @param name     name of the drug.
+         * @param ncitCode NCIt code, may be null.
+         * @param uuid     OncoKB uuid, may be null.
+         * @param aliases  synonyms of the drug, may be null.
+         * @return this builder.
+         */
+        public Builder add(String name, String ncitCode, String uuid, Iterable<String> aliases) {
+            int entry = drugs++;
+            fields.add(name);
+            fields.add(ncitCode != null ? ncitCode : "");
+            fields.add(uuid != null ? uuid : "");
+            names.add(name, entry);
+            normalizedNames.add(Map.entry(normalize(name), entry));
+            if (ncitCode != null) {
+                codes.add(ncitCode, entry);
+            }
+            if (aliases != null) {
+                for (String alias : aliases) {
+                    String key = alias != null ? normalize(alias) : "";
+                    if (!key.isEmpty()) {
+                        synonyms.add(Map.entry(key, entry));
+                    }
+                }
+            }
+            return this;
+        }
+
+        public DrugIndex build() {
+            normalizedNames.forEach(e -> names.add(e.getKey(), e.getValue()));
+            synonyms.forEach(e -> names.add(e.getKey(), e.getValue()));
+            return new DrugIndex(fields.build(), names.build(), codes.build());
+        }
+    }
+
+}
@@ -0,0 +1,187 @@
+package fhirspark.resolver;
+
+import fhirspark.resolver.model.Genenames;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Compact, read-only index of HGNC gene names. Entries are stored column-wise in primitive buffers with all
+ * symbols sharing one byte pool, and are found through open-addressing tables keyed by NCBI gene id and by
+ * approved symbol. The buffers are either heap arrays or views of a memory-mapped snapshot. Genes that are looked
+ * up as {@link Genenames} are decoded once and kept, so only the genes actually in use are held as objects.
+ */
+public final class GeneIndex {
+
+    static final int MAGIC = 0x48474e43;
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final IntBuffer entrezIds;
+    private final IntBuffer hgncIds;
+    private final StringPool symbols;
+    private final IntBuffer byEntrez;
+    private final IntBuffer bySymbol;
+    private final int mask;
+    private final AtomicReferenceArray<Genenames> decoded;
+
+    private GeneIndex(IntBuffer entrezIds, IntBuffer hgncIds, StringPool symbols, IntBuffer byEntrez,
+            IntBuffer bySymbol) {
+        this.entrezIds = entrezIds;
+        this.hgncIds = hgncIds;
+        this.symbols = symbols;
+        this.byEntrez = byEntrez;
+        this.bySymbol = bySymbol;
+        this.mask = byEntrez.limit() - 1;
+        this.decoded = new AtomicReferenceArray<>(entrezIds.limit());
+    }
+
+    /**
+     * @return number of genes in the index.
+     */
+    public int size() {
+        return entrezIds.limit();
+    }
+
+    /**
+     * @param entrezId NCBI gene id.
+     * @return position of the gene in the index or -1 if it is unknown.
+     */
+    public int find(int entrezId) {
+        int slot = StringPool.mix(entrezId) & mask;
+        while (byEntrez.get(slot) != 0) {
+            int entry = byEntrez.get(slot) - 1;
+            if (entrezIds.get(entry) == entrezId) {
+                return entry;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * @param symbol approved HGNC symbol.
+     * @return position of the gene in the index or -1 if it is unknown.
+     */
+    public int findSymbol(String symbol) {
+        byte[] key = symbol.getBytes(StandardCharsets.UTF_8);
+        int slot = StringPool.hash(key) & mask;
+        while (bySymbol.get(slot) != 0) {
+            int entry = bySymbol.get(slot) - 1;
+            if (symbols.matches(entry, key)) {
+                return entry;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    public int entrezId(int entry) {
+        return entrezIds.get(entry);
+    }
+
+    /**
+     * @param entry position of the gene.
+     * @return HGNC id in the form HGNC:1234.
+     */
+    public String hgncId(int entry) {
+        return "HGNC:" + hgncIds.get(entry);
+    }
+
+    public String symbol(int entry) {
+        return symbols.get(entry);
+    }
+
+    /**
+     * @param entry position of the gene.
+     * @return the gene, decoded on the first lookup and shared by all later ones, so it must not be modified.
+     */
+    public Genenames genenames(int entry) {
+        Genenames g = decoded.get(entry);
+        if (g == null) {
+            g = new Genenames();
+            g.setNcbiGeneId(entrezId(entry));
+            g.setHgncId(hgncId(entry));
+            g.setApprovedSymbol(symbol(entry));
+            decoded.set(entry, g);
+        }
+        return g;
+    }
+
+    ByteBuffer toSnapshot() {
+        ByteBuffer out = ByteBuffer.allocate(SnapshotFile.intsSize(entrezIds) + SnapshotFile.intsSize(hgncIds)
+                + symbols.byteSize() + SnapshotFile.intsSize(byEntrez) + SnapshotFile.intsSize(bySymbol));
+        SnapshotFile.putInts(out, entrezIds);
+        SnapshotFile.putInts(out, hgncIds);
+        symbols.writeTo(out);
+        SnapshotFile.putInts(out, byEntrez);
+        SnapshotFile.putInts(out, bySymbol);
+        return out.flip();
+    }
+
+    static GeneIndex fromSnapshot(ByteBuffer in) {
+        IntBuffer entrezIds = SnapshotFile.getInts(in);
+        IntBuffer hgncIds = SnapshotFile.getInts(in);
+        StringPool symbols = StringPool.read(in);
+        IntBuffer byEntrez = SnapshotFile.getInts(in);
+        return new GeneIndex(entrezIds, hgncIds, symbols, byEntrez, SnapshotFile.getInts(in));
+    }
+
+    /**
+     * Collects genes before the lookup tables are built.
+     */
+    public static final class Builder {
+
+        private int size;
+        private int[] entrezIds = new int[INITIAL_CAPACITY];
+        private int[] hgncIds = new int[INITIAL_CAPACITY];
+        private final StringPool.Builder symbols = new StringPool.Builder();
+
+        /**
+         * Adds a gene. Later entries replace earlier ones with the same NCBI gene id.
+         * @param entrezId NCBI gene id.
+         * @param hgncId   numeric part of the HGNC id.
+         * @param symbol   approved symbol.
+         * @return this builder.
+         */
+        public Builder add(int entrezId, int hgncId, String symbol) {
+            if (size == entrezIds.length) {
+                entrezIds = Arrays.copyOf(entrezIds, size * 2);
+                hgncIds = Arrays.copyOf(hgncIds, size * 2);
+            }
+            entrezIds[size] = entrezId;
+            hgncIds[size] = hgncId;
+            symbols.add(symbol);
+            size++;
+            return this;
+        }
+
+        public GeneIndex build() {
+            StringPool pool = symbols.build();
+            int capacity = StringPool.tableCapacity(size);
+            int tableMask = capacity - 1;
+            int[] byEntrez = new int[capacity];
+            int[] bySymbol = new int[capacity];
+            for (int i = 0; i < size; i++) {
+                int slot = StringPool.mix(entrezIds[i]) & tableMask;
+                while (byEntrez[slot] != 0 && entrezIds[byEntrez[slot] - 1] != entrezIds[i]) {
+                    slot = (slot + 1) & tableMask;
+                }
+                byEntrez[slot] = i + 1;
+
+                slot = pool.hash(i) & tableMask;
+                while (bySymbol[slot] != 0 && !pool.matches(bySymbol[slot] - 1, pool, i)) {
+                    slot = (slot + 1) & tableMask;
+                }
+                bySymbol[slot] = i + 1;
+            }
+            return new GeneIndex(IntBuffer.wrap(Arrays.copyOf(entrezIds, size)),
+                    IntBuffer.wrap(Arrays.copyOf(hgncIds, size)), pool, IntBuffer.wrap(byEntrez),
+                    IntBuffer.wrap(bySymbol));
+        }
+    }
+
+}
@@ -1,21 +1,24 @@
 package fhirspark.resolver;
 
-import com.fasterxml.jackson.dataformat.csv.CsvMapper;
-import com.fasterxml.jackson.dataformat.csv.CsvSchema;
 import fhirspark.resolver.model.Genenames;
 
-import java.io.FileInputStream;
+import java.io.BufferedReader;
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.Map;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * Cache for available Genenames from HGNC (offline).
  */
 public final class HgncGeneName {
 
-    private static final Map<Integer, Genenames> HGNC_MAP = new HashMap<>();
+    private static final String HGNC_PREFIX = "HGNC:";
+
+    private static volatile GeneIndex index = new GeneIndex.Builder().build();
 
     private HgncGeneName() {
     }
@@ -23,24 +26,114 @@ public final class HgncGeneName {
     /**
      * Initalizes cache for Genenames.
      * @param dbPath Path of the database.
+     * @throws IOException if the database cannot be read.
      */
-    public static void initialize(String dbPath) {
+    public static void initialize(String dbPath) throws IOException {
+        open(dbPath, false);
+    }
+
+    /**
+     * Loads a changed database while lookups continue. If it cannot be read, the current index stays in place.
+     * @param dbPath Path of the database.
+     */
+    public static void reload(String dbPath) {
         try {
-            Iterator<Genenames> iterator = new CsvMapper().readerFor(Genenames.class)
-                    .with(CsvSchema.emptySchema().withHeader().withColumnSeparator('\t'))
-                    .readValues(new FileInputStream(dbPath));
-            while (iterator.hasNext()) {
-                Genenames g = iterator.next();
-                HGNC_MAP.put(g.getNcbiGeneId(), g);
-            }
+            open(dbPath, false);
         } catch (IOException e) {
-            // TODO Auto-generated catch block
-            e.printStackTrace();
+            System.out.println("WARNING: Could not load the HGNC database, keeping the previous one: "
+                    + e.getMessage());
         }
     }
 
+    /**
+     * Compiles the binary snapshot of the database, regardless of an existing one.
+     * @param dbPath Path of the database.
+     * @throws IOException if the database cannot be read.
+     */
+    public static void buildSnapshot(String dbPath) throws IOException {
+        open(dbPath, true);
+    }
+
+    /**
+     * Builds the index and publishes it in one write, so concurrent lookups see either the old or the new index.
+     */
+    private static void open(String dbPath, boolean rebuild) throws IOException {
+        index = SnapshotFile.open(Paths.get(dbPath), GeneIndex.MAGIC, rebuild, GeneIndex::fromSnapshot,
+                HgncGeneName::load, GeneIndex::toSnapshot);
+    }
+
+    /**
+     * Reads the tab separated HGNC download. Genes without NCBI gene id and rows with an id that is not a number
+     * are skipped.
+     * @param dbPath Path of the database.
+     * @return index over all genes of the file.
+     * @throws IOException if the file could not be read or misses one of the required columns.
+     */
+    static GeneIndex load(Path dbPath) throws IOException {
+        GeneIndex.Builder builder = new GeneIndex.Builder();
+        try (BufferedReader reader = Files.newBufferedReader(dbPath, StandardCharsets.UTF_8)) {
+            String header = reader.readLine();
+            if (header == null) {
+                return builder.build();
+            }
+            List<String> columns = Arrays.asList(header.split("\t", -1));
+            int hgncColumn = column(dbPath, columns, "HGNC ID");
+            int symbolColumn = column(dbPath, columns, "Approved symbol");
+            int ncbiColumn = column(dbPath, columns, "NCBI Gene ID");
+            int width = Math.max(ncbiColumn, Math.max(hgncColumn, symbolColumn));
+            int skipped = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] row = line.split("\t", -1);
+                if (row.length <= ncbiColumn || row[ncbiColumn].isEmpty()) {
+                    continue;
+                }
+                if (row.length <= width) {
+                    skipped++;
+                    continue;
+                }
+                String hgncId = row[hgncColumn];
+                try {
+                    builder.add(Integer.parseInt(row[ncbiColumn].trim()),
+                            Integer.parseInt(hgncId.startsWith(HGNC_PREFIX) ? hgncId.substring(HGNC_PREFIX.length())
+                                    : hgncId),
+                            row[symbolColumn]);
+                } catch (NumberFormatException e) {
+                    skipped++;
+                }
+            }
+            if (skipped > 0) {
+                System.out.println("WARNING: Skipped " + skipped + " malformed rows of " + dbPath);
+            }
+        }
+        return builder.build();
+    }
+
+    private static int column(Path dbPath, List<String> columns, String name) throws IOException {
+        int column = columns.indexOf(name);
+        if (column < 0) {
+            throw new IOException(dbPath + " has no column '" + name + "'");
+        }
+        return column;
+    }
+
     public static Genenames resolve(int ncbiGeneId) {
-        return HGNC_MAP.get(ncbiGeneId);
+        GeneIndex current = index;
+        int entry = current.find(ncbiGeneId);
+        return entry < 0 ? null : current.genenames(entry);
+    }
+
+    /**
+     * @param hugoSymbol approved HGNC symbol.
+     * @return NCBI gene id of the symbol or null if it is unknown.
+     */
+    public static Integer resolveEntrezGeneId(String hugoSymbol) {
+        if (hugoSymbol == null) {
+            return null;
+        }
+        GeneIndex current = index;
+        int entry = current.findSymbol(hugoSymbol);
+        return entry < 0 ? null : current.entrezId(entry);
     }
 
 }
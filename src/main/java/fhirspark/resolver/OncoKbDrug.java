@@ -4,18 +4,20 @@ import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import fhirspark.resolver.model.Drug;
 
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.util.HashMap;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.List;
-import java.util.Map;
+import java.util.Optional;
 
 /**
  * Cache for available Drugs from OncoKB (offline).
  */
 public final class OncoKbDrug {
 
-    private static final Map<String, Drug> DRUG_MAP = new HashMap<>();
+    private static volatile DrugIndex index = new DrugIndex.Builder().build();
 
     private OncoKbDrug() {
     }
@@ -23,26 +25,85 @@ public final class OncoKbDrug {
     /**
      * Initalizes cache for Drugs.
      * @param dbPath Path of the database.
+     * @throws IOException if the database cannot be read.
      */
-    public static void initalize(String dbPath) {
+    public static void initalize(String dbPath) throws IOException {
+        open(dbPath, false);
+    }
+
+    /**
+     * Loads a changed database while lookups continue. If it cannot be read, the current index stays in place.
+     * @param dbPath Path of the database.
+     */
+    public static void reload(String dbPath) {
         try {
+            open(dbPath, false);
+        } catch (IOException e) {
+            System.out.println("WARNING: Could not load the OncoKB database, keeping the previous one: "
+                    + e.getMessage());
+        }
+    }
+
+    /**
+     * Compiles the binary snapshot of the database, regardless of an existing one.
+     * @param dbPath Path of the database.
+     * @throws IOException if the database cannot be read.
+     */
+    public static void buildSnapshot(String dbPath) throws IOException {
+        open(dbPath, true);
+    }
+
+    /**
+     * Builds the index and publishes it in one write, so concurrent lookups see either the old or the new index.
+     */
+    private static void open(String dbPath, boolean rebuild) throws IOException {
+        index = SnapshotFile.open(Paths.get(dbPath), DrugIndex.MAGIC, rebuild, DrugIndex::fromSnapshot,
+                OncoKbDrug::load, DrugIndex::toSnapshot);
+    }
+
+    static DrugIndex load(Path dbPath) throws IOException {
+        DrugIndex.Builder builder = new DrugIndex.Builder();
+        try (InputStream in = Files.newInputStream(dbPath)) {
             List<Drug> drugs = new ObjectMapper().readerFor(new TypeReference<List<Drug>>() {
-            }).readValue(new FileInputStream(dbPath));
+            }).readValue(in);
             for (Drug d : drugs) {
-                DRUG_MAP.put(d.getDrugName(), d);
+                if (d.getDrugName() != null) {
+                    builder.add(d.getDrugName(), d.getNcitCode(), d.getUuid(), d.getSynonyms());
+                }
             }
-        } catch (IOException e) {
-            // TODO Auto-generated catch block
-            e.printStackTrace();
         }
+        return builder.build();
     }
 
     /**
      *
-     * @param name drug that shall be resolved.
-     * @return Drug entry from OncoKB.
+     * @param name drug that shall be resolved, either by its OncoKB name or by a synonym. Case, whitespace and
+     *             punctuation are ignored.
+     * @return Drug entry from OncoKB, empty if the name is unknown.
      */
-    public static Drug resolve(String name) {
-        return DRUG_MAP.getOrDefault(name, new Drug());
+    public static Optional<Drug> resolve(String name) {
+        DrugIndex current = index;
+        return toDrug(current, name != null ? current.find(name) : -1);
+    }
+
+    /**
+     *
+     * @param ncitCode NCIt code of the drug that shall be resolved.
+     * @return Drug entry from OncoKB, empty if the code is unknown.
+     */
+    public static Optional<Drug> resolveByNcitCode(String ncitCode) {
+        DrugIndex current = index;
+        return toDrug(current, ncitCode != null ? current.findNcitCode(ncitCode) : -1);
+    }
+
+    private static Optional<Drug> toDrug(DrugIndex current, int entry) {
+        if (entry < 0) {
+            return Optional.empty();
+        }
+        Drug d = new Drug();
+        d.setDrugName(current.name(entry));
+        d.setNcitCode(current.ncitCode(entry));
+        d.setUuid(current.uuid(entry));
+        return Optional.of(d);
     }
 }
@@ -0,0 +1,125 @@
+package fhirspark.resolver;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reloads the HGNC and OncoKB reference data when their files change on disk. The new index is built on a
+ * background thread and swapped in afterwards, so requests keep being served from the previous index meanwhile.
+ */
+public final class ReferenceDataWatcher {
+
+    private static final long QUIET_PERIOD = 2000;
+
+    private ReferenceDataWatcher() {
+    }
+
+    /**
+     * Starts watching the reference data files.
+     * @param hgncPath   Path of the HGNC database.
+     * @param oncokbPath Path of the OncoKB database.
+     */
+    public static void start(String hgncPath, String oncokbPath) {
+        Map<Path, Runnable> reloads = new HashMap<>();
+        reloads.put(Paths.get(hgncPath).toAbsolutePath(), () -> HgncGeneName.reload(hgncPath));
+        reloads.put(Paths.get(oncokbPath).toAbsolutePath(), () -> OncoKbDrug.reload(oncokbPath));
+        start(reloads, QUIET_PERIOD);
+    }
+
+    /**
+     * Starts watching files.
+     * @param reloads     absolute paths of the watched files and the action that reloads each of them.
+     * @param quietPeriod milliseconds without further changes before a file is reloaded.
+     * @return the watch service, closing it ends the watcher, or null if the files cannot be watched.
+     */
+    static WatchService start(Map<Path, Runnable> reloads, long quietPeriod) {
+        try {
+            WatchService watchService = FileSystems.getDefault().newWatchService();
+            for (Path file : reloads.keySet()) {
+                file.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY);
+            }
+            startThread(watchService, reloads, quietPeriod, new LinkedHashSet<>());
+            return watchService;
+        } catch (IOException e) {
+            System.out.println("WARNING: Reference data will not be reloaded on change: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Starts a watcher thread. Whatever a reload throws ends the thread, the reloaded file keeps its previous data
+     * and a new thread takes over the same watch service and the files that are still pending.
+     */
+    private static void startThread(WatchService watchService, Map<Path, Runnable> reloads, long quietPeriod,
+            Set<Path> pending) {
+        Thread thread = new Thread(() -> watch(watchService, reloads, quietPeriod, pending),
+                "reference-data-watcher");
+        thread.setDaemon(true);
+        thread.setUncaughtExceptionHandler((failed, e) -> {
+            System.out.println("WARNING: Could not reload reference data, keeping the previous data: " + e);
+            startThread(watchService, reloads, quietPeriod, pending);
+        });
+        thread.start();
+    }
+
+    /**
+     * Collects changed files until none of them was touched for the quiet period, so that a file that is still
+     * being downloaded is not picked up half-written. A file leaves the pending set before it is reloaded, so a
+     * reload that fails is not repeated until the file changes again.
+     */
+    private static void watch(WatchService watchService, Map<Path, Runnable> reloads, long quietPeriod,
+            Set<Path> pending) {
+        long lastChange = 0;
+        try {
+            while (true) {
+                WatchKey key;
+                if (pending.isEmpty()) {
+                    key = watchService.take();
+                } else {
+                    long wait = lastChange + quietPeriod - System.currentTimeMillis();
+                    key = wait > 0 ? watchService.poll(wait, TimeUnit.MILLISECONDS) : null;
+                }
+                if (key == null) {
+                    Iterator<Path> files = pending.iterator();
+                    while (files.hasNext()) {
+                        Path file = files.next();
+                        files.remove();
+                        System.out.println("Reloading reference data from " + file);
+                        reloads.get(file).run();
+                    }
+                    continue;
+                }
+                Path dir = (Path) key.watchable();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        pending.addAll(reloads.keySet());
+                        lastChange = System.currentTimeMillis();
+                    } else if (reloads.containsKey(dir.resolve((Path) event.context()))) {
+                        pending.add(dir.resolve((Path) event.context()));
+                        lastChange = System.currentTimeMillis();
+                    }
+                }
+                key.reset();
+            }
+        } catch (ClosedWatchServiceException e) {
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
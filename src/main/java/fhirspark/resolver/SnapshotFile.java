@@ -0,0 +1,193 @@
+package fhirspark.resolver;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.function.Function;
+import java.util.zip.CRC32;
+
+/**
+ * Binary snapshot of a reference index next to its source file. The snapshot carries the checksum of the
+ * source it was compiled from and of its own payload, and is memory-mapped read-only, so indexes are queried in
+ * place and processes on the same host share the page cache. A snapshot that does not match is compiled again
+ * from the source.
+ */
+final class SnapshotFile {
+
+    static final String SUFFIX = ".idx";
+
+    private static final int VERSION = 3;
+    private static final int HEADER_SIZE = Integer.BYTES * 3 + Long.BYTES * 2;
+    private static final int ALIGNMENT = Integer.BYTES;
+    private static final String PERMISSIONS = "rw-r--r--";
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private SnapshotFile() {
+    }
+
+    /**
+     * Parses the source of an index.
+     * @param <T> type of the index.
+     */
+    interface SourceLoader<T> {
+        T load(Path source) throws IOException;
+    }
+
+    /**
+     * Opens the snapshot of the source, or compiles the source and stores a new snapshot if it is missing,
+     * stale or a rebuild is requested.
+     * @param <T>     type of the index.
+     * @param source  reference data file.
+     * @param magic   identifies the index type in the header.
+     * @param rebuild ignore an existing snapshot.
+     * @param reader  creates the index from the mapped payload.
+     * @param loader  creates the index from the source.
+     * @param writer  serializes the index into a payload.
+     * @return the index.
+     * @throws IOException if the source could not be read.
+     */
+    static <T> T open(Path source, int magic, boolean rebuild, Function<ByteBuffer, T> reader,
+            SourceLoader<T> loader, Function<T, ByteBuffer> writer) throws IOException {
+        Path snapshot = source.resolveSibling(source.getFileName() + SUFFIX);
+        long checksum = checksum(source);
+        if (!rebuild) {
+            ByteBuffer payload = map(snapshot, magic, checksum);
+            if (payload != null) {
+                try {
+                    return reader.apply(payload);
+                } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+                    System.out.println("WARNING: Snapshot " + snapshot + " is unreadable, compiling it again");
+                }
+            }
+        }
+        T index = loader.load(source);
+        try {
+            write(snapshot, magic, checksum, writer.apply(index));
+        } catch (IOException e) {
+            System.out.println("WARNING: Could not write snapshot " + snapshot + ": " + e.getMessage());
+        }
+        return index;
+    }
+
+    /**
+     * Reads the source instead of mapping it, a source that is truncated while it is read then ends the read
+     * instead of raising an InternalError.
+     */
+    static long checksum(Path source) throws IOException {
+        CRC32 crc = new CRC32();
+        ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE);
+        try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+            while (channel.read(buffer) >= 0) {
+                crc.update(buffer.flip());
+                buffer.clear();
+            }
+        }
+        return crc.getValue();
+    }
+
+    private static long checksum(ByteBuffer payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload.duplicate());
+        return crc.getValue();
+    }
+
+    private static ByteBuffer map(Path snapshot, int magic, long checksum) {
+        if (!Files.isRegularFile(snapshot)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE) {
+                return null;
+            }
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buffer.getInt() != magic || buffer.getInt() != VERSION || buffer.getLong() != checksum
+                    || buffer.getInt() != size - HEADER_SIZE) {
+                return null;
+            }
+            long payloadChecksum = buffer.getLong();
+            ByteBuffer payload = buffer.slice();
+            if (checksum(payload) != payloadChecksum) {
+                System.out.println("WARNING: Snapshot " + snapshot + " is corrupt, compiling it again");
+                return null;
+            }
+            return payload;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static void write(Path snapshot, int magic, long checksum, ByteBuffer payload) throws IOException {
+        Path dir = snapshot.toAbsolutePath().getParent();
+        Path tmp = Files.createTempFile(dir, snapshot.getFileName().toString(), ".tmp");
+        try {
+            try {
+                Files.setPosixFilePermissions(tmp, PosixFilePermissions.fromString(PERMISSIONS));
+            } catch (UnsupportedOperationException e) {
+                // not a POSIX file system, keep the defaults
+            }
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(magic).putInt(VERSION)
+                        .putLong(checksum).putInt(payload.remaining()).putLong(checksum(payload));
+                header.flip();
+                while (header.hasRemaining()) {
+                    channel.write(header);
+                }
+                while (payload.hasRemaining()) {
+                    channel.write(payload);
+                }
+                channel.force(true);
+            }
+            Files.move(tmp, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    static int intsSize(IntBuffer ints) {
+        return Integer.BYTES + ints.limit() * Integer.BYTES;
+    }
+
+    static void putInts(ByteBuffer out, IntBuffer ints) {
+        out.putInt(ints.limit());
+        for (int i = 0; i < ints.limit(); i++) {
+            out.putInt(ints.get(i));
+        }
+    }
+
+    static IntBuffer getInts(ByteBuffer in) {
+        int length = in.getInt() * Integer.BYTES;
+        IntBuffer ints = in.slice().limit(length).asIntBuffer();
+        in.position(in.position() + length);
+        return ints;
+    }
+
+    static int bytesSize(ByteBuffer bytes) {
+        return Integer.BYTES + align(bytes.limit());
+    }
+
+    static void putBytes(ByteBuffer out, ByteBuffer bytes) {
+        out.putInt(bytes.limit());
+        out.put(bytes.duplicate().position(0));
+        out.position(out.position() + align(bytes.limit()) - bytes.limit());
+    }
+
+    static ByteBuffer getBytes(ByteBuffer in) {
+        int length = in.getInt();
+        ByteBuffer bytes = in.slice().limit(length);
+        in.position(in.position() + align(length));
+        return bytes;
+    }
+
+    private static int align(int length) {
+        return (length + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+
+}
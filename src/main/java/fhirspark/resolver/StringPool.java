@@ -0,0 +1,142 @@
+package fhirspark.resolver;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Immutable list of strings stored as UTF-8 in one shared byte buffer.
+ */
+final class StringPool {
+
+    private static final int HASH_SEED = 0x9E3779B9;
+    private static final int HASH_BASE = 31;
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int AVERAGE_LENGTH = 8;
+
+    private final IntBuffer offsets;
+    private final ByteBuffer bytes;
+
+    private StringPool(IntBuffer offsets, ByteBuffer bytes) {
+        this.offsets = offsets;
+        this.bytes = bytes;
+    }
+
+    int size() {
+        return offsets.limit() - 1;
+    }
+
+    String get(int i) {
+        int from = offsets.get(i);
+        byte[] value = new byte[offsets.get(i + 1) - from];
+        bytes.get(from, value);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    boolean matches(int i, byte[] key) {
+        int from = offsets.get(i);
+        if (offsets.get(i + 1) - from != key.length) {
+            return false;
+        }
+        for (int k = 0; k < key.length; k++) {
+            if (bytes.get(from + k) != key[k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    boolean matches(int i, StringPool other, int j) {
+        int from = offsets.get(i);
+        int otherFrom = other.offsets.get(j);
+        int length = offsets.get(i + 1) - from;
+        if (other.offsets.get(j + 1) - otherFrom != length) {
+            return false;
+        }
+        for (int k = 0; k < length; k++) {
+            if (bytes.get(from + k) != other.bytes.get(otherFrom + k)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    int hash(int i) {
+        int h = 0;
+        for (int k = offsets.get(i); k < offsets.get(i + 1); k++) {
+            h = HASH_BASE * h + bytes.get(k);
+        }
+        return mix(h);
+    }
+
+    static int hash(byte[] key) {
+        int h = 0;
+        for (byte b : key) {
+            h = HASH_BASE * h + b;
+        }
+        return mix(h);
+    }
+
+    static int mix(int key) {
+        int h = key * HASH_SEED;
+        return h ^ (h >>> (Integer.SIZE / 2));
+    }
+
+    /**
+     * @param entries number of entries of an open-addressing table.
+     * @return power of two capacity that keeps the load factor at or below one half.
+     */
+    static int tableCapacity(int entries) {
+        return Integer.highestOneBit(Math.max(1, entries) * 2 - 1) << 1;
+    }
+
+    int byteSize() {
+        return SnapshotFile.intsSize(offsets) + SnapshotFile.bytesSize(bytes);
+    }
+
+    void writeTo(ByteBuffer out) {
+        SnapshotFile.putInts(out, offsets);
+        SnapshotFile.putBytes(out, bytes);
+    }
+
+    static StringPool read(ByteBuffer in) {
+        IntBuffer offsets = SnapshotFile.getInts(in);
+        return new StringPool(offsets, SnapshotFile.getBytes(in));
+    }
+
+    /**
+     * Collects strings before the pool is sealed.
+     */
+    static final class Builder {
+
+        private int size;
+        private int[] offsets = new int[INITIAL_CAPACITY + 1];
+        private byte[] pool = new byte[INITIAL_CAPACITY * AVERAGE_LENGTH];
+        private int poolSize;
+
+        int add(String value) {
+            if (size + 1 == offsets.length) {
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            }
+            byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+            if (poolSize + encoded.length > pool.length) {
+                pool = Arrays.copyOf(pool, Math.max(pool.length * 2, poolSize + encoded.length));
+            }
+            System.arraycopy(encoded, 0, pool, poolSize, encoded.length);
+            poolSize += encoded.length;
+            offsets[++size] = poolSize;
+            return size - 1;
+        }
+
+        int size() {
+            return size;
+        }
+
+        StringPool build() {
+            return new StringPool(IntBuffer.wrap(Arrays.copyOf(offsets, size + 1)),
+                    ByteBuffer.wrap(Arrays.copyOf(pool, poolSize)));
+        }
+    }
+
+}
@@ -0,0 +1,103 @@
+package fhirspark.settings;
+
+/**
+ * Number of requests per lane of routes that are handled at the same time. Requests beyond it wait in a bounded
+ * queue without holding a request thread and are answered with 503 if the queue is full or their wait is over.
+ * Unset values keep their defaults, 0 concurrent requests admits every request of a lane.
+ */
+public class AdmissionSettings {
+
+    private static final int DEFAULT_BULK_CONCURRENT = 4;
+    private static final int DEFAULT_QUEUE = 64;
+    private static final int DEFAULT_WAIT = 2000;
+
+    private Lane interactive = new Lane(0);
+    private Lane write = new Lane(0);
+    private Lane bulk = new Lane(DEFAULT_BULK_CONCURRENT);
+
+    /**
+     * Limits of one lane.
+     */
+    public static class Lane {
+
+        private Integer maxConcurrent;
+        private Integer maxQueue = DEFAULT_QUEUE;
+        private Integer maxWait = DEFAULT_WAIT;
+
+        public Lane() {
+            this(0);
+        }
+
+        Lane(int maxConcurrent) {
+            this.maxConcurrent = maxConcurrent;
+        }
+
+        /**
+         * @return maximum number of requests handled at the same time, 0 for no limit.
+         */
+        public Integer getMaxConcurrent() {
+            return maxConcurrent;
+        }
+
+        public void setMaxConcurrent(Integer maxConcurrent) {
+            this.maxConcurrent = maxConcurrent;
+        }
+
+        /**
+         * @return maximum number of requests waiting to be handled.
+         */
+        public Integer getMaxQueue() {
+            return maxQueue;
+        }
+
+        public void setMaxQueue(Integer maxQueue) {
+            this.maxQueue = maxQueue;
+        }
+
+        /**
+         * @return milliseconds a request waits before it is rejected.
+         */
+        public Integer getMaxWait() {
+            return maxWait;
+        }
+
+        public void setMaxWait(Integer maxWait) {
+            this.maxWait = maxWait;
+        }
+
+    }
+
+    /**
+     * @return limits for viewing the MTBs and follow-ups of a patient.
+     */
+    public Lane getInteractive() {
+        return interactive;
+    }
+
+    public void setInteractive(Lane interactive) {
+        this.interactive = interactive;
+    }
+
+    /**
+     * @return limits for storing and deleting MTBs and follow-ups.
+     */
+    public Lane getWrite() {
+        return write;
+    }
+
+    public void setWrite(Lane write) {
+        this.write = write;
+    }
+
+    /**
+     * @return limits for searches by alteration across patients.
+     */
+    public Lane getBulk() {
+        return bulk;
+    }
+
+    public void setBulk(Lane bulk) {
+        this.bulk = bulk;
+    }
+
+}
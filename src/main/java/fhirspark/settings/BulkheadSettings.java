@@ -0,0 +1,143 @@
+package fhirspark.settings;
+
+/**
+ * Concurrency limits of the calls to the FHIR server, separately for reads of patient data, writes and searches
+ * by alteration. If adaptive, the limits move between minConcurrent and maxConcurrent depending on the latency of
+ * the FHIR server. Unset values keep their defaults.
+ */
+public class BulkheadSettings {
+
+    private static final int DEFAULT_READ_CONCURRENT = 32;
+    private static final int DEFAULT_WRITE_CONCURRENT = 8;
+    private static final int DEFAULT_SEARCH_CONCURRENT = 4;
+    private static final int DEFAULT_QUEUE = 64;
+    private static final int DEFAULT_WAIT = 2000;
+    private static final int DEFAULT_MIN_CONCURRENT = 2;
+    private static final double DEFAULT_LATENCY_TOLERANCE = 1.5;
+
+    private Boolean adaptive = true;
+    private Integer minConcurrent = DEFAULT_MIN_CONCURRENT;
+    private Double latencyTolerance = DEFAULT_LATENCY_TOLERANCE;
+    private Pool read = new Pool(DEFAULT_READ_CONCURRENT);
+    private Pool write = new Pool(DEFAULT_WRITE_CONCURRENT);
+    private Pool search = new Pool(DEFAULT_SEARCH_CONCURRENT);
+
+    /**
+     * Limits of one kind of call.
+     */
+    public static class Pool {
+
+        private Integer maxConcurrent;
+        private Integer maxQueue = DEFAULT_QUEUE;
+        private Integer maxWait = DEFAULT_WAIT;
+
+        public Pool() {
+            this(DEFAULT_READ_CONCURRENT);
+        }
+
+        Pool(int maxConcurrent) {
+            this.maxConcurrent = maxConcurrent;
+        }
+
+        /**
+         * @return maximum number of concurrent calls.
+         */
+        public Integer getMaxConcurrent() {
+            return maxConcurrent;
+        }
+
+        public void setMaxConcurrent(Integer maxConcurrent) {
+            this.maxConcurrent = maxConcurrent;
+        }
+
+        /**
+         * @return maximum number of calls waiting for one of the concurrent slots.
+         */
+        public Integer getMaxQueue() {
+            return maxQueue;
+        }
+
+        public void setMaxQueue(Integer maxQueue) {
+            this.maxQueue = maxQueue;
+        }
+
+        /**
+         * @return milliseconds a call waits for a slot before it is rejected.
+         */
+        public Integer getMaxWait() {
+            return maxWait;
+        }
+
+        public void setMaxWait(Integer maxWait) {
+            this.maxWait = maxWait;
+        }
+
+    }
+
+    /**
+     * @return whether the limits adapt to the latency of the FHIR server.
+     */
+    public Boolean getAdaptive() {
+        return adaptive;
+    }
+
+    public void setAdaptive(Boolean adaptive) {
+        this.adaptive = adaptive;
+    }
+
+    /**
+     * @return lower bound of the adaptive limits.
+     */
+    public Integer getMinConcurrent() {
+        return minConcurrent;
+    }
+
+    public void setMinConcurrent(Integer minConcurrent) {
+        this.minConcurrent = minConcurrent;
+    }
+
+    /**
+     * @return factor by which a call may exceed the usual latency before the limit is lowered.
+     */
+    public Double getLatencyTolerance() {
+        return latencyTolerance;
+    }
+
+    public void setLatencyTolerance(Double latencyTolerance) {
+        this.latencyTolerance = latencyTolerance;
+    }
+
+    /**
+     * @return limits of reading MTBs and follow-ups of a patient.
+     */
+    public Pool getRead() {
+        return read;
+    }
+
+    public void setRead(Pool read) {
+        this.read = read;
+    }
+
+    /**
+     * @return limits of storing and deleting MTBs and follow-ups.
+     */
+    public Pool getWrite() {
+        return write;
+    }
+
+    public void setWrite(Pool write) {
+        this.write = write;
+    }
+
+    /**
+     * @return limits of searching therapy recommendations, follow-ups and references by alteration.
+     */
+    public Pool getSearch() {
+        return search;
+    }
+
+    public void setSearch(Pool search) {
+        this.search = search;
+    }
+
+}
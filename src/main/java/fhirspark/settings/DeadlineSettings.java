@@ -0,0 +1,51 @@
+package fhirspark.settings;
+
+/**
+ * Time a request may take in total, per lane of routes. Every call to the FHIR server made for a request gets at
+ * most the remaining time as timeout, calls after the deadline are not made anymore. Unset values keep their
+ * defaults, 0 disables the deadline of a lane.
+ */
+public class DeadlineSettings {
+
+    private static final int DEFAULT_INTERACTIVE = 15000;
+    private static final int DEFAULT_WRITE = 30000;
+    private static final int DEFAULT_BULK = 60000;
+
+    private Integer interactive = DEFAULT_INTERACTIVE;
+    private Integer write = DEFAULT_WRITE;
+    private Integer bulk = DEFAULT_BULK;
+
+    /**
+     * @return milliseconds for viewing the MTBs and follow-ups of a patient.
+     */
+    public Integer getInteractive() {
+        return interactive;
+    }
+
+    public void setInteractive(Integer interactive) {
+        this.interactive = interactive;
+    }
+
+    /**
+     * @return milliseconds for storing and deleting MTBs and follow-ups.
+     */
+    public Integer getWrite() {
+        return write;
+    }
+
+    public void setWrite(Integer write) {
+        this.write = write;
+    }
+
+    /**
+     * @return milliseconds for searches by alteration across patients.
+     */
+    public Integer getBulk() {
+        return bulk;
+    }
+
+    public void setBulk(Integer bulk) {
+        this.bulk = bulk;
+    }
+
+}
@@ -0,0 +1,110 @@
+package fhirspark.settings;
+
+/**
+ * Connection pool, timeout and wire format settings of the client to the FHIR server. Unset values keep their
+ * defaults.
+ */
+public class FhirClientSettings {
+
+    private static final int DEFAULT_POOL_SIZE = 50;
+    private static final int DEFAULT_TIMEOUT = 60000;
+    private static final int DEFAULT_IDLE_TIMEOUT = 30000;
+
+    private Integer poolMaxTotal = DEFAULT_POOL_SIZE;
+    private Integer poolMaxPerRoute = DEFAULT_POOL_SIZE;
+    private Integer idleTimeout = DEFAULT_IDLE_TIMEOUT;
+    private Integer connectTimeout = DEFAULT_TIMEOUT;
+    private Integer socketTimeout = DEFAULT_TIMEOUT;
+    private Boolean compressRequests = false;
+    private Boolean compressResponses = true;
+    private String encoding = "json";
+
+    /**
+     * @return maximum number of pooled connections.
+     */
+    public Integer getPoolMaxTotal() {
+        return poolMaxTotal;
+    }
+
+    public void setPoolMaxTotal(Integer poolMaxTotal) {
+        this.poolMaxTotal = poolMaxTotal;
+    }
+
+    /**
+     * @return maximum number of pooled connections to the same host.
+     */
+    public Integer getPoolMaxPerRoute() {
+        return poolMaxPerRoute;
+    }
+
+    public void setPoolMaxPerRoute(Integer poolMaxPerRoute) {
+        this.poolMaxPerRoute = poolMaxPerRoute;
+    }
+
+    /**
+     * @return milliseconds after which idle connections are closed.
+     */
+    public Integer getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    public void setIdleTimeout(Integer idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * @return connect timeout in milliseconds.
+     */
+    public Integer getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public void setConnectTimeout(Integer connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    /**
+     * @return socket timeout in milliseconds.
+     */
+    public Integer getSocketTimeout() {
+        return socketTimeout;
+    }
+
+    public void setSocketTimeout(Integer socketTimeout) {
+        this.socketTimeout = socketTimeout;
+    }
+
+    /**
+     * @return whether request bodies are sent gzip compressed. The FHIR server has to support this.
+     */
+    public Boolean getCompressRequests() {
+        return compressRequests;
+    }
+
+    public void setCompressRequests(Boolean compressRequests) {
+        this.compressRequests = compressRequests;
+    }
+
+    /**
+     * @return whether gzip compressed responses are accepted.
+     */
+    public Boolean getCompressResponses() {
+        return compressResponses;
+    }
+
+    public void setCompressResponses(Boolean compressResponses) {
+        this.compressResponses = compressResponses;
+    }
+
+    /**
+     * @return wire format of requests and responses, json or xml.
+     */
+    public String getEncoding() {
+        return encoding;
+    }
+
+    public void setEncoding(String encoding) {
+        this.encoding = encoding;
+    }
+
+}
@@ -0,0 +1,75 @@
+package fhirspark.settings;
+
+/**
+ * Outbox of saves that could not be written because the FHIR server was unavailable. Unset values keep their
+ * defaults.
+ */
+public class OutboxSettings {
+
+    private static final String DEFAULT_DIRECTORY = "outbox";
+    private static final int DEFAULT_SEGMENT_SIZE = 4 * 1024 * 1024;
+    private static final int DEFAULT_RETRY_DELAY = 1000;
+    private static final int DEFAULT_MAX_RETRY_DELAY = 60000;
+
+    private Boolean enabled = false;
+    private String directory = DEFAULT_DIRECTORY;
+    private Integer segmentSize = DEFAULT_SEGMENT_SIZE;
+    private Integer retryDelay = DEFAULT_RETRY_DELAY;
+    private Integer maxRetryDelay = DEFAULT_MAX_RETRY_DELAY;
+
+    /**
+     * @return whether saves are kept and replayed later if the FHIR server is unavailable.
+     */
+    public Boolean getEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(Boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * @return directory of the outbox segment files.
+     */
+    public String getDirectory() {
+        return directory;
+    }
+
+    public void setDirectory(String directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @return size of an outbox segment file in bytes.
+     */
+    public Integer getSegmentSize() {
+        return segmentSize;
+    }
+
+    public void setSegmentSize(Integer segmentSize) {
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * @return milliseconds before the first replay of a kept save, doubled for every further attempt.
+     */
+    public Integer getRetryDelay() {
+        return retryDelay;
+    }
+
+    public void setRetryDelay(Integer retryDelay) {
+        this.retryDelay = retryDelay;
+    }
+
+    /**
+     * @return upper bound of the delay between replays of a kept save in milliseconds.
+     */
+    public Integer getMaxRetryDelay() {
+        return maxRetryDelay;
+    }
+
+    public void setMaxRetryDelay(Integer maxRetryDelay) {
+        this.maxRetryDelay = maxRetryDelay;
+    }
+
+}
@@ -0,0 +1,77 @@
+package fhirspark.settings;
+
+/**
+ * Retries of transiently failed calls to the FHIR server and the circuit breaker that fails calls fast while the
+ * FHIR server is down. Unset values keep their defaults.
+ */
+public class ResilienceSettings {
+
+    private static final int DEFAULT_MAX_ATTEMPTS = 3;
+    private static final int DEFAULT_BASE_DELAY = 100;
+    private static final int DEFAULT_MAX_DELAY = 2000;
+    private static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    private static final int DEFAULT_OPEN_DURATION = 10000;
+
+    private Integer maxAttempts = DEFAULT_MAX_ATTEMPTS;
+    private Integer baseDelay = DEFAULT_BASE_DELAY;
+    private Integer maxDelay = DEFAULT_MAX_DELAY;
+    private Integer failureThreshold = DEFAULT_FAILURE_THRESHOLD;
+    private Integer openDuration = DEFAULT_OPEN_DURATION;
+
+    /**
+     * @return maximum number of attempts of a search or conditional update, 1 disables retries.
+     */
+    public Integer getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public void setMaxAttempts(Integer maxAttempts) {
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * @return upper bound of the random delay before the first retry in milliseconds, doubled for every further
+     *         retry.
+     */
+    public Integer getBaseDelay() {
+        return baseDelay;
+    }
+
+    public void setBaseDelay(Integer baseDelay) {
+        this.baseDelay = baseDelay;
+    }
+
+    /**
+     * @return upper bound of the delay before any retry in milliseconds.
+     */
+    public Integer getMaxDelay() {
+        return maxDelay;
+    }
+
+    public void setMaxDelay(Integer maxDelay) {
+        this.maxDelay = maxDelay;
+    }
+
+    /**
+     * @return number of consecutive failed calls after which calls fail fast.
+     */
+    public Integer getFailureThreshold() {
+        return failureThreshold;
+    }
+
+    public void setFailureThreshold(Integer failureThreshold) {
+        this.failureThreshold = failureThreshold;
+    }
+
+    /**
+     * @return milliseconds calls fail fast before a probe call is sent to the FHIR server.
+     */
+    public Integer getOpenDuration() {
+        return openDuration;
+    }
+
+    public void setOpenDuration(Integer openDuration) {
+        this.openDuration = openDuration;
+    }
+
+}
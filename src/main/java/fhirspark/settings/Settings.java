@@ -13,7 +13,16 @@ import java.util.List;
 @JsonInclude(JsonInclude.Include.NON_NULL)
 @JsonPropertyOrder({
     "port",
+    "threadPool",
     "fhirDbBase",
+    "fhirClient",
+    "bulkhead",
+    "resilience",
+    "deadline",
+    "admission",
+    "coalesceWindow",
+    "writeBehind",
+    "outbox",
     "specimenSystem",
     "diagnosticReportSystem",
     "observationSystem",
@@ -26,14 +35,33 @@ import java.util.List;
     "portalUrl",
     "loginRequired",
     "oncokbPath",
+    "warmUp",
     "regex"
 })
 public final class Settings {
 
     @JsonProperty("port")
     private Integer port;
+    @JsonProperty("threadPool")
+    private ThreadPoolSettings threadPool;
     @JsonProperty("fhirDbBase")
     private String fhirDbBase;
+    @JsonProperty("fhirClient")
+    private FhirClientSettings fhirClient;
+    @JsonProperty("bulkhead")
+    private BulkheadSettings bulkhead;
+    @JsonProperty("resilience")
+    private ResilienceSettings resilience;
+    @JsonProperty("deadline")
+    private DeadlineSettings deadline;
+    @JsonProperty("admission")
+    private AdmissionSettings admission;
+    @JsonProperty("coalesceWindow")
+    private Integer coalesceWindow;
+    @JsonProperty("writeBehind")
+    private WriteBehindSettings writeBehind;
+    @JsonProperty("outbox")
+    private OutboxSettings outbox;
     @JsonProperty("specimenSystem")
     private String specimenSystem;
     @JsonProperty("diagnosticReportSystem")
@@ -58,6 +86,8 @@ public final class Settings {
     private Boolean loginRequired;
     @JsonProperty("oncokbPath")
     private String oncokbPath;
+    @JsonProperty("warmUp")
+    private Boolean warmUp;
     @JsonProperty("regex")
     private List<Regex> regex;
 
@@ -71,6 +101,16 @@ public final class Settings {
         this.port = port;
     }
 
+    @JsonProperty("threadPool")
+    public ThreadPoolSettings getThreadPool() {
+        return threadPool;
+    }
+
+    @JsonProperty("threadPool")
+    public void setThreadPool(ThreadPoolSettings threadPool) {
+        this.threadPool = threadPool;
+    }
+
     @JsonProperty("fhirDbBase")
     public String getFhirDbBase() {
         return fhirDbBase;
@@ -81,6 +121,86 @@ public final class Settings {
         this.fhirDbBase = fhirDbBase;
     }
 
+    @JsonProperty("fhirClient")
+    public FhirClientSettings getFhirClient() {
+        return fhirClient;
+    }
+
+    @JsonProperty("fhirClient")
+    public void setFhirClient(FhirClientSettings fhirClient) {
+        this.fhirClient = fhirClient;
+    }
+
+    @JsonProperty("bulkhead")
+    public BulkheadSettings getBulkhead() {
+        return bulkhead;
+    }
+
+    @JsonProperty("bulkhead")
+    public void setBulkhead(BulkheadSettings bulkhead) {
+        this.bulkhead = bulkhead;
+    }
+
+    @JsonProperty("resilience")
+    public ResilienceSettings getResilience() {
+        return resilience;
+    }
+
+    @JsonProperty("resilience")
+    public void setResilience(ResilienceSettings resilience) {
+        this.resilience = resilience;
+    }
+
+    @JsonProperty("deadline")
+    public DeadlineSettings getDeadline() {
+        return deadline;
+    }
+
+    @JsonProperty("deadline")
+    public void setDeadline(DeadlineSettings deadline) {
+        this.deadline = deadline;
+    }
+
+    @JsonProperty("admission")
+    public AdmissionSettings getAdmission() {
+        return admission;
+    }
+
+    @JsonProperty("admission")
+    public void setAdmission(AdmissionSettings admission) {
+        this.admission = admission;
+    }
+
+    @JsonProperty("coalesceWindow")
+    public Integer getCoalesceWindow() {
+        return coalesceWindow;
+    }
+
+    @JsonProperty("coalesceWindow")
+    public void setCoalesceWindow(Integer coalesceWindow) {
+        this.coalesceWindow = coalesceWindow;
+    }
+
+    @JsonProperty("writeBehind")
+    public WriteBehindSettings getWriteBehind() {
+        return writeBehind;
+    }
+
+    @JsonProperty("writeBehind")
+    public void setWriteBehind(WriteBehindSettings writeBehind) {
+        this.writeBehind = writeBehind;
+    }
+
+    @JsonProperty("outbox")
+    public OutboxSettings getOutbox() {
+        return outbox;
+    }
+
+    @JsonProperty("outbox")
+    public void setOutbox(OutboxSettings outbox) {
+        this.outbox = outbox;
+    }
+
     @JsonProperty("specimenSystem")
     public String getSpecimenSystem() {
         return specimenSystem;
@@ -191,6 +311,16 @@ public final class Settings {
         this.oncokbPath = oncokbPath;
     }
 
+    @JsonProperty("warmUp")
+    public Boolean getWarmUp() {
+        return warmUp;
+    }
+
+    @JsonProperty("warmUp")
+    public void setWarmUp(Boolean warmUp) {
+        this.warmUp = warmUp;
+    }
+
     @JsonProperty("regex")
     public List<Regex> getRegex() {
         return regex;
@@ -0,0 +1,62 @@
+package fhirspark.settings;
+
+/**
+ * Request thread settings of the embedded Jetty server. Unset values keep their defaults.
+ */
+public class ThreadPoolSettings {
+
+    private static final int DEFAULT_MAX_THREADS = 200;
+    private static final int DEFAULT_MIN_THREADS = 8;
+    private static final int DEFAULT_IDLE_TIMEOUT = 60000;
+
+    private Boolean virtualThreads = false;
+    private Integer maxThreads = DEFAULT_MAX_THREADS;
+    private Integer minThreads = DEFAULT_MIN_THREADS;
+    private Integer idleTimeout = DEFAULT_IDLE_TIMEOUT;
+
+    /**
+     * @return whether requests are handled on virtual threads. The pool then only runs Jetty's selectors and
+     *         acceptors.
+     */
+    public Boolean getVirtualThreads() {
+        return virtualThreads;
+    }
+
+    public void setVirtualThreads(Boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+
+    /**
+     * @return maximum number of platform threads.
+     */
+    public Integer getMaxThreads() {
+        return maxThreads;
+    }
+
+    public void setMaxThreads(Integer maxThreads) {
+        this.maxThreads = maxThreads;
+    }
+
+    /**
+     * @return minimum number of platform threads.
+     */
+    public Integer getMinThreads() {
+        return minThreads;
+    }
+
+    public void setMinThreads(Integer minThreads) {
+        this.minThreads = minThreads;
+    }
+
+    /**
+     * @return milliseconds after which idle platform threads end.
+     */
+    public Integer getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    public void setIdleTimeout(Integer idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+}
@@ -0,0 +1,75 @@
+package fhirspark.settings;
+
+/**
+ * Write-behind mode of PUT /mtb and PUT /followup: saves are stored in a local journal, answered with 202 Accepted
+ * and applied to the FHIR server in the background. Unset values keep their defaults.
+ */
+public class WriteBehindSettings {
+
+    private static final String DEFAULT_DIRECTORY = "journal";
+    private static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+    private static final int DEFAULT_RETRY_DELAY = 5000;
+    private static final int DEFAULT_DRAIN_TIMEOUT = 30000;
+
+    private Boolean enabled = false;
+    private String directory = DEFAULT_DIRECTORY;
+    private Integer segmentSize = DEFAULT_SEGMENT_SIZE;
+    private Integer retryDelay = DEFAULT_RETRY_DELAY;
+    private Integer drainTimeout = DEFAULT_DRAIN_TIMEOUT;
+
+    /**
+     * @return whether saves are answered before they are applied to the FHIR server.
+     */
+    public Boolean getEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(Boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * @return directory of the journal segment files.
+     */
+    public String getDirectory() {
+        return directory;
+    }
+
+    public void setDirectory(String directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @return size of a journal segment file in bytes.
+     */
+    public Integer getSegmentSize() {
+        return segmentSize;
+    }
+
+    public void setSegmentSize(Integer segmentSize) {
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * @return milliseconds before a save is retried that failed because the FHIR server is unavailable.
+     */
+    public Integer getRetryDelay() {
+        return retryDelay;
+    }
+
+    public void setRetryDelay(Integer retryDelay) {
+        this.retryDelay = retryDelay;
+    }
+
+    /**
+     * @return milliseconds FhirSpark waits on shutdown for queued saves to be applied.
+     */
+    public Integer getDrainTimeout() {
+        return drainTimeout;
+    }
+
+    public void setDrainTimeout(Integer drainTimeout) {
+        this.drainTimeout = drainTimeout;
+    }
+
+}
@@ -0,0 +1,81 @@
+package fhirspark;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AdaptiveLimitTest {
+
+    private static final long MILLIS = 1_000_000L;
+
+    @Test
+    public void shrinksWhenSlowTest() {
+        AdaptiveLimit limit = new AdaptiveLimit(2, 32, 1.5);
+        long now = 0;
+        limit.update(now, 10 * MILLIS, 1, false);
+        assertEquals(32, limit.get());
+        for (int i = 0; i < 100; i++) {
+            now += 100 * MILLIS;
+            limit.update(now, 50 * MILLIS, 32, false);
+        }
+        assertEquals(2, limit.get());
+        assertTrue(limit.latency() < 20 * MILLIS);
+    }
+
+    @Test
+    public void decreasesOncePerLatencyTest() {
+        AdaptiveLimit limit = new AdaptiveLimit(2, 30, 1.5);
+        limit.update(0, 10 * MILLIS, 1, false);
+        limit.update(20 * MILLIS, 0, 30, true);
+        limit.update(21 * MILLIS, 0, 30, true);
+        limit.update(22 * MILLIS, 0, 30, true);
+        assertEquals(27, limit.get());
+        limit.update(40 * MILLIS, 0, 30, true);
+        assertEquals(24, limit.get());
+    }
+
+    @Test
+    public void growsWhenUsedAndHealthyTest() {
+        AdaptiveLimit limit = new AdaptiveLimit(4, 32, 1.5);
+        long now = 0;
+        for (int i = 0; i < 20; i++) {
+            now += 100 * MILLIS;
+            limit.update(now, 0, 32, true);
+        }
+        assertEquals(4, limit.get());
+        for (int i = 0; i < 1000; i++) {
+            now += MILLIS;
+            limit.update(now, 10 * MILLIS, 1, false);
+        }
+        // not using the limit gives no evidence that more would be healthy
+        assertEquals(4, limit.get());
+        for (int i = 0; i < 1000; i++) {
+            now += MILLIS;
+            limit.update(now, 10 * MILLIS, limit.get(), false);
+        }
+        assertTrue(limit.get() > 20);
+    }
+
+    @Test
+    public void followsPermanentlySlowerServerTest() {
+        AdaptiveLimit limit = new AdaptiveLimit(2, 32, 1.5);
+        long now = 0;
+        limit.update(now, 10 * MILLIS, 1, false);
+        for (int i = 0; i < 1000; i++) {
+            now += 100 * MILLIS;
+            limit.update(now, 50 * MILLIS, limit.get(), false);
+        }
+        assertTrue(limit.latency() > 30 * MILLIS);
+        assertTrue(limit.get() > 2);
+    }
+
+    @Test
+    public void fixedLimitTest() {
+        AdaptiveLimit limit = AdaptiveLimit.fixed(8);
+        limit.update(0, 10 * MILLIS, 8, false);
+        limit.update(100 * MILLIS, 0, 8, true);
+        assertEquals(8, limit.get());
+    }
+
+}
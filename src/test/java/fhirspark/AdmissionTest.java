@@ -0,0 +1,139 @@
+package fhirspark;
+
+import fhirspark.settings.AdmissionSettings;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AdmissionTest {
+
+    @Test
+    public void queuesWithoutThreadAndRejectsWhenFullTest() throws Exception {
+        AdmissionSettings settings = new AdmissionSettings();
+        settings.getBulk().setMaxConcurrent(1);
+        settings.getBulk().setMaxQueue(1);
+        settings.getBulk().setMaxWait(60000);
+        Admission admission = new Admission(settings);
+        AtomicReference<CountDownLatch> release = new AtomicReference<>(new CountDownLatch(1));
+        CountDownLatch running = new CountDownLatch(1);
+        Server server = start(admission, release, running);
+        HttpClient http = HttpClient.newHttpClient();
+        try {
+            CompletableFuture<HttpResponse<String>> first = http.sendAsync(bulk(server),
+                    HttpResponse.BodyHandlers.ofString());
+            running.await();
+            CompletableFuture<HttpResponse<String>> second = http.sendAsync(bulk(server),
+                    HttpResponse.BodyHandlers.ofString());
+            awaitQueued(admission, 1);
+
+            HttpResponse<String> third = http.send(bulk(server), HttpResponse.BodyHandlers.ofString());
+            assertEquals(503, third.statusCode());
+            assertEquals("1", third.headers().firstValue("Retry-After").orElse(null));
+            // other lanes are not limited
+            assertEquals(200, http.send(request(server, "/mtb/1").GET().build(),
+                    HttpResponse.BodyHandlers.ofString()).statusCode());
+            assertEquals(1, stats(admission).get("running"));
+
+            release.get().countDown();
+            assertEquals(200, first.get().statusCode());
+            assertEquals(200, second.get().statusCode());
+            assertEquals(0, stats(admission).get("running"));
+            assertEquals(2L, stats(admission).get("admitted"));
+            assertEquals(1L, stats(admission).get("rejected"));
+        } finally {
+            release.get().countDown();
+            server.stop();
+        }
+    }
+
+    @Test
+    public void rejectsAfterWaitTest() throws Exception {
+        AdmissionSettings settings = new AdmissionSettings();
+        settings.getBulk().setMaxConcurrent(1);
+        settings.getBulk().setMaxQueue(1);
+        settings.getBulk().setMaxWait(100);
+        Admission admission = new Admission(settings);
+        AtomicReference<CountDownLatch> release = new AtomicReference<>(new CountDownLatch(1));
+        CountDownLatch running = new CountDownLatch(1);
+        Server server = start(admission, release, running);
+        HttpClient http = HttpClient.newHttpClient();
+        try {
+            CompletableFuture<HttpResponse<String>> first = http.sendAsync(bulk(server),
+                    HttpResponse.BodyHandlers.ofString());
+            running.await();
+            assertEquals(503, http.send(bulk(server), HttpResponse.BodyHandlers.ofString()).statusCode());
+            assertEquals(0, stats(admission).get("queued"));
+
+            release.get().countDown();
+            assertEquals(200, first.get().statusCode());
+            assertEquals(200, http.send(bulk(server), HttpResponse.BodyHandlers.ofString()).statusCode());
+        } finally {
+            release.get().countDown();
+            server.stop();
+        }
+    }
+
+    private static Server start(Admission admission, AtomicReference<CountDownLatch> release,
+            CountDownLatch running) throws Exception {
+        Server server = new Server(0);
+        admission.setHandler(new AbstractHandler() {
+            @Override
+            public void handle(String target, Request baseRequest, HttpServletRequest request,
+                    HttpServletResponse response) throws IOException {
+                if (target.endsWith("/alteration")) {
+                    running.countDown();
+                    try {
+                        release.get().await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                response.setStatus(200);
+                response.getWriter().write("done");
+                baseRequest.setHandled(true);
+            }
+        });
+        server.setHandler(admission);
+        server.start();
+        return server;
+    }
+
+    private static HttpRequest.Builder request(Server server, String path) {
+        int port = ((ServerConnector) server.getConnectors()[0]).getLocalPort();
+        return HttpRequest.newBuilder(URI.create("http://localhost:" + port + path));
+    }
+
+    private static HttpRequest bulk(Server server) {
+        return request(server, "/mtb/alteration").POST(HttpRequest.BodyPublishers.ofString("[]")).build();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> stats(Admission admission) {
+        return (Map<String, Object>) admission.stats().get("bulk");
+    }
+
+    private static void awaitQueued(Admission admission, int expected) throws InterruptedException {
+        for (int i = 0; i < 500 && !Integer.valueOf(expected).equals(stats(admission).get("queued")); i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(Integer.valueOf(expected).equals(stats(admission).get("queued")));
+    }
+
+}
@@ -0,0 +1,46 @@
+package fhirspark;
+
+import fhirspark.resolver.HgncGeneName;
+import fhirspark.restmodel.GeneticAlteration;
+import fhirspark.settings.ConfigurationLoader;
+import fhirspark.settings.Settings;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Searches by alteration against a FHIR server that does not exist, so every search that reaches the client
+ * fails.
+ */
+@TestInstance(Lifecycle.PER_CLASS)
+public class AlterationSearchTest {
+
+    private JsonFhirMapper jfm;
+
+    @BeforeAll
+    public void prepare() throws IOException {
+        Settings settings = new ConfigurationLoader()
+                .loadConfiguration(new FileInputStream("src/main/resources/settings.yaml"), Settings.class);
+        settings.setFhirDbBase("http://localhost:1/fhir");
+        HgncGeneName.initialize(settings.getHgncPath());
+        this.jfm = new JsonFhirMapper(settings);
+    }
+
+    @Test
+    public void unresolvedAlterationsSkipSearchTest() {
+        List<GeneticAlteration> alterations = List.of(new GeneticAlteration().withHugoSymbol("NOT-A-GENE"),
+                new GeneticAlteration());
+        assertTrue(jfm.getPmidsByAlteration(alterations).isEmpty());
+        assertTrue(jfm.getTherapyRecommendationsByAlteration(alterations).isEmpty());
+        assertTrue(jfm.getFollowUpsByAlteration(alterations).isEmpty());
+    }
+
+}
@@ -0,0 +1,62 @@
+package fhirspark;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class BulkheadTest {
+
+    @Test
+    public void rejectsWhenFullTest() throws Exception {
+        Bulkhead bulkhead = new Bulkhead("read", 1, 1, 100);
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            Future<String> holder = executor.submit(() -> bulkhead.call(() -> {
+                running.countDown();
+                release.await();
+                return "done";
+            }));
+            running.await();
+
+            // waits up to 100 ms in the queue, then gives up
+            assertThrows(Bulkhead.RejectedException.class, () -> bulkhead.call(() -> "late"));
+
+            CountDownLatch queued = new CountDownLatch(1);
+            Bulkhead bounded = new Bulkhead("write", 1, 1, 60000);
+            Future<?> first = executor.submit(() -> bounded.call(() -> {
+                queued.countDown();
+                release.await();
+                return null;
+            }));
+            queued.await();
+            Future<String> waiting = executor.submit(() -> bounded.call(() -> "queued"));
+            while (!Integer.valueOf(1).equals(bounded.stats().get("queued"))) {
+                Thread.sleep(1);
+            }
+            // the queue is full, so the call is rejected without waiting
+            assertThrows(Bulkhead.RejectedException.class, () -> bounded.call(() -> "rejected"));
+
+            release.countDown();
+            assertEquals("done", holder.get());
+            first.get();
+            assertEquals("queued", waiting.get());
+            Map<String, Object> stats = bounded.stats();
+            assertEquals(0, stats.get("active"));
+            assertEquals(2L, stats.get("completed"));
+            assertEquals(1L, stats.get("rejected"));
+            assertEquals(1L, bulkhead.stats().get("rejected"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+}
@@ -0,0 +1,70 @@
+package fhirspark;
+
+import ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DeadlineTest {
+
+    @AfterEach
+    public void clear() {
+        Deadline.set(null);
+    }
+
+    @Test
+    public void expiresTest() throws InterruptedException {
+        AtomicBoolean disconnected = new AtomicBoolean();
+        Deadline deadline = Deadline.after(50, disconnected::get);
+        deadline.check();
+        disconnected.set(true);
+        assertThrows(Deadline.ExceededException.class, deadline::check);
+
+        Deadline expired = Deadline.after(10, () -> false);
+        Thread.sleep(20);
+        assertThrows(Deadline.ExceededException.class, expired::check);
+    }
+
+    @Test
+    public void capTest() {
+        assertEquals(60000, Deadline.cap(60000));
+        Deadline.set(Deadline.after(1000, () -> false));
+        assertTrue(Deadline.cap(60000) <= 1000);
+        assertEquals(5, Deadline.cap(5));
+        Deadline.set(Deadline.after(-1, () -> false));
+        assertEquals(1, Deadline.cap(60000));
+    }
+
+    @Test
+    public void propagatesTest() {
+        Deadline deadline = Deadline.after(1000, () -> false);
+        Deadline.set(deadline);
+        assertSame(deadline, CompletableFuture.supplyAsync(() -> Deadline.with(deadline, Deadline::current)).join());
+        assertNull(CompletableFuture.supplyAsync(Deadline::current).join());
+    }
+
+    @Test
+    public void noRetryAfterDeadlineTest() {
+        Resilience resilience = new Resilience(new CircuitBreaker(5, 1000), 3, 200, 200);
+        Bulkhead bulkhead = new Bulkhead("read", 4, 4, 100);
+        Deadline.set(Deadline.after(100, () -> false));
+        AtomicInteger attempts = new AtomicInteger();
+        assertThrows(BaseServerResponseException.class, () -> resilience.call(bulkhead, true, () -> {
+            attempts.incrementAndGet();
+            Thread.sleep(110);
+            throw BaseServerResponseException.newInstance(503, "Service Unavailable");
+        }));
+        assertEquals(1, attempts.get());
+    }
+
+}
@@ -0,0 +1,131 @@
+package fhirspark;
+
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.impl.client.HttpClients;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class GuardedHttpClientTest {
+
+    private final Bulkhead reads = new Bulkhead("read", 4, 4, 100);
+    private final Bulkhead writes = new Bulkhead("write", 4, 4, 100);
+    private final Bulkhead searches = new Bulkhead("search", 4, 4, 100);
+    private final AtomicInteger calls = new AtomicInteger();
+    private final AtomicInteger status = new AtomicInteger(200);
+    private final AtomicInteger delay = new AtomicInteger();
+    private final CircuitBreaker breaker = new CircuitBreaker(4, 60000);
+    private final Resilience resilience = new Resilience(breaker, 3, 1, 1);
+    private HttpServer server;
+    private GuardedHttpClient client;
+
+    @BeforeEach
+    public void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/fhir", exchange -> {
+            calls.incrementAndGet();
+            try {
+                Thread.sleep(delay.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.sendResponseHeaders(status.get(), -1);
+            exchange.close();
+        });
+        server.start();
+        client = new GuardedHttpClient(HttpClients.createDefault(), resilience, reads, writes, RequestConfig.DEFAULT);
+    }
+
+    @AfterEach
+    public void stop() throws IOException {
+        Deadline.set(null);
+        client.close();
+        server.stop(0);
+    }
+
+    @Test
+    public void countsEveryCallOfLaneTest() {
+        GuardedHttpClient.lane(searches, () -> {
+            for (int i = 0; i < 3; i++) {
+                execute(new HttpGet(url()));
+            }
+            return null;
+        });
+        execute(new HttpGet(url()));
+        execute(new HttpPost(url()));
+
+        assertEquals(5, calls.get());
+        assertEquals(3L, searches.stats().get("completed"));
+        assertEquals(1L, reads.stats().get("completed"));
+        assertEquals(1L, writes.stats().get("completed"));
+    }
+
+    @Test
+    public void adaptsLimitToEachCallTest() {
+        Bulkhead adaptive = new Bulkhead("read", new AdaptiveLimit(1, 10, 1.5), 4, 100);
+        status.set(503);
+        GuardedHttpClient.lane(adaptive, () -> {
+            assertEquals(503, execute(new HttpGet(url())));
+            return null;
+        });
+        assertEquals(3, calls.get());
+        assertEquals(0, adaptive.stats().get("active"));
+        assertTrue((Integer) adaptive.stats().get("limit") < 10);
+    }
+
+    @Test
+    public void retriesIdempotentCallsTest() {
+        status.set(502);
+        assertEquals(502, execute(new HttpPost(url())));
+        assertEquals(1, calls.get());
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        calls.set(0);
+        assertEquals(502, execute(new HttpGet(url())));
+        assertEquals(3, calls.get());
+        assertEquals(2L, resilience.stats().get("retries"));
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertThrows(CircuitBreaker.OpenException.class, () -> execute(new HttpGet(url())));
+        assertEquals(3, calls.get());
+    }
+
+    @Test
+    public void timesOutAtDeadlineTest() {
+        delay.set(500);
+        Deadline.set(Deadline.after(100, () -> false));
+        assertThrows(Deadline.ExceededException.class, () -> execute(new HttpGet(url())));
+        assertEquals(1, calls.get());
+        assertEquals(0, breaker.stats().get("consecutiveFailures"));
+        assertEquals(0L, resilience.stats().get("retries"));
+
+        assertThrows(Deadline.ExceededException.class, () -> execute(new HttpGet(url())));
+        assertEquals(1, calls.get());
+    }
+
+    private String url() {
+        return "http://localhost:" + server.getAddress().getPort() + "/fhir/Patient";
+    }
+
+    private int execute(HttpUriRequest request) {
+        try (CloseableHttpResponse response = client.execute(request)) {
+            return response.getStatusLine().getStatusCode();
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+}
@@ -0,0 +1,41 @@
+package fhirspark;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void percentilesTest() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 98; i++) {
+            histogram.record(8);
+        }
+        histogram.record(400);
+        histogram.record(120000);
+        Map<String, Object> snapshot = histogram.snapshot();
+        assertEquals(100L, snapshot.get("count"));
+        assertEquals(10L, snapshot.get("p50Millis"));
+        assertEquals(10L, snapshot.get("p90Millis"));
+        assertEquals(500L, snapshot.get("p99Millis"));
+        assertEquals(1211L, snapshot.get("meanMillis"));
+        assertEquals(1L, ((Map<?, ?>) snapshot.get("buckets")).get("+Inf"));
+    }
+
+    @Test
+    public void laneTest() {
+        assertEquals(Lane.INTERACTIVE, Lane.of("GET", "/mtb/P1"));
+        assertEquals(Lane.INTERACTIVE, Lane.of("GET", "/patient/P1"));
+        assertEquals(Lane.WRITE, Lane.of("PUT", "/followup/P1"));
+        assertEquals(Lane.WRITE, Lane.of("DELETE", "/mtb/P1"));
+        assertEquals(Lane.BULK, Lane.of("POST", "/mtb/alteration/pmid"));
+        assertEquals(Lane.BULK, Lane.of("POST", "/followup/alteration"));
+        assertNull(Lane.of("OPTIONS", "/mtb/alteration"));
+        assertNull(Lane.of("GET", "/metrics"));
+    }
+
+}
@@ -0,0 +1,68 @@
+package fhirspark;
+
+import java.util.function.IntFunction;
+
+/**
+ * Timing harness of the benchmarks in the test sources, which run as main classes since JMH is not part of the
+ * build. Every case is warmed up before it is measured, the fastest of several rounds is reported, and the result
+ * of every operation is kept so that the JIT cannot drop the work.
+ */
+public final class MicroBenchmark {
+
+    private static final int WARM_UP_ROUNDS = 5;
+    private static final int ROUNDS = 5;
+
+    private static volatile Object sink;
+
+    private MicroBenchmark() {
+    }
+
+    /**
+     * @param ops       operations per round.
+     * @param operation operation number i.
+     * @return nanoseconds per operation in the fastest round.
+     */
+    public static double nanosPerOp(int ops, IntFunction<Object> operation) {
+        for (int round = 0; round < WARM_UP_ROUNDS; round++) {
+            run(ops, operation);
+        }
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            best = Math.min(best, run(ops, operation));
+        }
+        return best / (double) ops;
+    }
+
+    /**
+     * Prints the time per operation of a case before and after a change.
+     * @param name     name of the case.
+     * @param before   nanoseconds per operation before.
+     * @param after    nanoseconds per operation after.
+     */
+    public static void report(String name, double before, double after) {
+        System.out.printf("%-40s %10.1f ns/op -> %10.1f ns/op (%.1fx)%n", name, before, after, before / after);
+    }
+
+    /**
+     * @return bytes of heap in use after a full collection.
+     */
+    public static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static long run(int ops, IntFunction<Object> operation) {
+        long start = System.nanoTime();
+        Object last = null;
+        for (int i = 0; i < ops; i++) {
+            last = operation.apply(i);
+        }
+        long elapsed = System.nanoTime() - start;
+        sink = last;
+        return elapsed;
+    }
+
+}
@@ -0,0 +1,73 @@
+package fhirspark;
+
+import ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class OutboxTest {
+
+    @TempDir
+    Path directory;
+
+    private final PatientLocks locks = new PatientLocks();
+    private final List<String> replayed = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicBoolean unavailable = new AtomicBoolean(true);
+
+    @Test
+    public void skipsSupersededBundlesTest() throws Exception {
+        Outbox outbox = new Outbox(new WriteJournal(directory, 4096, true), locks, this::replay, 10, 20);
+        outbox.add("mtb", "P1", "1");
+        outbox.add("mtb", "P1", "2");
+        outbox.add("followup", "P1", "3");
+        outbox.add("mtb", "P2", "4");
+        outbox.sent("mtb", "P2");
+        assertTrue(outbox.hasQueued("P1"));
+        unavailable.set(false);
+        awaitReplayed(outbox);
+
+        assertEquals(List.of("mtb:P1:2", "followup:P1:3"), replayed);
+        assertFalse(outbox.hasQueued("P1"));
+        assertEquals(2L, outbox.stats().get("superseded"));
+        outbox.close();
+    }
+
+    @Test
+    public void replaysAfterRestartTest() throws Exception {
+        Outbox outbox = new Outbox(new WriteJournal(directory, 4096, true), locks, this::replay, 10, 20);
+        outbox.add("mtb", "P1", "1");
+        outbox.add("mtb", "P1", "2");
+        outbox.close();
+
+        unavailable.set(false);
+        Outbox restarted = new Outbox(new WriteJournal(directory, 4096, true), locks, this::replay, 10, 20);
+        awaitReplayed(restarted);
+        assertEquals(List.of("mtb:P1:2"), replayed);
+        restarted.close();
+    }
+
+    private void replay(WriteJournal.Entry entry) throws IOException {
+        if (unavailable.get()) {
+            throw BaseServerResponseException.newInstance(503, "Service Unavailable");
+        }
+        replayed.add(entry.getKind() + ":" + entry.getPatientId() + ":" + entry.getPayload());
+    }
+
+    private static void awaitReplayed(Outbox outbox) throws InterruptedException {
+        for (int i = 0; i < 500 && (Integer) outbox.stats().get("patients") > 0; i++) {
+            Thread.sleep(10);
+        }
+    }
+
+}
@@ -0,0 +1,56 @@
+package fhirspark;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PatientCacheTest {
+
+    @Test
+    public void negativeCacheTest() {
+        PatientCache cache = new PatientCache(2, 60000);
+        cache.markEmpty(PatientCache.Kind.MTB, "P1", cache.version());
+        assertTrue(cache.isEmpty(PatientCache.Kind.MTB, "P1"));
+        assertFalse(cache.isEmpty(PatientCache.Kind.FOLLOW_UP, "P1"));
+        cache.invalidate("P1");
+        assertFalse(cache.isEmpty(PatientCache.Kind.MTB, "P1"));
+    }
+
+    @Test
+    public void writeDuringQueryTest() {
+        PatientCache cache = new PatientCache(2, 60000);
+        long version = cache.version();
+        cache.invalidate("P2");
+        cache.markEmpty(PatientCache.Kind.MTB, "P1", version);
+        assertFalse(cache.isEmpty(PatientCache.Kind.MTB, "P1"));
+    }
+
+    @Test
+    public void expiryAndEvictionTest() {
+        PatientCache cache = new PatientCache(2, 0);
+        cache.markEmpty(PatientCache.Kind.MTB, "P1", cache.version());
+        assertFalse(cache.isEmpty(PatientCache.Kind.MTB, "P1"));
+        cache.putLogicalId("P1", "Patient/1");
+        cache.putLogicalId("P2", "Patient/2");
+        cache.putLogicalId("P3", "Patient/3");
+        assertNull(cache.logicalId("P1"));
+        assertEquals("Patient/3", cache.logicalId("P3"));
+    }
+
+    @Test
+    public void logicalIdInvalidationTest() {
+        PatientCache cache = new PatientCache(2, 60000);
+        cache.putLogicalId("P1", "Patient/1");
+        cache.invalidate("P1");
+        assertNull(cache.logicalId("P1"));
+        cache.putLogicalId("P1", "Patient/2");
+        cache.removeLogicalId("P1", "Patient/1");
+        assertEquals("Patient/2", cache.logicalId("P1"));
+        cache.removeLogicalId("P1", "Patient/2");
+        assertNull(cache.logicalId("P1"));
+    }
+
+}
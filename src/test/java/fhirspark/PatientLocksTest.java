@@ -0,0 +1,91 @@
+package fhirspark;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PatientLocksTest {
+
+    private final PatientLocks locks = new PatientLocks();
+
+    @Test
+    public void serializesWritesOfOnePatientTest() throws Exception {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> writes = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            writes.add(executor.submit(() -> {
+                locks.run("P1", () -> {
+                    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    Thread.sleep(10);
+                    running.decrementAndGet();
+                });
+                return null;
+            }));
+        }
+        for (Future<?> write : writes) {
+            write.get();
+        }
+        executor.shutdown();
+        assertEquals(1, maxRunning.get());
+        Map<String, Object> stats = locks.stats();
+        assertEquals(0, stats.get("patients"));
+        assertTrue((Long) stats.get("contended") > 0);
+    }
+
+    @Test
+    public void writesOfOtherPatientsRunInParallelTest() throws Exception {
+        CountDownLatch both = new CountDownLatch(2);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        Future<Boolean> p1 = executor.submit(() -> locks.call("P1", () -> {
+            both.countDown();
+            return both.await(1, TimeUnit.SECONDS);
+        }));
+        Future<Boolean> p2 = executor.submit(() -> locks.call("P2", () -> {
+            both.countDown();
+            return both.await(1, TimeUnit.SECONDS);
+        }));
+        assertTrue(p1.get());
+        assertTrue(p2.get());
+        executor.shutdown();
+    }
+
+    @Test
+    public void givesUpAtDeadlineTest() throws Exception {
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<?> holder = executor.submit(() -> {
+            locks.run("P1", () -> {
+                locked.countDown();
+                done.await();
+            });
+            return null;
+        });
+        locked.await();
+        Deadline.set(Deadline.after(20, () -> false));
+        try {
+            assertThrows(Deadline.ExceededException.class, () -> locks.run("P1", () -> { }));
+        } finally {
+            Deadline.set(null);
+            done.countDown();
+            holder.get();
+            executor.shutdown();
+        }
+        assertEquals(0, locks.stats().get("patients"));
+    }
+
+}
@@ -0,0 +1,95 @@
+package fhirspark;
+
+import ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException;
+import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ResilienceTest {
+
+    private final Bulkhead bulkhead = new Bulkhead("read", 4, 4, 100);
+
+    @Test
+    public void retriesTransientFailuresTest() {
+        Resilience resilience = new Resilience(new CircuitBreaker(5, 1000), 3, 10, 100);
+        AtomicInteger attempts = new AtomicInteger();
+        assertEquals("saved", resilience.call(bulkhead, true, () -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw BaseServerResponseException.newInstance(502, "Bad Gateway");
+            }
+            return "saved";
+        }));
+        assertEquals(2L, resilience.stats().get("retries"));
+
+        attempts.set(0);
+        assertThrows(BaseServerResponseException.class, () -> resilience.call(bulkhead, false, () -> {
+            attempts.incrementAndGet();
+            throw BaseServerResponseException.newInstance(502, "Bad Gateway");
+        }));
+        assertEquals(1, attempts.get());
+
+        attempts.set(0);
+        assertThrows(ResourceNotFoundException.class, () -> resilience.call(bulkhead, true, () -> {
+            attempts.incrementAndGet();
+            throw new ResourceNotFoundException("Patient/1");
+        }));
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    public void retriesTransactionsTest() {
+        Resilience resilience = new Resilience(new CircuitBreaker(5, 1000), 3, 10, 100);
+        AtomicInteger attempts = new AtomicInteger();
+        resilience.retry(true, () -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw BaseServerResponseException.newInstance(503, "Service Unavailable");
+            }
+        });
+        assertEquals(3, attempts.get());
+
+        attempts.set(0);
+        assertThrows(BaseServerResponseException.class, () -> resilience.retry(false, () -> {
+            attempts.incrementAndGet();
+            throw BaseServerResponseException.newInstance(503, "Service Unavailable");
+        }));
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    public void backoffTest() {
+        Resilience resilience = new Resilience(new CircuitBreaker(5, 1000), 10, 100, 1000);
+        for (int i = 0; i < 100; i++) {
+            assertTrue(resilience.backoff(1) <= 100);
+            assertTrue(resilience.backoff(3) <= 400);
+            assertTrue(resilience.backoff(9) <= 1000);
+        }
+    }
+
+    @Test
+    public void circuitBreakerTest() throws InterruptedException {
+        CircuitBreaker breaker = new CircuitBreaker(2, 50);
+        Resilience resilience = new Resilience(breaker, 1, 0, 0);
+        for (int i = 0; i < 2; i++) {
+            assertThrows(BaseServerResponseException.class, () -> resilience.call(bulkhead, true, () -> {
+                throw BaseServerResponseException.newInstance(503, "Service Unavailable");
+            }));
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        AtomicInteger attempts = new AtomicInteger();
+        assertThrows(CircuitBreaker.OpenException.class, () -> resilience.call(bulkhead, true,
+                attempts::incrementAndGet));
+        assertEquals(0, attempts.get());
+
+        Thread.sleep(60);
+        int probe = resilience.call(bulkhead, true, attempts::incrementAndGet);
+        assertEquals(1, probe);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+}
@@ -0,0 +1,136 @@
+package fhirspark;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SaveCoalescerTest {
+
+    @Test
+    public void mergesSavesWithinWindowTest() throws Exception {
+        List<String> written = Collections.synchronizedList(new ArrayList<>());
+        SaveCoalescer<String> coalescer = new SaveCoalescer<>(200, (patientId, payload) -> written.add(payload));
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        Future<?> first = executor.submit(() -> {
+            coalescer.save("P1", "v1");
+            return null;
+        });
+        Thread.sleep(50);
+        Future<?> second = executor.submit(() -> {
+            coalescer.save("P1", "v2");
+            return null;
+        });
+        Future<?> other = executor.submit(() -> {
+            coalescer.save("P2", "w1");
+            return null;
+        });
+        Thread.sleep(50);
+        Future<?> third = executor.submit(() -> {
+            coalescer.save("P1", "v3");
+            return null;
+        });
+        for (Future<?> save : List.of(first, second, third, other)) {
+            save.get();
+        }
+        executor.shutdown();
+        assertEquals(2, written.size());
+        assertTrue(written.contains("v3"));
+        assertTrue(written.contains("w1"));
+        assertEquals(4L, coalescer.stats().get("saves"));
+        assertEquals(2L, coalescer.stats().get("writes"));
+    }
+
+    @Test
+    public void sharesOutcomeTest() throws Exception {
+        SaveCoalescer<String> coalescer = new SaveCoalescer<>(100, (patientId, payload) -> {
+            throw new IOException("FHIR server unavailable");
+        });
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        Future<?> first = executor.submit(() -> {
+            coalescer.save("P1", "v1");
+            return null;
+        });
+        Thread.sleep(20);
+        Future<?> second = executor.submit(() -> {
+            coalescer.save("P1", "v2");
+            return null;
+        });
+        for (Future<?> save : List.of(first, second)) {
+            Exception e = assertThrows(Exception.class, save::get);
+            assertTrue(e.getCause() instanceof IOException);
+        }
+        executor.shutdown();
+        assertEquals(1L, coalescer.stats().get("writes"));
+    }
+
+    @Test
+    public void completesSavesOnErrorTest() throws Exception {
+        SaveCoalescer<String> coalescer = new SaveCoalescer<>(100, (patientId, payload) -> {
+            throw new AssertionError("out of memory");
+        });
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        Future<?> first = executor.submit(() -> {
+            coalescer.save("P1", "v1");
+            return null;
+        });
+        Thread.sleep(20);
+        Future<?> second = executor.submit(() -> {
+            coalescer.save("P1", "v2");
+            return null;
+        });
+        for (Future<?> save : List.of(first, second)) {
+            Exception e = assertThrows(Exception.class, () -> save.get(5, TimeUnit.SECONDS));
+            assertTrue(e.getCause() instanceof AssertionError);
+        }
+        executor.shutdown();
+    }
+
+    @Test
+    public void writesUnderLatestDeadlineTest() throws Exception {
+        AtomicBoolean firstGone = new AtomicBoolean();
+        List<Boolean> sawDisconnect = Collections.synchronizedList(new ArrayList<>());
+        SaveCoalescer<String> coalescer = new SaveCoalescer<>(100, (patientId, payload) -> {
+            Deadline deadline = Deadline.current();
+            sawDisconnect.add(deadline == null || deadline.remainingMillis() < 1000);
+            deadline.check();
+            return true;
+        });
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        Future<Boolean> first = executor.submit(() -> {
+            Deadline.set(Deadline.after(500, firstGone::get));
+            return coalescer.save("P1", "v1");
+        });
+        Thread.sleep(20);
+        Future<Boolean> second = executor.submit(() -> {
+            Deadline.set(Deadline.after(5000, () -> false));
+            return coalescer.save("P1", "v2");
+        });
+        firstGone.set(true);
+        assertTrue(second.get());
+        assertEquals(List.of(false), sawDisconnect);
+        executor.shutdownNow();
+        first.cancel(true);
+    }
+
+    @Test
+    public void disabledTest() throws IOException {
+        List<String> written = new ArrayList<>();
+        SaveCoalescer<String> coalescer = new SaveCoalescer<>(0, (patientId, payload) -> written.add(payload));
+        coalescer.save("P1", "v1");
+        coalescer.save("P1", "v2");
+        assertEquals(List.of("v1", "v2"), written);
+    }
+
+}
@@ -0,0 +1,130 @@
+package fhirspark;
+
+import org.junit.jupiter.api.Test;
+import spark.Service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class StartupTest {
+
+    private static final long TIMEOUT = 5;
+
+    @Test
+    public void runsPhasesAfterDependenciesTest() throws InterruptedException {
+        Startup startup = new Startup();
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch ready = new CountDownLatch(1);
+        Startup.Phase a = startup.phase("a", () -> sleepAndRecord(order, "a"));
+        Startup.Phase b = startup.phase("b", () -> order.add("b"));
+        startup.phase("c", () -> order.add("c"), a, b);
+        startup.whenReady(ready::countDown);
+
+        assertTrue(ready.await(TIMEOUT, TimeUnit.SECONDS));
+        assertTrue(startup.isReady());
+        assertEquals("c", order.get(2));
+        assertTrue(order.indexOf("a") < order.indexOf("c"));
+        assertEquals(List.of("done", "done", "done"), states(startup));
+    }
+
+    @Test
+    public void reportsFailedPhaseTest() throws InterruptedException {
+        Startup startup = new Startup();
+        Startup.Phase failing = startup.phase("failing", () -> {
+            throw new IllegalStateException("no database");
+        });
+        Startup.Phase dependent = startup.phase("dependent", () -> { }, failing);
+        Startup.Phase error = startup.phase("error", () -> {
+            throw new AssertionError("out of memory");
+        });
+        awaitState(dependent, "skipped");
+        awaitState(error, "failed");
+
+        assertEquals("failed", failing.getState());
+        assertFalse(startup.isReady());
+        assertEquals(List.of("failed", "skipped", "failed"), states(startup));
+    }
+
+    @Test
+    public void gatesRequestsUntilReadyTest() throws IOException, InterruptedException {
+        Startup startup = new Startup();
+        CountDownLatch release = new CountDownLatch(1);
+        startup.phase("slow", () -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        Service http = Service.ignite().port(port);
+        http.get("/ready", FhirSpark.readiness(startup));
+        http.before(FhirSpark.readinessGate(startup));
+        http.get("/mtb/:patientId", (req, res) -> "{}");
+        http.awaitInitialization();
+        try {
+            HttpURLConnection gated = request(port, "/mtb/P1");
+            assertEquals(503, gated.getResponseCode());
+            assertEquals("1", gated.getHeaderField("Retry-After"));
+            assertEquals(503, request(port, "/ready").getResponseCode());
+
+            CountDownLatch ready = new CountDownLatch(1);
+            startup.whenReady(ready::countDown);
+            release.countDown();
+            assertTrue(ready.await(TIMEOUT, TimeUnit.SECONDS));
+            assertEquals(200, request(port, "/mtb/P1").getResponseCode());
+            assertEquals(200, request(port, "/ready").getResponseCode());
+        } finally {
+            http.stop();
+            http.awaitStop();
+        }
+    }
+
+    private static HttpURLConnection request(int port, String path) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) URI.create("http://localhost:" + port + path).toURL()
+                .openConnection();
+        connection.getResponseCode();
+        return connection;
+    }
+
+    private static void sleepAndRecord(List<String> order, String name) {
+        try {
+            Thread.sleep(50);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        order.add(name);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Object> states(Startup startup) {
+        List<Object> states = new ArrayList<>();
+        for (Map<String, Object> phase : (List<Map<String, Object>>) startup.status().get("phases")) {
+            states.add(phase.get("state"));
+        }
+        return states;
+    }
+
+    private static void awaitState(Startup.Phase phase, String state) throws InterruptedException {
+        for (int i = 0; i < 250 && !state.equals(phase.getState()); i++) {
+            Thread.sleep(20);
+        }
+        assertEquals(state, phase.getState());
+    }
+
+}
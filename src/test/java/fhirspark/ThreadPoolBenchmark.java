@@ -0,0 +1,147 @@
+package fhirspark;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures the throughput of GET /mtb/:patientId with many concurrent clients against a FHIR stand-in that answers
+ * every search after a fixed delay. The read bulkhead is opened to the number of clients, so the request threads are
+ * the limit under test. Not run by surefire, start it once per server mode, e.g.
+ *
+ * <pre>
+ * java -cp target/test-classes:target/classes:... fhirspark.ThreadPoolBenchmark virtual 256 30
+ * java -cp target/test-classes:target/classes:... fhirspark.ThreadPoolBenchmark platform 256 30
+ * </pre>
+ */
+public final class ThreadPoolBenchmark {
+
+    private static final int PORT = 3099;
+    private static final int FHIR_DELAY = 200;
+    private static final String CAPABILITY_STATEMENT = "{\"resourceType\":\"CapabilityStatement\","
+            + "\"status\":\"active\",\"date\":\"2024-01-01\","
+            + "\"kind\":\"instance\",\"fhirVersion\":\"4.0.1\",\"format\":[\"json\"]}";
+    private static final String EMPTY_BUNDLE = "{\"resourceType\":\"Bundle\",\"type\":\"searchset\",\"total\":0}";
+
+    private ThreadPoolBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        boolean virtual = args.length < 1 || "virtual".equals(args[0]);
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : 256;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+
+        // the stand-in closes keep-alive connections beyond this many idle ones, which the FHIR client would only
+        // notice when it reuses them
+        System.setProperty("sun.net.httpserver.maxIdleConnections", String.valueOf(clients));
+        HttpServer fhir = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        fhir.setExecutor(Executors.newCachedThreadPool());
+        fhir.createContext("/fhir", exchange -> {
+            if (exchange.getRequestURI().getPath().endsWith("/metadata")) {
+                respond(exchange, CAPABILITY_STATEMENT);
+                return;
+            }
+            try {
+                Thread.sleep(FHIR_DELAY);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            respond(exchange, EMPTY_BUNDLE);
+        });
+        fhir.start();
+
+        String yaml = Files.readString(Paths.get("src/main/resources/settings.yaml"))
+                .replaceAll("\\$\\{[A-Z_]+:-([^}]*)}", "$1")
+                .replaceFirst("port: .*", "port: " + PORT)
+                .replaceFirst("virtualThreads: .*", "virtualThreads: " + virtual)
+                .replaceFirst("poolMaxTotal: .*", "poolMaxTotal: " + clients)
+                .replaceFirst("poolMaxPerRoute: .*", "poolMaxPerRoute: " + clients)
+                .replaceFirst("warmUp: .*", "warmUp: false")
+                .replaceFirst("adaptive: .*", "adaptive: false")
+                .replaceFirst("(read:\\s+maxConcurrent: ).*", "$1" + clients)
+                .replaceFirst("(read:\\s+maxConcurrent: .*\\s+maxQueue: ).*", "$1" + clients)
+                .replaceFirst("fhirDbBase: .*",
+                        "fhirDbBase: http://localhost:" + fhir.getAddress().getPort() + "/fhir");
+        Path settings = Files.createTempFile("fhirspark-benchmark", ".yaml");
+        Files.writeString(settings, yaml);
+        FhirSpark.main(new String[] {settings.toString()});
+
+        HttpClient http = HttpClient.newBuilder().executor(Executors.newVirtualThreadPerTaskExecutor()).build();
+        while (http.send(request("/ready"), HttpResponse.BodyHandlers.discarding()).statusCode() != 200) {
+            Thread.sleep(100);
+        }
+
+        AtomicInteger patients = new AtomicInteger();
+        AtomicInteger errors = new AtomicInteger();
+        List<Long> latencies = Collections.synchronizedList(new ArrayList<>());
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        try (ExecutorService load = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < clients; i++) {
+                load.submit(() -> {
+                    while (System.nanoTime() < end) {
+                        long start = System.nanoTime();
+                        try {
+                            HttpResponse<Void> response = http.send(request("/mtb/benchmark"
+                                    + patients.incrementAndGet()), HttpResponse.BodyHandlers.discarding());
+                            if (response.statusCode() == 200) {
+                                latencies.add(System.nanoTime() - start);
+                            } else {
+                                errors.incrementAndGet();
+                            }
+                        } catch (IOException e) {
+                            errors.incrementAndGet();
+                        }
+                    }
+                    return null;
+                });
+            }
+        }
+
+        List<Long> sorted = new ArrayList<>(latencies);
+        Collections.sort(sorted);
+        System.out.printf("%s threads, %d clients, %d ms FHIR latency: %.1f requests/s, p50 %d ms, p99 %d ms,"
+                + " %d errors%n", virtual ? "virtual" : "platform", clients, FHIR_DELAY,
+                sorted.size() / (double) seconds, millis(sorted, 50), millis(sorted, 99), errors.get());
+        fhir.stop(0);
+        System.exit(0);
+    }
+
+    private static HttpRequest request(String path) {
+        return HttpRequest.newBuilder(URI.create("http://localhost:" + PORT + path)).build();
+    }
+
+    private static long millis(List<Long> sorted, int percentile) {
+        if (sorted.isEmpty()) {
+            return 0;
+        }
+        return TimeUnit.NANOSECONDS.toMillis(sorted.get((sorted.size() - 1) * percentile / 100));
+    }
+
+    private static void respond(HttpExchange exchange, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/fhir+json");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+}
@@ -0,0 +1,40 @@
+package fhirspark;
+
+import fhirspark.resolver.HgncGeneName;
+import fhirspark.settings.ConfigurationLoader;
+import fhirspark.settings.Settings;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.SocketTimeoutException;
+
+/**
+ * Warms up against a FHIR server that counts the connections it receives.
+ */
+public class WarmUpTest {
+
+    @Test
+    public void warmsUpOfflineTest() throws IOException {
+        try (ServerSocket server = new ServerSocket(0)) {
+            Settings settings = new ConfigurationLoader()
+                    .loadConfiguration(new FileInputStream("src/main/resources/settings.yaml"), Settings.class);
+            settings.setFhirDbBase("http://localhost:" + server.getLocalPort() + "/fhir");
+            HgncGeneName.initialize(settings.getHgncPath());
+            JsonFhirMapper jfm = new JsonFhirMapper(settings);
+            long version = jfm.getPatientCache().version();
+
+            assertTrue(jfm.warmUp());
+            assertEquals(version, jfm.getPatientCache().version());
+            server.setSoTimeout(100);
+            assertThrows(SocketTimeoutException.class, server::accept);
+        }
+    }
+
+}
@@ -0,0 +1,113 @@
+package fhirspark;
+
+import ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class WriteBehindTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void appliesInOrderPerPatientTest() throws IOException {
+        List<String> applied = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger unavailable = new AtomicInteger(2);
+        WriteBehind writeBehind = new WriteBehind(new WriteJournal(directory, 4096, false), entry -> {
+            if ("P1".equals(entry.getPatientId()) && unavailable.getAndDecrement() > 0) {
+                throw BaseServerResponseException.newInstance(503, "Service Unavailable");
+            }
+            if ("invalid".equals(entry.getPayload())) {
+                throw new IllegalArgumentException("Invalid patientId!");
+            }
+            applied.add(entry.getPatientId() + ":" + entry.getPayload());
+            return WriteBehind.State.APPLIED;
+        }, 10);
+        long first = writeBehind.submit("mtb", "P1", "1");
+        writeBehind.submit("mtb", "P1", "2");
+        long invalid = writeBehind.submit("mtb", "P2", "invalid");
+        writeBehind.submit("mtb", "P2", "3");
+        assertTrue(writeBehind.drain(5000));
+
+        List<String> p1 = new ArrayList<>(applied);
+        p1.removeIf(write -> !write.startsWith("P1"));
+        assertEquals(List.of("P1:1", "P1:2"), p1);
+        assertTrue(applied.contains("P2:3"));
+        assertEquals("applied", writeBehind.status(first).get("state"));
+        assertEquals("failed", writeBehind.status(invalid).get("state"));
+        assertEquals(2L, writeBehind.stats().get("retries"));
+    }
+
+    @Test
+    public void outboxStateTest() throws IOException {
+        WriteBehind writeBehind = new WriteBehind(new WriteJournal(directory, 4096, false),
+                entry -> WriteBehind.State.OUTBOX, 10);
+        long id = writeBehind.submit("mtb", "P1", "1");
+        assertTrue(writeBehind.drain(5000));
+        assertEquals("outbox", writeBehind.status(id).get("state"));
+        assertEquals(1L, writeBehind.stats().get("outbox"));
+    }
+
+    @Test
+    public void unexpectedFailureTest() throws IOException {
+        List<String> applied = Collections.synchronizedList(new ArrayList<>());
+        WriteBehind writeBehind = new WriteBehind(new WriteJournal(directory, 4096, false), entry -> {
+            if ("broken".equals(entry.getPayload())) {
+                throw new NullPointerException();
+            }
+            applied.add(entry.getPayload());
+            return WriteBehind.State.APPLIED;
+        }, 10);
+        long broken = writeBehind.submit("mtb", "P1", "broken");
+        writeBehind.submit("mtb", "P1", "1");
+        assertTrue(writeBehind.drain(5000));
+
+        assertEquals(List.of("1"), applied);
+        assertEquals("failed", writeBehind.status(broken).get("state"));
+        assertFalse(writeBehind.hasQueued("P1"));
+    }
+
+    @Test
+    public void backoffTest() throws IOException {
+        WriteBehind writeBehind = new WriteBehind(new WriteJournal(directory, 4096, false), entry -> WriteBehind.State.APPLIED, 100,
+                1000);
+        for (int i = 0; i < 10; i++) {
+            long first = writeBehind.backoff(1);
+            assertTrue(first >= 50 && first <= 100);
+            long capped = writeBehind.backoff(64);
+            assertTrue(capped >= 500 && capped <= 1000);
+        }
+        writeBehind.drain(0);
+    }
+
+    @Test
+    public void replaysAfterRestartTest() throws IOException {
+        WriteBehind unavailable = new WriteBehind(new WriteJournal(directory, 4096, false), entry -> {
+            throw BaseServerResponseException.newInstance(503, "Service Unavailable");
+        }, 10);
+        unavailable.submit("followup", "P1", "1");
+        assertFalse(unavailable.drain(1000));
+
+        List<String> applied = Collections.synchronizedList(new ArrayList<>());
+        WriteBehind restarted = new WriteBehind(new WriteJournal(directory, 4096, false),
+                entry -> {
+                    applied.add(entry.getKind() + ":" + entry.getPatientId() + ":" + entry.getPayload());
+                    return WriteBehind.State.APPLIED;
+                }, 10);
+        assertTrue(restarted.drain(5000));
+        assertEquals(List.of("followup:P1:1"), applied);
+    }
+
+}
@@ -0,0 +1,91 @@
+package fhirspark;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class WriteJournalTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void recoversWritesNotAppliedTest() throws IOException {
+        try (WriteJournal journal = new WriteJournal(directory, 1024, false)) {
+            long first = journal.append("mtb", "P1", "{\"mtbs\":[1]}").getSeq();
+            journal.append("followup", "P2", "{\"followUps\":[]}");
+            journal.append("mtb", "P1", "{\"mtbs\":[2]}");
+            journal.applied(first);
+            assertEquals(2, journal.pending());
+        }
+        try (WriteJournal journal = new WriteJournal(directory, 1024, false)) {
+            List<WriteJournal.Entry> recovered = journal.recovered();
+            assertEquals(2, recovered.size());
+            assertEquals("P2", recovered.get(0).getPatientId());
+            assertEquals("{\"mtbs\":[2]}", recovered.get(1).getPayload());
+            long next = journal.append("mtb", "P3", "{}").getSeq();
+            assertEquals(recovered.get(1).getSeq() + 1, next);
+        }
+    }
+
+    @Test
+    public void deletesAppliedSegmentsTest() throws IOException {
+        try (WriteJournal journal = new WriteJournal(directory, 256, false)) {
+            for (int i = 0; i < 20; i++) {
+                journal.applied(journal.append("mtb", "P1", "{\"mtbs\":[" + i + "]}").getSeq());
+            }
+            assertEquals(0, journal.pending());
+            assertEquals(1, journal.segmentCount());
+            assertEquals(1, files());
+        }
+    }
+
+    @Test
+    public void ignoresTornRecordTest() throws IOException {
+        try (WriteJournal journal = new WriteJournal(directory, 1024, false)) {
+            journal.append("mtb", "P1", "{\"mtbs\":[1]}");
+            journal.append("mtb", "P1", "{\"mtbs\":[2]}");
+        }
+        try (Stream<Path> files = Files.list(directory); RandomAccessFile file = new RandomAccessFile(
+                files.findFirst().get().toFile(), "rw")) {
+            // corrupt the body of the second record
+            long second = Integer.BYTES * 2L + file.readInt();
+            file.seek(second + Integer.BYTES * 2 + 1);
+            file.write(0xFF);
+        }
+        try (WriteJournal journal = new WriteJournal(directory, 1024, false)) {
+            assertEquals(1, journal.recovered().size());
+        }
+    }
+
+    @Test
+    public void deflatesPayloadTest() throws IOException {
+        String payload = "{\"resourceType\":\"Bundle\",\"entry\":[" + "{\"resource\":{}},".repeat(100) + "{}]}";
+        try (WriteJournal journal = new WriteJournal(directory, 1024, true)) {
+            journal.append("mtb", "P1", payload);
+        }
+        try (WriteJournal journal = new WriteJournal(directory, 1024, true)) {
+            assertEquals(payload, journal.recovered().get(0).getPayload());
+        }
+        try (Stream<Path> files = Files.list(directory); RandomAccessFile file = new RandomAccessFile(
+                files.findFirst().get().toFile(), "r")) {
+            assertTrue(file.readInt() < payload.length() / 2);
+        }
+    }
+
+    private long files() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+
+}
@@ -0,0 +1,116 @@
+package fhirspark.adapter;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.rest.client.api.IGenericClient;
+import ca.uhn.fhir.rest.client.api.ServerValidationModeEnum;
+import ca.uhn.fhir.rest.gclient.TokenClientParam;
+import com.sun.net.httpserver.HttpServer;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Enumerations.AdministrativeGender;
+import org.hl7.fhir.r4.model.Practitioner;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@TestInstance(Lifecycle.PER_CLASS)
+public class IdentifierLookupTest {
+
+    FhirContext ctx = FhirContext.forR4();
+    HttpServer server;
+    IGenericClient client;
+    AtomicLong bytes = new AtomicLong();
+    List<String> queries = new ArrayList<>();
+
+    @BeforeAll
+    public void prepare() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/fhir/Practitioner", exchange -> {
+            String query = exchange.getRequestURI().getRawQuery();
+            queries.add(query);
+            Bundle bundle = new Bundle().setType(Bundle.BundleType.SEARCHSET);
+            if (!query.contains("_id=unknown")) {
+                bundle.addEntry().setResource(query.contains("_elements=identifier") ? projected() : full());
+            }
+            byte[] body = ctx.newJsonParser().encodeResourceToString(bundle).getBytes(StandardCharsets.UTF_8);
+            bytes.addAndGet(body.length);
+            exchange.getResponseHeaders().set("Content-Type", "application/fhir+json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        ctx.getRestfulClientFactory().setServerValidationMode(ServerValidationModeEnum.NEVER);
+        client = ctx.newRestfulGenericClient("http://localhost:" + server.getAddress().getPort() + "/fhir");
+    }
+
+    @AfterAll
+    public void shutdown() {
+        server.stop(0);
+    }
+
+    @BeforeEach
+    public void reset() {
+        bytes.set(0);
+        queries.clear();
+    }
+
+    @Test
+    public void identifierValueTest() {
+        assertEquals("anonymousUser1", IdentifierLookup.identifierValue(client, Practitioner.class, "Practitioner/1",
+                Practitioner::getIdentifierFirstRep));
+        assertEquals(1, queries.size());
+        assertTrue(queries.get(0).contains("_elements=identifier"));
+        assertNull(IdentifierLookup.identifierValue(client, Practitioner.class, "unknown",
+                Practitioner::getIdentifierFirstRep));
+    }
+
+    @Test
+    public void transfersOnlyIdentifierTest() {
+        client.search().forResource(Practitioner.class)
+                .where(new TokenClientParam("_id").exactly().code("Practitioner/1")).execute();
+        long full = bytes.getAndSet(0);
+        IdentifierLookup.identifierValue(client, Practitioner.class, "Practitioner/1",
+                Practitioner::getIdentifierFirstRep);
+        long projected = bytes.get();
+        assertTrue(projected * 2 < full);
+    }
+
+    private static Practitioner projected() {
+        Practitioner practitioner = new Practitioner();
+        practitioner.setId("1");
+        practitioner.addIdentifier().setSystem("https://cbioportal.org/patient/").setValue("anonymousUser1");
+        return practitioner;
+    }
+
+    private static Practitioner full() {
+        Practitioner practitioner = projected();
+        practitioner.addName().setFamily("Anonymous").addGiven("User").addPrefix("Dr. med.");
+        practitioner.addTelecom().setValue("+49 451 00000000");
+        practitioner.addTelecom().setValue("anonymous.user@example.org");
+        practitioner.addAddress().addLine("Ratzeburger Allee 160").setCity("Luebeck").setPostalCode("23538")
+                .setCountry("DE");
+        practitioner.setGender(AdministrativeGender.UNKNOWN);
+        practitioner.getText().setDivAsString("<div xmlns=\"http://www.w3.org/1999/xhtml\">Dr. med. Anonymous User, "
+                + "Ratzeburger Allee 160, 23538 Luebeck</div>");
+        practitioner.addQualification().getCode().setText("Molecular tumor board member");
+        return practitioner;
+    }
+
+}
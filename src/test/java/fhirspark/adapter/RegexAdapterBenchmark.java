@@ -0,0 +1,59 @@
+package fhirspark.adapter;
+
+import fhirspark.MicroBenchmark;
+import fhirspark.settings.Regex;
+
+import java.util.List;
+import java.util.function.IntFunction;
+
+/**
+ * Compares the sample id translation of {@link RegexAdapter} with running String.replaceAll per rule, as it was
+ * done before the rules were compiled. Not run by surefire, start it with
+ *
+ * <pre>
+ * java -cp target/test-classes:target/classes:... fhirspark.adapter.RegexAdapterBenchmark
+ * </pre>
+ */
+public final class RegexAdapterBenchmark {
+
+    private static final int OPS = 200000;
+    private static final int SAMPLES = 500;
+
+    private RegexAdapterBenchmark() {
+    }
+
+    public static void main(String[] args) {
+        String[] recurring = new String[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            recurring[i] = "H2021/" + (10000 + i) + "/01";
+        }
+        run("default rule /, recurring ids", List.of(regex("/", "/")), i -> recurring[i % SAMPLES]);
+        run("single character rule, recurring ids", List.of(regex("_", "/")), i -> recurring[i % SAMPLES]);
+        run("single character rule, distinct ids", List.of(regex("_", "/")), i -> "H2021/" + i + "/01");
+        run("pattern rules, distinct ids", List.of(regex("S$1", "^P(\\d+)"), regex("-", "\\.")),
+                i -> "P" + i + ".4");
+    }
+
+    private static void run(String name, List<Regex> rules, IntFunction<String> input) {
+        double before = MicroBenchmark.nanosPerOp(OPS, i -> replaceAll(rules, input.apply(i)));
+        double after = MicroBenchmark.nanosPerOp(OPS, i -> RegexAdapter.applyRegexToCbioportal(rules,
+                input.apply(i)));
+        MicroBenchmark.report(name, before, after);
+    }
+
+    private static String replaceAll(List<Regex> rules, String input) {
+        String output = input;
+        for (Regex r : rules) {
+            output = output.replaceAll(r.getHis(), r.getCbio());
+        }
+        return output;
+    }
+
+    private static Regex regex(String cbio, String his) {
+        Regex r = new Regex();
+        r.setCbio(cbio);
+        r.setHis(his);
+        return r;
+    }
+
+}
@@ -0,0 +1,57 @@
+package fhirspark.adapter;
+
+import fhirspark.settings.Regex;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+
+public class RegexAdapterTest {
+
+    private static Regex regex(String cbio, String his) {
+        Regex r = new Regex();
+        r.setCbio(cbio);
+        r.setHis(his);
+        return r;
+    }
+
+    @Test
+    public void singleCharacterRuleTest() {
+        List<Regex> rules = List.of(regex("_", "/"));
+        assertEquals("H2020_12345_01", RegexAdapter.applyRegexToCbioportal(rules, "H2020/12345/01"));
+        assertEquals("H2020/12345/01", RegexAdapter.applyRegexFromCbioportal(rules, "H2020_12345_01"));
+    }
+
+    @Test
+    public void literalRuleTest() {
+        List<Regex> rules = List.of(regex("--", "::"));
+        assertEquals("a--b--c", RegexAdapter.applyRegexToCbioportal(rules, "a::b::c"));
+        assertEquals("a::b::c", RegexAdapter.applyRegexFromCbioportal(rules, "a--b--c"));
+    }
+
+    @Test
+    public void patternRuleMatchesReplaceAllTest() {
+        List<Regex> rules = List.of(regex("S$1", "^P(\\d+)"), regex("-", "\\."), regex("x", "ab?c"));
+        for (String input : List.of("P123.4", "Q123.4", "P1.2.3ac", "abc", "noMatch", "")) {
+            String expected = input;
+            for (Regex r : rules) {
+                expected = expected.replaceAll(r.getHis(), r.getCbio());
+            }
+            assertEquals(expected, RegexAdapter.applyRegexToCbioportal(rules, input));
+            assertEquals(expected, RegexAdapter.applyRegexToCbioportal(rules, input));
+        }
+    }
+
+    @Test
+    public void translatesBeyondMemoSizeTest() {
+        List<Regex> rules = List.of(regex("_", "/"));
+        for (int round = 0; round < 2; round++) {
+            for (int i = 0; i < 3000; i++) {
+                assertEquals("H_" + i, RegexAdapter.applyRegexToCbioportal(rules, "H/" + i));
+            }
+        }
+    }
+
+}
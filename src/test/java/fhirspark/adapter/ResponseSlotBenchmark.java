@@ -0,0 +1,89 @@
+package fhirspark.adapter;
+
+import fhirspark.MicroBenchmark;
+import fhirspark.definitions.ResponseEnum;
+import fhirspark.restmodel.ResponseCriteria;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares the {@link ResponseSlot} table with the reflective setter lookup of FollowUpAdapter.toJson and the
+ * parallel tag and value lists of fromJson it replaced. Not run by surefire, start it with
+ *
+ * <pre>
+ * java -cp target/test-classes:target/classes:... fhirspark.adapter.ResponseSlotBenchmark
+ * </pre>
+ */
+public final class ResponseSlotBenchmark {
+
+    private static final int OPS = 200000;
+    private static final String[] MONTHS = {"3", "6", "12"};
+    private static final double NUM_OF_RESP = 4.0;
+
+    private ResponseSlotBenchmark() {
+    }
+
+    public static void main(String[] args) {
+        ResponseSlot[] slots = ResponseSlot.values();
+        MicroBenchmark.report("toJson: set flag from tag",
+                MicroBenchmark.nanosPerOp(OPS, i -> setReflective(slots[i % slots.length].getTag())),
+                MicroBenchmark.nanosPerOp(OPS, i -> setSlot(slots[i % slots.length].getTag())));
+
+        ResponseCriteria criteria = new ResponseCriteria();
+        criteria.setPd3(true);
+        criteria.setSd6(true);
+        criteria.setCr12(true);
+        MicroBenchmark.report("fromJson: codings of set flags",
+                MicroBenchmark.nanosPerOp(OPS, i -> codingsFromLists(criteria)),
+                MicroBenchmark.nanosPerOp(OPS, i -> codingsFromSlots(criteria)));
+    }
+
+    private static ResponseCriteria setReflective(String tag) {
+        ResponseCriteria criteria = new ResponseCriteria();
+        try {
+            ResponseCriteria.class.getDeclaredMethod("set" + tag, Boolean.class).invoke(criteria, true);
+        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException(e);
+        }
+        return criteria;
+    }
+
+    private static ResponseCriteria setSlot(String tag) {
+        ResponseCriteria criteria = new ResponseCriteria();
+        ResponseSlot.fromTag(tag).set(criteria, true);
+        return criteria;
+    }
+
+    private static List<Object> codingsFromLists(ResponseCriteria response) {
+        List<String> responseTags = new ArrayList<>();
+        List<Boolean> responseValues = new ArrayList<>();
+        for (ResponseSlot slot : ResponseSlot.values()) {
+            responseTags.add(slot.getTag());
+            responseValues.add(slot.isSet(response));
+        }
+        List<Object> codings = new ArrayList<>();
+        for (int i = 0; i < responseTags.size(); i++) {
+            if (!responseValues.get(i)) {
+                continue;
+            }
+            codings.add(ResponseEnum.valueOf(responseTags.get(i).substring(0, 2).toUpperCase()).toCoding());
+            codings.add(Integer.valueOf(MONTHS[(int) Math.floor(i / NUM_OF_RESP)]));
+        }
+        return codings;
+    }
+
+    private static List<Object> codingsFromSlots(ResponseCriteria response) {
+        List<Object> codings = new ArrayList<>();
+        for (ResponseSlot slot : ResponseSlot.values()) {
+            if (!slot.isSet(response)) {
+                continue;
+            }
+            codings.add(slot.getResponse().toCoding());
+            codings.add(slot.getMonths());
+        }
+        return codings;
+    }
+
+}
@@ -0,0 +1,63 @@
+package fhirspark.adapter;
+
+import fhirspark.definitions.ResponseEnum;
+import fhirspark.restmodel.ResponseCriteria;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+public class ResponseSlotTest {
+
+    /**
+     * Tags in the order the response observations were written before the slot table.
+     */
+    private static final List<String> TAGS = List.of("Pd3", "Pr3", "Cr3", "Sd3", "Pd6", "Pr6", "Cr6", "Sd6",
+            "Pd12", "Pr12", "Cr12", "Sd12");
+    private static final String[] MONTHS = {"3", "6", "12"};
+    private static final double NUM_OF_RESP = 4.0;
+
+    @Test
+    public void matchesReflectiveMappingTest() throws Exception {
+        ResponseSlot[] slots = ResponseSlot.values();
+        assertEquals(TAGS.size(), slots.length);
+        for (int i = 0; i < slots.length; i++) {
+            String tag = TAGS.get(i);
+            ResponseSlot slot = slots[i];
+            assertEquals(tag, slot.getTag());
+            assertEquals(slot, ResponseSlot.fromTag(tag));
+            assertEquals(ResponseEnum.valueOf(tag.substring(0, 2).toUpperCase()), slot.getResponse());
+            assertEquals(Integer.valueOf(MONTHS[(int) Math.floor(i / NUM_OF_RESP)]), slot.getMonths());
+
+            ResponseCriteria reflective = new ResponseCriteria();
+            ResponseCriteria.class.getDeclaredMethod("set" + tag, Boolean.class).invoke(reflective, true);
+            ResponseCriteria table = new ResponseCriteria();
+            slot.set(table, true);
+            for (ResponseSlot other : slots) {
+                Object expected = ResponseCriteria.class.getDeclaredMethod("get" + other.getTag()).invoke(reflective);
+                assertEquals(expected, other.isSet(table), tag + " sets " + other.getTag());
+            }
+        }
+    }
+
+    @Test
+    public void unknownTagTest() {
+        assertNull(ResponseSlot.fromTag("pd3"));
+        assertNull(ResponseSlot.fromTag("Xx3"));
+    }
+
+    @Test
+    public void nullFlagIsNotSetTest() {
+        ResponseCriteria criteria = new ResponseCriteria();
+        criteria.setSd6(null);
+        criteria.setPr12(true);
+        assertFalse(ResponseSlot.SD6.isSet(criteria));
+        assertTrue(ResponseSlot.PR12.isSet(criteria));
+    }
+
+}
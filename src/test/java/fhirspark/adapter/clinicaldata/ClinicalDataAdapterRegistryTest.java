@@ -0,0 +1,90 @@
+package fhirspark.adapter.clinicaldata;
+
+import ca.uhn.fhir.rest.client.api.IGenericClient;
+import fhirspark.restmodel.ClinicalDatum;
+import fhirspark.settings.Regex;
+import org.hl7.fhir.r4.model.Observation;
+import org.hl7.fhir.r4.model.Reference;
+import org.hl7.fhir.r4.model.Resource;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Collection;
+import java.util.List;
+
+public class ClinicalDataAdapterRegistryTest {
+
+    private static final String AGE = "AGE";
+    private static final String AGE_CODE = "30525-0";
+
+    @Test
+    public void registersGenericAdapterTest() {
+        assertTrue(ClinicalDataAdapterRegistry.registered().stream().anyMatch(GenericAdapter.class::isInstance));
+        assertTrue(ClinicalDataAdapterRegistry.registered().contains(ClinicalDataAdapterRegistry.generic()));
+    }
+
+    @Test
+    public void dispatchesByAttributeIdTest() {
+        assertInstanceOf(AgeAdapter.class, ClinicalDataAdapterRegistry.resolve(AGE));
+        assertSame(ClinicalDataAdapterRegistry.generic(), ClinicalDataAdapterRegistry.resolve("OS_STATUS"));
+        assertSame(ClinicalDataAdapterRegistry.generic(), ClinicalDataAdapterRegistry.resolve((String) null));
+    }
+
+    @Test
+    public void dispatchesByObservationTest() {
+        ClinicalDatum age = new ClinicalDatum().withAttributeId(AGE).withAttributeName("Age").withValue("42");
+        Observation ageObservation = (Observation) ClinicalDataAdapterRegistry.resolve(AGE).fromJson(age);
+        assertInstanceOf(AgeAdapter.class, ClinicalDataAdapterRegistry.resolve(ageObservation));
+        assertEquals("42", ClinicalDataAdapterRegistry.resolve(ageObservation)
+                .toJson(List.of(), ageObservation, null).getValue());
+
+        ClinicalDatum status = new ClinicalDatum().withAttributeId("OS_STATUS").withAttributeName("Status")
+                .withValue("LIVING");
+        Observation statusObservation = (Observation) ClinicalDataAdapterRegistry.resolve("OS_STATUS")
+                .fromJson(status);
+        assertSame(ClinicalDataAdapterRegistry.generic(), ClinicalDataAdapterRegistry.resolve(statusObservation));
+        assertEquals("LIVING", ClinicalDataAdapterRegistry.resolve(statusObservation)
+                .toJson(List.of(), statusObservation, null).getValue());
+    }
+
+    /**
+     * Attribute specific adapter, registered in the test resources.
+     */
+    public static final class AgeAdapter implements ClinicalDataAdapter {
+
+        @Override
+        public Resource fromJson(ClinicalDatum clinicalData) {
+            Observation obs = new Observation();
+            obs.getCode().addCoding().setSystem("http://loinc.org").setCode(AGE_CODE);
+            obs.getValueStringType().setValue(clinicalData.getValue());
+            return obs;
+        }
+
+        @Override
+        public Resource fromJson(ClinicalDatum clinicalData, Reference specimen) {
+            return ((Observation) fromJson(clinicalData)).setSpecimen(specimen);
+        }
+
+        @Override
+        public ClinicalDatum toJson(List<Regex> regex, Observation fhirResource, IGenericClient client) {
+            return new ClinicalDatum().withAttributeId(AGE).withValue(fhirResource.getValueStringType().getValue());
+        }
+
+        @Override
+        public Collection<String> getAttributeIds() {
+            return List.of(AGE);
+        }
+
+        @Override
+        public boolean accepts(Observation fhirResource) {
+            return AGE_CODE.equals(fhirResource.getCode().getCodingFirstRep().getCode());
+        }
+
+    }
+
+}
@@ -0,0 +1,45 @@
+package fhirspark.definitions;
+
+import org.hl7.fhir.r4.model.Coding;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class TerminologyTest {
+
+    @Test
+    public void resolvesEveryConceptTest() {
+        for (LoincEnum e : LoincEnum.values()) {
+            assertEquals(e, Terminology.fromCoding(e.toCoding()));
+            assertEquals(e, Terminology.fromCoding(e.toCoding(), LoincEnum.class));
+        }
+        for (ResponseEnum e : ResponseEnum.values()) {
+            assertEquals(e, Terminology.fromCoding(e.toCoding()));
+            assertEquals(e, Terminology.fromSystemAndCode(e.getSystem(), e.getCode()));
+        }
+    }
+
+    @Test
+    public void resolvesCodeWithoutSystemTest() {
+        Coding coding = new Coding(null, LoincEnum.COPY_NUMBER_GAIN.getCode(), null);
+        assertEquals(LoincEnum.COPY_NUMBER_GAIN, Terminology.fromCoding(coding));
+        assertEquals(LoincEnum.COPY_NUMBER_GAIN, Terminology.fromCoding(coding, LoincEnum.class));
+    }
+
+    @Test
+    public void resolvesCodeSystemTest() {
+        Coding gene = new Coding(UriEnum.NCBI_GENE.getUri(), "672", "BRCA1");
+        assertEquals(UriEnum.NCBI_GENE, Terminology.fromCoding(gene, UriEnum.class));
+        assertNull(Terminology.fromCoding(gene, LoincEnum.class));
+        assertNull(Terminology.fromCoding(gene));
+    }
+
+    @Test
+    public void keepsTypeOfLookupTest() {
+        Coding coding = LoincEnum.GENE_STUDIED.toCoding();
+        assertNull(Terminology.fromCoding(coding, SnomedEnum.class));
+        assertNull(Terminology.fromCoding(new Coding("http://loinc.org", "unknown", null), LoincEnum.class));
+    }
+
+}
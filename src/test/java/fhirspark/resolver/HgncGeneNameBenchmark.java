@@ -0,0 +1,81 @@
+package fhirspark.resolver;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+import fhirspark.MicroBenchmark;
+import fhirspark.resolver.model.Genenames;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+/**
+ * Compares heap size and lookup time of {@link GeneIndex} with the map of Genenames objects read through
+ * jackson-dataformat-csv it replaced. Not run by surefire, start it from the project directory with
+ *
+ * <pre>
+ * java -cp target/test-classes:target/classes:... fhirspark.resolver.HgncGeneNameBenchmark
+ * </pre>
+ */
+public final class HgncGeneNameBenchmark {
+
+    private static final int OPS = 1000000;
+    private static final String DB = "hgnc.csv";
+    private static final long SEED = 42;
+
+    private HgncGeneNameBenchmark() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        long empty = MicroBenchmark.usedHeap();
+        Map<Integer, Genenames> map = loadMap();
+        long mapBytes = MicroBenchmark.usedHeap() - empty;
+        GeneIndex index = HgncGeneName.load(Paths.get(DB));
+        long indexBytes = MicroBenchmark.usedHeap() - empty - mapBytes;
+        System.out.printf("%-40s %10d KiB    -> %10d KiB    (%.1fx)%n", "heap of " + index.size() + " genes",
+                mapBytes / 1024, indexBytes / 1024, mapBytes / (double) indexBytes);
+
+        // the key set of a HashMap is ordered by bucket, so its ids are looked up in random order to not favor the map
+        List<Integer> shuffled = map.keySet().stream().filter(Objects::nonNull).collect(Collectors.toList());
+        Collections.shuffle(shuffled, new Random(SEED));
+        int[] ids = shuffled.stream().mapToInt(Integer::intValue).toArray();
+        String[] symbols = map.values().stream().filter(g -> g.getNcbiGeneId() != null)
+                .map(Genenames::getApprovedSymbol).toArray(String[]::new);
+        MicroBenchmark.report("lookup by NCBI gene id",
+                MicroBenchmark.nanosPerOp(OPS, i -> map.get(ids[i % ids.length])),
+                MicroBenchmark.nanosPerOp(OPS, i -> index.genenames(index.find(ids[i % ids.length]))));
+        MicroBenchmark.report("lookup by symbol (scan before)",
+                MicroBenchmark.nanosPerOp(OPS / 1000, i -> scan(map, symbols[i % symbols.length])),
+                MicroBenchmark.nanosPerOp(OPS, i -> index.entrezId(index.findSymbol(symbols[i % symbols.length]))));
+    }
+
+    private static Map<Integer, Genenames> loadMap() throws IOException {
+        Map<Integer, Genenames> map = new HashMap<>();
+        try (MappingIterator<Genenames> rows = new CsvMapper().readerFor(Genenames.class)
+                .with(CsvSchema.emptySchema().withHeader().withColumnSeparator('\t')).readValues(new File(DB))) {
+            while (rows.hasNext()) {
+                Genenames g = rows.next();
+                map.put(g.getNcbiGeneId(), g);
+            }
+        }
+        return map;
+    }
+
+    private static Integer scan(Map<Integer, Genenames> map, String symbol) {
+        for (Genenames g : map.values()) {
+            if (symbol.equals(g.getApprovedSymbol())) {
+                return g.getNcbiGeneId();
+            }
+        }
+        return null;
+    }
+
+}
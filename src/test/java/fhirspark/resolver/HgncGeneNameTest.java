@@ -0,0 +1,123 @@
+package fhirspark.resolver;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+import fhirspark.resolver.model.Genenames;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+
+@TestInstance(Lifecycle.PER_CLASS)
+public class HgncGeneNameTest {
+
+    @TempDir
+    Path directory;
+
+    @BeforeAll
+    public void prepare() throws IOException {
+        HgncGeneName.initialize("hgnc.csv");
+    }
+
+    @Test
+    public void missingDatabaseTest() {
+        String missing = directory.resolve("missing.csv").toString();
+        assertThrows(IOException.class, () -> HgncGeneName.initialize(missing));
+        assertThrows(IOException.class, () -> HgncGeneName.buildSnapshot(missing));
+        HgncGeneName.reload(missing);
+        assertEquals("BRAF", HgncGeneName.resolve(673).getApprovedSymbol());
+    }
+
+    @Test
+    public void resolveByEntrezGeneIdTest() {
+        Genenames gn = HgncGeneName.resolve(673);
+        assertEquals("HGNC:1097", gn.getHgncId());
+        assertEquals("BRAF", gn.getApprovedSymbol());
+        assertEquals(Integer.valueOf(673), gn.getNcbiGeneId());
+        assertSame(gn, HgncGeneName.resolve(673));
+        assertNull(HgncGeneName.resolve(-1));
+    }
+
+    @Test
+    public void resolveBySymbolTest() {
+        assertEquals(Integer.valueOf(673), HgncGeneName.resolveEntrezGeneId("BRAF"));
+        assertEquals(Integer.valueOf(1), HgncGeneName.resolveEntrezGeneId("A1BG"));
+        assertNull(HgncGeneName.resolveEntrezGeneId("NOT-A-GENE"));
+    }
+
+    @Test
+    public void indexLookupTest() {
+        GeneIndex index = new GeneIndex.Builder().add(7, 1, "A").add(8, 2, "B").add(7, 3, "C").build();
+        assertEquals(3, index.size());
+        assertEquals("HGNC:3", index.hgncId(index.find(7)));
+        assertEquals("B", index.symbol(index.find(8)));
+        assertEquals(7, index.entrezId(index.findSymbol("A")));
+        assertEquals(-1, index.find(9));
+    }
+
+    @Test
+    public void indexMatchesFileTest() throws IOException {
+        Map<Integer, Genenames> expected = new HashMap<>();
+        int genes = 0;
+        try (MappingIterator<Genenames> rows = new CsvMapper().readerFor(Genenames.class)
+                .with(CsvSchema.emptySchema().withHeader().withColumnSeparator('\t'))
+                .readValues(new File("hgnc.csv"))) {
+            while (rows.hasNext()) {
+                Genenames g = rows.next();
+                if (g.getNcbiGeneId() != null) {
+                    expected.put(g.getNcbiGeneId(), g);
+                    genes++;
+                }
+            }
+        }
+        GeneIndex index = HgncGeneName.load(Paths.get("hgnc.csv"));
+        assertEquals(genes, index.size());
+        for (Genenames g : expected.values()) {
+            int entry = index.find(g.getNcbiGeneId());
+            assertEquals(g.getHgncId(), index.hgncId(entry));
+            assertEquals(g.getApprovedSymbol(), index.symbol(entry));
+            assertEquals(g.getNcbiGeneId(), HgncGeneName.resolveEntrezGeneId(g.getApprovedSymbol()));
+        }
+    }
+
+    @Test
+    public void skipsMalformedRowsTest() throws IOException {
+        Path file = directory.resolve("malformed.csv");
+        Files.writeString(file, "HGNC ID\tApproved symbol\tNCBI Gene ID\n"
+                + "HGNC:5\tA1BG\t1\n"
+                + "HGNC:6\tBROKEN\tnot-a-number\n"
+                + "HGNC:7\tNOENTREZ\t\n"
+                + "HGNC:8\n"
+                + "HGNC:1097\tBRAF\t673\n");
+        GeneIndex index = HgncGeneName.load(file);
+        assertEquals(2, index.size());
+        assertEquals("BRAF", index.symbol(index.find(673)));
+        assertEquals(-1, index.findSymbol("BROKEN"));
+    }
+
+    @Test
+    public void keepsIndexWithoutRequiredColumnTest() throws IOException {
+        Path file = directory.resolve("columns.csv");
+        Files.writeString(file, "HGNC ID\tApproved symbol\n" + "HGNC:5\tA1BG\n");
+        assertThrows(IOException.class, () -> HgncGeneName.load(file));
+        HgncGeneName.reload(file.toString());
+        assertEquals("BRAF", HgncGeneName.resolve(673).getApprovedSymbol());
+    }
+
+}
@@ -0,0 +1,67 @@
+package fhirspark.resolver;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fhirspark.MicroBenchmark;
+import fhirspark.resolver.model.Drug;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Compares {@link OncoKbDrug} with the map of exact drug names it replaced, which allocated an empty Drug for
+ * every miss and knew no synonyms. Not run by surefire, start it from the project directory with
+ *
+ * <pre>
+ * java -cp target/test-classes:target/classes:... fhirspark.resolver.OncoKbDrugBenchmark
+ * </pre>
+ */
+public final class OncoKbDrugBenchmark {
+
+    private static final int OPS = 1000000;
+    private static final String DB = "drugs.json";
+
+    private OncoKbDrugBenchmark() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        List<Drug> drugs = new ObjectMapper().readerFor(new TypeReference<List<Drug>>() {
+        }).readValue(new File(DB));
+        Map<String, Drug> map = new HashMap<>();
+        List<String> names = new ArrayList<>();
+        List<String> synonyms = new ArrayList<>();
+        for (Drug d : drugs) {
+            map.put(d.getDrugName(), d);
+            names.add(d.getDrugName());
+            if (d.getSynonyms() != null) {
+                synonyms.addAll(d.getSynonyms());
+            }
+        }
+        List<String> spellings = new ArrayList<>();
+        for (String name : names) {
+            spellings.add(name.toLowerCase(Locale.ROOT).replace('-', ' '));
+        }
+        OncoKbDrug.initalize(DB);
+
+        run("exact names", map, names);
+        run("other spellings of names", map, spellings);
+        run("synonyms", map, synonyms);
+        run("unknown names", map, List.of("Dabrafineb", "uc3x", "Trametinib 2"));
+    }
+
+    private static void run(String name, Map<String, Drug> map, List<String> queries) {
+        String[] q = queries.toArray(new String[0]);
+        MicroBenchmark.report(name,
+                MicroBenchmark.nanosPerOp(OPS, i -> map.getOrDefault(q[i % q.length], new Drug())),
+                MicroBenchmark.nanosPerOp(OPS, i -> OncoKbDrug.resolve(q[i % q.length])));
+        long before = queries.stream().filter(map::containsKey).count();
+        long after = queries.stream().filter(s -> OncoKbDrug.resolve(s).isPresent()).count();
+        System.out.printf("%-40s %10d found    -> %10d found of %d%n", "", before, after, queries.size());
+    }
+
+}
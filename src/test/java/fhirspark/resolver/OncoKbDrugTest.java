@@ -0,0 +1,53 @@
+package fhirspark.resolver;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@TestInstance(Lifecycle.PER_CLASS)
+public class OncoKbDrugTest {
+
+    @BeforeAll
+    public void prepare() throws IOException {
+        OncoKbDrug.initalize("drugs.json");
+    }
+
+    @Test
+    public void resolveByNameTest() {
+        assertEquals("C90564", OncoKbDrug.resolve("Capmatinib").get().getNcitCode());
+        assertEquals("C90564", OncoKbDrug.resolve("capmatinib").get().getNcitCode());
+        assertEquals("C122834", OncoKbDrug.resolve("AZD-9496").get().getNcitCode());
+        assertTrue(OncoKbDrug.resolve("Dabrafineb").isEmpty());
+        assertTrue(OncoKbDrug.resolve(null).isEmpty());
+        assertTrue(OncoKbDrug.resolveByNcitCode("C0").isEmpty());
+    }
+
+    @Test
+    public void resolveBySynonymTest() {
+        assertEquals("Capmatinib", OncoKbDrug.resolve("INC280").get().getDrugName());
+        assertEquals("Capmatinib", OncoKbDrug.resolveByNcitCode("C90564").get().getDrugName());
+    }
+
+    @Test
+    public void namesWinOverSynonymsTest() {
+        DrugIndex index = new DrugIndex.Builder()
+                .add("A-1", "C1", null, List.of("B 2"))
+                .add("B2", "C2", null, List.of("a1"))
+                .add("A1", "C3", null, null)
+                .build();
+        assertEquals("C1", index.ncitCode(index.find("a1")));
+        assertEquals("C3", index.ncitCode(index.find("A1")));
+        assertEquals("C2", index.ncitCode(index.find("b-2")));
+        assertNull(index.uuid(index.findNcitCode("C3")));
+        assertEquals(-1, index.find("C4"));
+    }
+
+}
@@ -0,0 +1,69 @@
+package fhirspark.resolver;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchService;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class ReferenceDataWatcherTest {
+
+    private static final String HEADER = "HGNC ID\tApproved symbol\tNCBI Gene ID\n";
+    private static final long QUIET_PERIOD = 100;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void reloadsChangedFileTest() throws Exception {
+        Path file = directory.resolve("hgnc.csv").toAbsolutePath();
+        Files.writeString(file, HEADER + "HGNC:5\tA1BG\t1\n");
+        AtomicReference<GeneIndex> index = new AtomicReference<>(HgncGeneName.load(file));
+        AtomicInteger reloads = new AtomicInteger();
+        WatchService watcher = ReferenceDataWatcher.start(Map.of(file, () -> {
+            if (reloads.incrementAndGet() == 1) {
+                throw new NullPointerException("drugName");
+            }
+            try {
+                index.set(HgncGeneName.load(file));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }), QUIET_PERIOD);
+        assertNotNull(watcher);
+        try {
+            Files.writeString(file, HEADER + "HGNC:5\tA1BG\t1\nHGNC:1097\tBRAF\t673\n");
+            awaitReloads(reloads, 1);
+            assertEquals(-1, index.get().find(673));
+
+            Files.writeString(file, HEADER + "HGNC:5\tA1BG\t1\nHGNC:1097\tBRAF\t673\nHGNC:3236\tEGFR\t1956\n");
+            awaitReloads(reloads, 2);
+            // a reload may see the file while it is written, the next change event brings the full content
+            for (int i = 0; i < 500 && index.get().find(1956) < 0; i++) {
+                Thread.sleep(20);
+            }
+            assertEquals("BRAF", index.get().symbol(index.get().find(673)));
+            assertEquals("EGFR", index.get().symbol(index.get().find(1956)));
+        } finally {
+            watcher.close();
+        }
+    }
+
+    private static void awaitReloads(AtomicInteger reloads, int expected) throws InterruptedException {
+        for (int i = 0; i < 500 && reloads.get() < expected; i++) {
+            Thread.sleep(20);
+        }
+        assertTrue(reloads.get() >= expected);
+    }
+
+}
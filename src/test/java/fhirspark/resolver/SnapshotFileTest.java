@@ -0,0 +1,75 @@
+package fhirspark.resolver;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SnapshotFileTest {
+
+    @TempDir
+    Path directory;
+
+    private final AtomicInteger parsed = new AtomicInteger();
+
+    @Test
+    public void reusesSnapshotTest() throws IOException {
+        Path source = source();
+        assertEquals("BRAF", open(source).symbol(open(source).find(673)));
+        assertEquals(1, parsed.get());
+    }
+
+    @Test
+    public void reparsesCorruptPayloadTest() throws IOException {
+        Path source = source();
+        open(source);
+        Path snapshot = source.resolveSibling(source.getFileName() + SnapshotFile.SUFFIX);
+        try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.WRITE, StandardOpenOption.READ)) {
+            ByteBuffer last = ByteBuffer.allocate(1);
+            channel.read(last, channel.size() - 1);
+            last.put(0, (byte) ~last.get(0)).rewind();
+            channel.write(last, channel.size() - 1);
+        }
+        GeneIndex index = open(source);
+        assertEquals(2, parsed.get());
+        assertEquals("BRAF", index.symbol(index.find(673)));
+        assertEquals("A1BG", index.symbol(index.find(1)));
+        open(source);
+        assertEquals(2, parsed.get());
+    }
+
+    @Test
+    public void reparsesTruncatedSnapshotTest() throws IOException {
+        Path source = source();
+        open(source);
+        Path snapshot = source.resolveSibling(source.getFileName() + SnapshotFile.SUFFIX);
+        try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() / 2);
+        }
+        GeneIndex index = open(source);
+        assertEquals(2, parsed.get());
+        assertEquals("BRAF", index.symbol(index.find(673)));
+    }
+
+    private Path source() throws IOException {
+        Path source = directory.resolve("hgnc.csv");
+        Files.writeString(source, "HGNC ID\tApproved symbol\tNCBI Gene ID\nHGNC:5\tA1BG\t1\nHGNC:1097\tBRAF\t673\n");
+        return source;
+    }
+
+    private GeneIndex open(Path source) throws IOException {
+        return SnapshotFile.open(source, GeneIndex.MAGIC, false, GeneIndex::fromSnapshot, s -> {
+            parsed.incrementAndGet();
+            return HgncGeneName.load(s);
+        }, GeneIndex::toSnapshot);
+    }
+
+}